@@ -0,0 +1,149 @@
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Arrays;
+import java.util.Random;
+
+  /*
+   *  The decoder stages measured by jmh.DecoderBenchmark (see there for what each one does).  JMH
+   *  won't generate benchmarks in the default package, and a class in a named package can't
+   *  refer to the decoder's classes, so the benchmark creates these by name, as SampleScanner
+   *  does VectorScanner, and calls them through the public Stage interface.
+   *
+   *  Each stage is a decoder and the signal it's fed, in OP_BYTES pieces, wrapping around at the
+   *  end.  The signal is SECONDS of 16 bit mono PCM at FPS, generated by LtcEncoder.
+   */
+
+class DecoderStages implements jmh.DecoderBenchmark.Stage, LtcDecoder.FrameListener {
+  private static final int      SECONDS = 10;             // Length of generated signal
+  private static final int      FPS = 30;
+  private static final int      OP_BYTES = 4096;
+  private final LtcDecoder      decoder;
+  private final byte[]          data;
+  private final boolean         format;
+  private final char[]          line = new char[RecordLog.LINE];
+  private Blackhole             hole;
+  private int                   frames;
+  private int                   offset;
+
+  /**
+   * @param stage "unpack-be", "unpack-le", "slice", "sync", "decode" or "filter"
+   * @param signal "clean", "noisy", "varispeed" or "hum"
+   * @param path "scalar" or "vector" (see SampleScanner)
+   * @throws IllegalStateException if the vector path was asked for and the Vector API isn't available
+   */
+  DecoderStages (String stage, int rate, String signal, String path) {
+    SampleScanner scanner = SampleScanner.SCALAR;
+    if (path.equals("vector")) {
+      scanner = SampleScanner.get();
+      if (scanner == SampleScanner.SCALAR) {
+        throw new IllegalStateException("Vector API not available (run with -jvmArgsAppend --add-modules=jdk.incubator.vector)");
+      }
+    }
+    data = generate(stage, rate, signal);
+    format = stage.equals("decode");
+    decoder = new LtcDecoder(new AudioFormat(rate, 16, 1, true, !stage.equals("unpack-le")), this);
+    decoder.setScanner(scanner);
+    decoder.setFilter(stage.equals("filter"));
+  }
+
+  public int process (Blackhole hole) {
+    this.hole = hole;
+    frames = 0;
+    decoder.process(data, offset, OP_BYTES);
+    offset += OP_BYTES;
+    if (offset + OP_BYTES > data.length) {
+      offset = 0;
+    }
+    return frames;
+  }
+
+  public void frameDecoded (long frame, long sample) {
+    if (format) {
+      int pos = LtcDecoder.formatTimecode(frame, line, 0);
+      line[pos++] = ' ';
+      LtcDecoder.formatRaw(frame, line, pos);
+      hole.consume(line);
+    } else {
+      hole.consume(frame);
+    }
+    frames++;
+  }
+
+  /**
+   * Generates SECONDS of 16 bit mono PCM for the given stage and signal condition
+   */
+  static byte[] generate (String stage, int rate, String signal) {
+    AudioFormat fmt = new AudioFormat(rate, 16, 1, true, !stage.equals("unpack-le"));
+    int amplitude = signal.equals("noisy") || signal.equals("hum") ? 0x1000 : 0x3000;
+    int samples = rate * SECONDS;
+    byte[] data = new byte[samples * 2 + rate];
+    int len = 0;
+    if (stage.equals("slice")) {
+      // All '1' bits is a square wave at the bit rate, with two edges per bit cell
+      double phase = 0;
+      boolean high = false;
+      while (len < samples * 2) {
+        double speed = speedAt(signal, len / 2.0 / rate);
+        high = !high;
+        for (phase += rate / (FPS * 160.0 * speed); phase > 0 && len < samples * 2; phase--) {
+          int value = high ? amplitude : -amplitude;
+          data[len++] = (byte) (value >> 8);
+          data[len++] = (byte) value;
+        }
+      }
+    } else {
+      LtcEncoder encoder = new LtcEncoder(fmt, 0, FPS, false);
+      encoder.setTimecode(TimecodeIndex.pack(1, 0, 0, 0));
+      encoder.setUserBits(0x12345678);
+      encoder.setAmplitude(amplitude);
+      while (len < samples * 2) {
+        encoder.setSpeed(speedAt(signal, len / 2.0 / rate));
+        if (len + encoder.getFrameBytes() > data.length) {
+          break;
+        }
+        len += encoder.encode(data, len);
+      }
+    }
+    data = Arrays.copyOf(data, samples * 2);
+    if (signal.equals("noisy")) {
+      Random random = new Random(1);
+      for (int ii = 0; ii < samples; ii++) {
+        int value = (short) ((data[ii * 2] << 8) | (data[ii * 2 + 1] & 0xFF)) + (int) (random.nextGaussian() * amplitude / 8);
+        data[ii * 2] = (byte) (value >> 8);
+        data[ii * 2 + 1] = (byte) value;
+      }
+    } else if (signal.equals("hum")) {
+      Random random = new Random(1);
+      for (int ii = 0; ii < samples; ii++) {
+        double secs = (double) ii / rate;
+        double hum = Math.sin(2 * Math.PI * 50 * secs) + 0.3 * Math.sin(2 * Math.PI * 150 * secs);
+        int value = (short) ((data[ii * 2] << 8) | (data[ii * 2 + 1] & 0xFF)) + amplitude / 3 +
+                    (int) (hum * amplitude + random.nextGaussian() * amplitude / 4);
+        data[ii * 2] = (byte) (value >> 8);
+        data[ii * 2 + 1] = (byte) value;
+      }
+    }
+    if (stage.startsWith("unpack")) {
+      // Shift everything above zero so the slicer never sees a crossing
+      for (int ii = 0; ii < samples; ii++) {
+        int value = ((data[ii * 2] << 8) | (data[ii * 2 + 1] & 0xFF)) / 2 + 0x4000;
+        data[ii * 2] = (byte) (value >> 8);
+        data[ii * 2 + 1] = (byte) value;
+      }
+    }
+    if (fmt.isBigEndian()) {
+      return data;
+    }
+    for (int ii = 0; ii < data.length; ii += 2) {
+      byte tmp = data[ii];
+      data[ii] = data[ii + 1];
+      data[ii + 1] = tmp;
+    }
+    return data;
+  }
+
+  private static double speedAt (String signal, double secs) {
+    return signal.equals("varispeed") ? 1 + 0.1 * Math.sin(secs * Math.PI) : 1;
+  }
+}
@@ -0,0 +1,137 @@
+package jmh;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+  /*
+   *  JMH benchmarks of the LtcDecoder hot loop.  PCM unpacking, bit slicing, SYNC search and
+   *  frame decoding all happen in a single pass inside process(), so each stage is measured by
+   *  feeding the decoder a signal that takes it progressively further down that path:
+   *
+   *    unpackBe    big endian samples that never cross zero (unpack and level meter only)
+   *    unpackLe    the same, little endian
+   *    slice       biphase signal of all '1' bits (every edge sliced, SYNC compared but never found)
+   *    sync        LTC whose frames are found and BCD checked, then passed to a Blackhole
+   *    decode      LTC with each frame formatted as timecode and raw hex, as the Record tab does
+   *    filter      the sync stage with the InputFilter in front of the slicer
+   *
+   *  Every stage runs at each rate with clean, noisy (Gaussian noise at 1/8 of the signal level),
+   *  varispeed (+/-10% over two seconds) and hum (DC offset, 50 Hz hum and its 3rd harmonic, and
+   *  Gaussian noise at 1/4 of the signal level, as from a long cable run) signals generated by
+   *  LtcEncoder (see DecoderStages).  Each call decodes 4096 bytes (2048 samples), as the capture
+   *  thread reads, and counts as 2048 operations, so the score is in samples per second (divide it
+   *  by the rate for how many times faster than real time that is).  The sync, decode and filter
+   *  stages also score frames decoded per second, and frames / (score * fps / rate) is the
+   *  fraction of frames recovered, so comparing sync and filter gives the frame error rate with
+   *  and without the filter.
+   *
+   *  Build with mvn -Pbench package, then run (-prof gc gives the bytes allocated per sample as
+   *  gc.alloc.rate.norm, which should always be 0):
+   *
+   *    java -jar target/benchmarks.jar DecoderBenchmark -prof gc [-p rate=48000] [-p signal=clean,noisy]
+   *
+   *  The path parameter selects the scalar SampleScanner or the vectorized one, which needs JDK 17
+   *  and the Vector API, so compare the two with
+   *
+   *    java -jar target/benchmarks.jar DecoderBenchmark -p path=scalar,vector -jvmArgsAppend --add-modules=jdk.incubator.vector
+   */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(DecoderBenchmark.SAMPLES)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DecoderBenchmark {
+  static final int              SAMPLES = 2048;           // Samples decoded per call
+
+  @Param({"22050", "44100", "48000", "96000"})
+  public int                    rate;
+
+  @Param({"clean", "noisy", "varispeed", "hum"})
+  public String                 signal;
+
+  @Param({"scalar"})
+  public String                 path;
+
+  private Stage                 unpackBe, unpackLe, slice, sync, decode, filter;
+
+  /**
+   * A decoder fed with a signal (implemented by DecoderStages, in the default package)
+   */
+  public interface Stage {
+    /**
+     * Decodes the next 4096 bytes of the signal, passing the frames decoded to hole
+     * @return number of frames decoded
+     */
+    int process (Blackhole hole);
+  }
+
+  /**
+   * Frames decoded, reported per second alongside the samples
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Frames {
+    public long                 frames;
+
+    @Setup(Level.Iteration)
+    public void clear () {
+      frames = 0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup () throws ReflectiveOperationException {
+    Constructor<?> stage = Class.forName("DecoderStages").getDeclaredConstructor(String.class, int.class, String.class, String.class);
+    stage.setAccessible(true);
+    try {
+      unpackBe = (Stage) stage.newInstance("unpack-be", rate, signal, path);
+      unpackLe = (Stage) stage.newInstance("unpack-le", rate, signal, path);
+      slice = (Stage) stage.newInstance("slice", rate, signal, path);
+      sync = (Stage) stage.newInstance("sync", rate, signal, path);
+      decode = (Stage) stage.newInstance("decode", rate, signal, path);
+      filter = (Stage) stage.newInstance("filter", rate, signal, path);
+    } catch (InvocationTargetException ex) {
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
+      }
+      throw ex;
+    }
+  }
+
+  @Benchmark
+  public void unpackBe (Blackhole hole) {
+    unpackBe.process(hole);
+  }
+
+  @Benchmark
+  public void unpackLe (Blackhole hole) {
+    unpackLe.process(hole);
+  }
+
+  @Benchmark
+  public void slice (Blackhole hole) {
+    slice.process(hole);
+  }
+
+  @Benchmark
+  public void sync (Blackhole hole, Frames counts) {
+    counts.frames += sync.process(hole);
+  }
+
+  @Benchmark
+  public void decode (Blackhole hole, Frames counts) {
+    counts.frames += decode.process(hole);
+  }
+
+  @Benchmark
+  public void filter (Blackhole hole, Frames counts) {
+    counts.frames += filter.process(hole);
+  }
+}
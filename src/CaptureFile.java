@@ -0,0 +1,194 @@
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+  /*
+   *  Compact binary capture of decoded frames.  Each record holds the four 16 bit LTC words
+   *  (as the packed long used by LtcDecoder), the sample position of the frame boundary and the
+   *  System.nanoTime() at which it was decoded, each delta encoded against the previous record
+   *  as a variable length integer:
+   *
+   *    frame   unsigned varint of (frame XOR previous frame)
+   *    sample  zigzag varint of (sample - previous sample)
+   *    nanos   zigzag varint of (nanos - previous nanos)
+   *
+   *  so a steady stream costs about 8 bytes per frame.  The file starts with a header:
+   *
+   *    int     magic ('LTCB')
+   *    int     version
+   *    float   sample rate
+   *    long    wall clock time (ms since epoch) when the first nanos value was taken
+   *    long    first nanos value (records are delta encoded from this and from frame = sample = 0)
+   */
+
+class CaptureFile {
+  private static final int      MAGIC = 0x4C544342;       // 'LTCB'
+  private static final int      VERSION = 1;
+  private static final int      HEADER = 28;
+  private static final int      BUFFER_SIZE = 64 * 1024;
+  private static final int      MAX_RECORD = 3 * 10;      // Three varints of at most 10 bytes
+
+  /*
+   *  Appends records to a capture file through a buffered FileChannel
+   */
+  static class Writer implements AutoCloseable {
+    private final FileChannel   channel;
+    private final ByteBuffer    buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long                lastFrame, lastSample, lastNanos;
+    private long                records;
+
+    Writer (File file, float sampleRate) throws IOException {
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                 StandardOpenOption.TRUNCATE_EXISTING);
+      lastNanos = System.nanoTime();
+      buf.putInt(MAGIC).putInt(VERSION).putFloat(sampleRate).putLong(System.currentTimeMillis()).putLong(lastNanos);
+    }
+
+    /**
+     * Adds a record (does not allocate, and only touches the file when the buffer is full)
+     */
+    void write (long frame, long sample, long nanos) throws IOException {
+      if (buf.remaining() < MAX_RECORD) {
+        flush();
+      }
+      putVarint(frame ^ lastFrame);
+      putVarint(zigzag(sample - lastSample));
+      putVarint(zigzag(nanos - lastNanos));
+      lastFrame = frame;
+      lastSample = sample;
+      lastNanos = nanos;
+      records++;
+    }
+
+    private void putVarint (long val) {
+      while ((val & ~0x7FL) != 0) {
+        buf.put((byte) ((val & 0x7F) | 0x80));
+        val >>>= 7;
+      }
+      buf.put((byte) val);
+    }
+
+    void flush () throws IOException {
+      buf.flip();
+      while (buf.hasRemaining()) {
+        channel.write(buf);
+      }
+      buf.clear();
+    }
+
+    long getRecords () {
+      return records;
+    }
+
+    public void close () throws IOException {
+      flush();
+      channel.close();
+    }
+  }
+
+  /*
+   *  Reads records back in order.  Call next() to advance, then use the getters
+   */
+  static class Reader implements AutoCloseable {
+    private final FileChannel   channel;
+    private final ByteBuffer    buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final float         sampleRate;
+    private final long          startMillis, startNanos;
+    private long                frame, sample, nanos;
+    private boolean             eof;
+
+    Reader (File file) throws IOException {
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      buf.limit(0);
+      fill();
+      if (buf.remaining() < HEADER || buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+        channel.close();
+        throw new IOException("Not a capture file: " + file);
+      }
+      sampleRate = buf.getFloat();
+      startMillis = buf.getLong();
+      nanos = startNanos = buf.getLong();
+    }
+
+    // Refills buf, keeping any bytes not yet consumed
+    private void fill () throws IOException {
+      buf.compact();
+      while (buf.hasRemaining() && !eof) {
+        if (channel.read(buf) < 0) {
+          eof = true;
+        }
+      }
+      buf.flip();
+    }
+
+    /**
+     * Advances to the next record
+     * @return false if there are no more records
+     */
+    boolean next () throws IOException {
+      if (buf.remaining() < MAX_RECORD && !eof) {
+        fill();
+      }
+      if (!buf.hasRemaining()) {
+        return false;
+      }
+      frame ^= getVarint();
+      sample += unzigzag(getVarint());
+      nanos += unzigzag(getVarint());
+      return true;
+    }
+
+    private long getVarint () throws IOException {
+      long val = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        if (!buf.hasRemaining()) {
+          throw new EOFException("Truncated capture record");
+        }
+        byte bb = buf.get();
+        val |= (long) (bb & 0x7F) << shift;
+        if (bb >= 0) {
+          return val;
+        }
+      }
+      throw new IOException("Malformed capture record");
+    }
+
+    long getFrame () {
+      return frame;
+    }
+
+    long getSample () {
+      return sample;
+    }
+
+    long getNanos () {
+      return nanos;
+    }
+
+    /**
+     * @return wall clock time (ms since epoch) of the current record
+     */
+    long getMillis () {
+      return startMillis + (nanos - startNanos) / 1000000;
+    }
+
+    float getSampleRate () {
+      return sampleRate;
+    }
+
+    public void close () throws IOException {
+      channel.close();
+    }
+  }
+
+  private static long zigzag (long val) {
+    return (val << 1) ^ (val >> 63);
+  }
+
+  private static long unzigzag (long val) {
+    return (val >>> 1) ^ -(val & 1);
+  }
+}
@@ -0,0 +1,285 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.sound.sampled.AudioFormat;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+  /*
+   *  Decode pipeline metrics for monitoring, so a degrading feed can be alerted on before the
+   *  timecode stops.  The counters of every channel being decoded (see DecoderStats) and the
+   *  overruns of the ring feeding it are published as JMX MBeans (see DecoderMetricsMXBean):
+   *
+   *    TimecodeReader:type=Decoder,input=<input>,channel=<n>   one for each channel decoded
+   *    TimecodeReader:type=Decoder,name=Total                  every channel added up
+   *
+   *  The channel MBeans stay registered, with their final counts, until the next capture starts,
+   *  and the total includes the channels of past captures, so its counters never go backwards.
+   *  Nothing is added up until an attribute is read, so the decoding threads only ever touch
+   *  their own counters.
+   *
+   *  startDump() also writes every channel and the total to a file (or System.err) every so often,
+   *  as CSV if the file name ends in .csv and as text otherwise.
+   */
+
+class DecoderMetrics {
+  static final String           DOMAIN = "TimecodeReader";
+  // Indexes in a snapshot after the DecoderStats counters
+  private static final int      OVERRUNS = DecoderStats.SIZE, DROPPED = DecoderStats.SIZE + 1, SIZE = DecoderStats.SIZE + 2;
+  private final MBeanServer     server = ManagementFactory.getPlatformMBeanServer();
+  private final List<Channel>   channels = new CopyOnWriteArrayList<>();
+  private final long[]          retired = new long[SIZE]; // Counters of the channels removed by clear() (guarded by this)
+  private final Total           total = new Total();
+  private Thread                dumper;
+
+  // Attributes computed from a snapshot of the counters
+  private abstract static class View implements DecoderMetricsMXBean {
+    abstract long[] snapshot ();
+
+    public long getFramesDecoded () {
+      return snapshot()[DecoderStats.FRAMES];
+    }
+
+    public long getFramesPredicted () {
+      return snapshot()[DecoderStats.PREDICTED];
+    }
+
+    public long getBcdRejects () {
+      return snapshot()[DecoderStats.BCD_REJECTS];
+    }
+
+    public long getSyncLosses () {
+      return snapshot()[DecoderStats.SYNC_LOSSES];
+    }
+
+    public long getPartialFrames () {
+      return snapshot()[DecoderStats.PARTIAL_FRAMES];
+    }
+
+    public long getOverruns () {
+      return snapshot()[OVERRUNS];
+    }
+
+    public long getDroppedBytes () {
+      return snapshot()[DROPPED];
+    }
+
+    public long getBuffersDecoded () {
+      return snapshot()[DecoderStats.BUFFERS];
+    }
+
+    public double getMeanDecodeMicros () {
+      long[] counts = snapshot();
+      return counts[DecoderStats.BUFFERS] > 0 ? counts[DecoderStats.DECODE_NANOS] / 1e3 / counts[DecoderStats.BUFFERS] : 0;
+    }
+
+    public double getMaxDecodeMicros () {
+      return snapshot()[DecoderStats.MAX_DECODE_NANOS] / 1e3;
+    }
+
+    public int getPeakPercent () {
+      return (int) snapshot()[DecoderStats.PEAK];
+    }
+
+    public int getRmsPercent () {
+      return (int) snapshot()[DecoderStats.RMS];
+    }
+
+    public long[] getJitterHistogram () {
+      long[] jitter = new long[DecoderStats.JITTER_BUCKETS];
+      System.arraycopy(snapshot(), DecoderStats.JITTER, jitter, 0, jitter.length);
+      return jitter;
+    }
+  }
+
+  private static class Channel extends View {
+    private final String        name;
+    private final DecoderStats  stats;
+    private final SampleRing    ring;
+    private final float         sampleRate;
+    private ObjectName          objectName;
+
+    private Channel (String name, DecoderStats stats, SampleRing ring, float sampleRate) {
+      this.name = name;
+      this.stats = stats;
+      this.ring = ring;
+      this.sampleRate = sampleRate;
+    }
+
+    long[] snapshot () {
+      long[] counts = new long[SIZE];
+      stats.snapshot(counts);
+      counts[OVERRUNS] = ring.getOverruns();
+      counts[DROPPED] = ring.getDroppedBytes();
+      return counts;
+    }
+
+    public double getDecodeLoadPercent () {
+      return load(snapshot(), sampleRate);
+    }
+  }
+
+  private class Total extends View {
+    long[] snapshot () {
+      long[] counts;
+      synchronized (DecoderMetrics.this) {
+        counts = retired.clone();
+      }
+      long[] chan = new long[DecoderStats.SIZE];
+      // Channels of the same input share a ring, so count its overruns once
+      Set<SampleRing> rings = Collections.newSetFromMap(new IdentityHashMap<>());
+      for (Channel channel : channels) {
+        channel.stats.snapshot(chan);
+        DecoderStats.add(counts, chan);
+        if (rings.add(channel.ring)) {
+          counts[OVERRUNS] += channel.ring.getOverruns();
+          counts[DROPPED] += channel.ring.getDroppedBytes();
+        }
+      }
+      return counts;
+    }
+
+    // Load of every channel being decoded, as a percentage of one thread
+    public double getDecodeLoadPercent () {
+      double sum = 0;
+      for (Channel channel : channels) {
+        sum += channel.getDecodeLoadPercent();
+      }
+      return sum;
+    }
+  }
+
+  DecoderMetrics () {
+    register(total, DOMAIN + ":type=Decoder,name=Total");
+  }
+
+  private static double load (long[] counts, float sampleRate) {
+    long samples = counts[DecoderStats.SAMPLES];
+    return samples > 0 ? counts[DecoderStats.DECODE_NANOS] / 1e7 / (samples / sampleRate) : 0;
+  }
+
+  // Returns the name registered, or null if the MBean couldn't be registered (reads still work)
+  private ObjectName register (Object bean, String name) {
+    try {
+      ObjectName objectName = new ObjectName(name);
+      server.registerMBean(bean, objectName);
+      return objectName;
+    } catch (JMException ex) {
+      ex.printStackTrace();
+      return null;
+    }
+  }
+
+  /**
+   * Adds every channel decoded by decoder
+   * @param input name of the input, for the MBean names
+   * @param ring ring the input is captured into, for its overruns
+   */
+  void add (String input, SampleRing ring, MultiChannelDecoder decoder, AudioFormat format) {
+    for (int ch = 0; ch < format.getChannels(); ch++) {
+      LtcDecoder channelDecoder = decoder.getDecoder(ch);
+      if (channelDecoder != null) {
+        Channel channel = new Channel(input + " " + (ch + 1), channelDecoder.getStats(), ring, format.getSampleRate());
+        channel.objectName = register(channel, DOMAIN + ":type=Decoder,input=" + ObjectName.quote(input) + ",channel=" + (ch + 1));
+        channels.add(channel);
+      }
+    }
+  }
+
+  /**
+   * Removes every channel, adding its counts to the total.  Call once decoding has stopped.
+   */
+  synchronized void clear () {
+    for (Channel channel : channels) {
+      long[] counts = channel.snapshot();
+      // The levels were those of the channel's last buffer
+      counts[DecoderStats.PEAK] = counts[DecoderStats.RMS] = 0;
+      for (int ii = 0; ii < SIZE; ii++) {
+        retired[ii] = ii == DecoderStats.MAX_DECODE_NANOS ? Math.max(retired[ii], counts[ii]) : retired[ii] + counts[ii];
+      }
+      if (channel.objectName != null) {
+        try {
+          server.unregisterMBean(channel.objectName);
+        } catch (JMException ex) {
+          ex.printStackTrace();
+        }
+      }
+    }
+    channels.clear();
+  }
+
+  /**
+   * Starts writing the metrics to file every period seconds
+   * @param file file to append to, or empty for System.err
+   */
+  synchronized void startDump (String file, int period) {
+    if (dumper != null || period <= 0) {
+      return;
+    }
+    boolean csv = file.toLowerCase().endsWith(".csv");
+    dumper = new Thread(() -> {
+      try (PrintStream out = file.isEmpty() ? null : new PrintStream(new FileOutputStream(file, true), false, StandardCharsets.UTF_8.name())) {
+        PrintStream dst = out != null ? out : System.err;
+        if (csv && new File(file).length() == 0) {
+          dst.println("time,stream,frames,predicted,bcd_rejects,sync_losses,partial_frames,overruns,dropped_bytes,buffers," +
+                      "mean_decode_us,max_decode_us,load_percent,peak_percent,rms_percent,jitter_histogram");
+        }
+        while (true) {
+          Thread.sleep(period * 1000L);
+          dump(dst, csv);
+        }
+      } catch (IOException ex) {
+        ex.printStackTrace();
+      } catch (InterruptedException ex) {
+        // Stopped
+      }
+    }, "Metrics Dump");
+    dumper.setDaemon(true);
+    dumper.setPriority(Thread.MIN_PRIORITY);
+    dumper.start();
+  }
+
+  /**
+   * Writes a line for each channel and one for the total
+   * @param csv true for comma separated values (jitter buckets separated by spaces), otherwise text
+   */
+  void dump (PrintStream out, boolean csv) {
+    String time = LocalDateTime.now().withNano(0).toString();
+    for (Channel channel : channels) {
+      dump(out, csv, time, channel.name, channel);
+    }
+    dump(out, csv, time, "Total", total);
+    out.flush();
+  }
+
+  private static void dump (PrintStream out, boolean csv, String time, String name, View view) {
+    long[] counts = view.snapshot();
+    StringBuilder jitter = new StringBuilder();
+    for (int ii = 0; ii < DecoderStats.JITTER_BUCKETS; ii++) {
+      jitter.append(ii > 0 ? " " : "").append(counts[DecoderStats.JITTER + ii]);
+    }
+    double mean = counts[DecoderStats.BUFFERS] > 0 ? counts[DecoderStats.DECODE_NANOS] / 1e3 / counts[DecoderStats.BUFFERS] : 0;
+    double max = counts[DecoderStats.MAX_DECODE_NANOS] / 1e3;
+    if (csv) {
+      out.printf("%s,\"%s\",%d,%d,%d,%d,%d,%d,%d,%d,%.1f,%.1f,%.2f,%d,%d,%s%n", time, name.replace("\"", "\"\""),
+                 counts[DecoderStats.FRAMES], counts[DecoderStats.PREDICTED], counts[DecoderStats.BCD_REJECTS],
+                 counts[DecoderStats.SYNC_LOSSES], counts[DecoderStats.PARTIAL_FRAMES], counts[OVERRUNS], counts[DROPPED],
+                 counts[DecoderStats.BUFFERS], mean, max, view.getDecodeLoadPercent(), counts[DecoderStats.PEAK],
+                 counts[DecoderStats.RMS], jitter);
+    } else {
+      out.printf("%s %s: %d frames (%d predicted), %d BCD rejects, %d sync losses, %d partial frames, %d overruns " +
+                 "(%d bytes), %d buffers decoded in %.1f us mean, %.1f us max (%.2f%% load), peak %d%%, RMS %d%%, " +
+                 "jitter per %d%% [%s]%n", time, name, counts[DecoderStats.FRAMES], counts[DecoderStats.PREDICTED],
+                 counts[DecoderStats.BCD_REJECTS], counts[DecoderStats.SYNC_LOSSES], counts[DecoderStats.PARTIAL_FRAMES],
+                 counts[OVERRUNS], counts[DROPPED], counts[DecoderStats.BUFFERS], mean, max, view.getDecodeLoadPercent(),
+                 counts[DecoderStats.PEAK], counts[DecoderStats.RMS], DecoderStats.JITTER_STEP, jitter);
+    }
+  }
+}
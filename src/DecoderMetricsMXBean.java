@@ -0,0 +1,61 @@
+  /*
+   *  Attributes of the DecoderMetrics MBeans (public, as JMX requires of an MBean interface).
+   *  Counters only ever go up; levels are a percentage of full scale.
+   */
+
+public interface DecoderMetricsMXBean {
+  /**
+   * @return frames received with valid BCD digits
+   */
+  long getFramesDecoded ();
+
+  /**
+   * @return frames filled in by the flywheel
+   */
+  long getFramesPredicted ();
+
+  /**
+   * @return frames received with a BCD digit over 9
+   */
+  long getBcdRejects ();
+
+  /**
+   * @return times frames stopped arriving where the one before said they would
+   */
+  long getSyncLosses ();
+
+  /**
+   * @return frames only partly received before the slicer started again
+   */
+  long getPartialFrames ();
+
+  /**
+   * @return times the capture thread found the ring full
+   */
+  long getOverruns ();
+
+  /**
+   * @return bytes captured and dropped because the ring was full
+   */
+  long getDroppedBytes ();
+
+  long getBuffersDecoded ();
+
+  double getMeanDecodeMicros ();
+
+  double getMaxDecodeMicros ();
+
+  /**
+   * @return decoding time as a percentage of the duration of the audio decoded
+   */
+  double getDecodeLoadPercent ();
+
+  int getPeakPercent ();
+
+  int getRmsPercent ();
+
+  /**
+   * @return bits measured (one in 16) with each DecoderStats.JITTER_STEP percent of a bit period of jitter
+   */
+  long[] getJitterHistogram ();
+}
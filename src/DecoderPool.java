@@ -0,0 +1,172 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+  /*
+   *  Fixed set of worker threads that decode any number of capture streams, so dozens of inputs
+   *  don't each need a decoder thread of their own.  Each stream is a SampleRing filled by its
+   *  capture thread plus a Sink that consumes the bytes.  A write to the ring queues the stream
+   *  (once, however many writes arrive before it runs) and the next free worker drains it.
+   *
+   *  A stream is only ever run by one worker at a time, so the ring keeps a single consumer and
+   *  a Sink needs no locking.  To keep one busy stream from starving the rest, a worker hands a
+   *  stream back to the end of the queue after MAX_READS reads.
+   *
+   *  If a Sink throws, its stream is closed as though its ring had been (so the Sink still gets
+   *  closed()) and never run again, and the exception is passed to the pool's error listener.
+   */
+
+class DecoderPool {
+  private static final int      BUFFER_SIZE = 64 * 1024;
+  private static final int      MAX_READS = 16;
+  private final BlockingQueue<Stream> ready;
+  private final Thread[]        workers;
+  private final int             maxStreams;
+  private final Consumer<Throwable> errors;
+  private int                   streams;
+
+  interface Sink {
+    /**
+     * Called on a worker thread with bytes read from the stream's ring (always whole sample frames)
+     * @param position stream position of buffer[0] (see SampleRing.getLastReadPosition())
+     */
+    void decode (byte[] buffer, int count, long position);
+
+    /**
+     * Called on a worker thread once the ring has been closed and drained
+     */
+    void closed ();
+  }
+
+  /**
+   * A ring and its Sink, scheduled on the pool whenever the ring has data
+   */
+  class Stream implements Runnable {
+    private final SampleRing    ring;
+    private final Sink          sink;
+    private final int           readSize;
+    private final AtomicBoolean queued = new AtomicBoolean();
+    private boolean             done;
+
+    private Stream (SampleRing ring, Sink sink, int frameSize) {
+      this.ring = ring;
+      this.sink = sink;
+      readSize = BUFFER_SIZE - BUFFER_SIZE % frameSize;
+    }
+
+    // Called on the capture thread by the ring after each write
+    public void run () {
+      if (queued.compareAndSet(false, true)) {
+        // Can't fail, as each stream is queued at most once and the queue holds maxStreams
+        ready.offer(this);
+      }
+    }
+
+    // Called by a worker
+    private void drain (byte[] buffer) {
+      if (done) {
+        return;
+      }
+      for (int reads = 0; reads < MAX_READS; reads++) {
+        int count = ring.poll(buffer, 0, readSize);
+        if (count < 0) {
+          close();
+          return;
+        } else if (count == 0) {
+          break;
+        }
+        sink.decode(buffer, count, ring.getLastReadPosition());
+      }
+      queued.set(false);
+      // Pick up anything written after the last poll, which would have found the stream still queued
+      if (ring.isReady()) {
+        run();
+      }
+    }
+
+    // Called by a worker once the ring is drained, or if the sink threw
+    private void close () {
+      if (!done) {
+        done = true;
+        try {
+          sink.closed();
+        } finally {
+          release();
+        }
+      }
+    }
+  }
+
+  /**
+   * @param threads number of worker threads
+   * @param maxStreams maximum number of streams that can be open at once
+   * @param errors called on a worker thread with anything thrown by a Sink
+   */
+  DecoderPool (int threads, int maxStreams, Consumer<Throwable> errors) {
+    this.maxStreams = maxStreams;
+    this.errors = errors;
+    ready = new ArrayBlockingQueue<>(maxStreams);
+    workers = new Thread[Math.max(1, threads)];
+    for (int ii = 0; ii < workers.length; ii++) {
+      workers[ii] = new Thread(this::work, "Decoder-" + ii);
+      workers[ii].setDaemon(true);
+      workers[ii].start();
+    }
+  }
+
+  /**
+   * Adds a stream.  sink is called for data written to ring until ring is closed.
+   * @param frameSize size of a sample frame in bytes (reads are always a multiple of this)
+   */
+  synchronized Stream add (SampleRing ring, Sink sink, int frameSize) {
+    if (streams >= maxStreams) {
+      throw new IllegalStateException("Too many streams: " + maxStreams);
+    }
+    streams++;
+    Stream stream = new Stream(ring, sink, frameSize);
+    ring.setReadyListener(stream);
+    // Data (or close) may have arrived before the listener was set
+    if (ring.isReady()) {
+      stream.run();
+    }
+    return stream;
+  }
+
+  private synchronized void release () {
+    streams--;
+  }
+
+  int getThreadCount () {
+    return workers.length;
+  }
+
+  private void work () {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    try {
+      while (true) {
+        Stream stream = ready.take();
+        try {
+          stream.drain(buffer);
+        } catch (Throwable ex) {
+          // Leaves the failed stream queued, so it's never run again, but releases it and keeps the worker going
+          ex.printStackTrace();
+          try {
+            stream.close();
+          } catch (Throwable closeEx) {
+            ex.addSuppressed(closeEx);
+          }
+          errors.accept(ex);
+        }
+      }
+    } catch (InterruptedException ex) {
+      // Pool shut down
+    }
+  }
+
+  void shutdown () {
+    for (Thread worker : workers) {
+      worker.interrupt();
+    }
+  }
+}
@@ -0,0 +1,102 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+  /*
+   *  Counters for one LtcDecoder, for monitoring (see DecoderMetrics).  A decoder is only ever run
+   *  by one thread at a time, so its counters are plain fields with a single writer, and each
+   *  costs an increment on the hot path: no locks, atomics or cache lines shared with other
+   *  decoders.  At the end of each buffer (see LtcDecoder.updateLevels()) they're copied with
+   *  ordered stores to an array any thread can read, so readers see every counter as of the end
+   *  of some buffer, and totals are only added up when they're read.
+   *
+   *  Jitter is the difference between the length of a bit (with half bits doubled) and the bit
+   *  before it, or with the PLL between each edge and where the loop expected it, as a percentage
+   *  of the bit period.  It's counted in JITTER_BUCKETS buckets JITTER_STEP percent wide, and the
+   *  last bucket also counts everything above it.  The slicers spend only a few nanoseconds on
+   *  each edge, so even one more divide would slow them by over 10% at low sample rates, and
+   *  they only measure one bit or edge in 16.
+   */
+
+class DecoderStats {
+  // Index of each counter in the arrays filled by snapshot()
+  static final int              FRAMES = 0, PREDICTED = 1, BCD_REJECTS = 2, SYNC_LOSSES = 3, PARTIAL_FRAMES = 4,
+                                BUFFERS = 5, SAMPLES = 6, DECODE_NANOS = 7, MAX_DECODE_NANOS = 8, PEAK = 9, RMS = 10,
+                                JITTER = 11;
+  static final int              JITTER_BUCKETS = 16;
+  static final int              JITTER_STEP = 2;          // Percent of a bit period per bucket
+  static final int              SIZE = JITTER + JITTER_BUCKETS;
+  private final long[]          counts = new long[SIZE];
+  private final AtomicLongArray published = new AtomicLongArray(SIZE);
+
+  void frame () {
+    counts[FRAMES]++;
+  }
+
+  void predicted () {
+    counts[PREDICTED]++;
+  }
+
+  void bcdReject () {
+    counts[BCD_REJECTS]++;
+  }
+
+  void syncLoss () {
+    counts[SYNC_LOSSES]++;
+  }
+
+  void partialFrame () {
+    counts[PARTIAL_FRAMES]++;
+  }
+
+  /**
+   * @param percent deviation of an edge from where it was expected, as a percentage of the bit period
+   */
+  void jitter (int percent) {
+    counts[JITTER + Math.min(percent / JITTER_STEP, JITTER_BUCKETS - 1)]++;
+  }
+
+  /**
+   * Counts a buffer decoded
+   * @param nanos time taken to decode it
+   */
+  void buffer (int samples, long nanos) {
+    counts[BUFFERS]++;
+    counts[SAMPLES] += samples;
+    counts[DECODE_NANOS] += nanos;
+    counts[MAX_DECODE_NANOS] = Math.max(counts[MAX_DECODE_NANOS], nanos);
+  }
+
+  /**
+   * Makes the counters visible to snapshot().  Called by the decoding thread at the end of each buffer.
+   * @param peak peak level of the buffer (percent of full scale)
+   * @param rms RMS level of the buffer (percent of full scale)
+   */
+  void publish (int peak, int rms) {
+    counts[PEAK] = peak;
+    counts[RMS] = rms;
+    for (int ii = 0; ii < SIZE; ii++) {
+      published.lazySet(ii, counts[ii]);
+    }
+  }
+
+  /**
+   * Copies the counters as of the last publish() into dst (SIZE longs).  May be called from any thread.
+   */
+  void snapshot (long[] dst) {
+    for (int ii = 0; ii < SIZE; ii++) {
+      dst[ii] = published.get(ii);
+    }
+  }
+
+  /**
+   * Adds the counters in src to those in dst, keeping the larger of the maximum decode times and levels
+   */
+  static void add (long[] dst, long[] src) {
+    for (int ii = 0; ii < SIZE; ii++) {
+      if (ii == MAX_DECODE_NANOS || ii == PEAK || ii == RMS) {
+        dst[ii] = Math.max(dst[ii], src[ii]);
+      } else {
+        dst[ii] += src[ii];
+      }
+    }
+  }
+}
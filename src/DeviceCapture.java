@@ -0,0 +1,131 @@
+import javax.sound.sampled.*;
+
+  /*
+   *  Captures audio from one input device into a SampleRing.  Each device gets its own capture
+   *  thread (TargetDataLine.read() blocks), while decoding of the ring is left to a DecoderPool,
+   *  so a capture thread does nothing but copy bytes.  The line is opened with as many channels
+   *  as the device supports, up to a given maximum, in the byte order the device supports, so
+   *  LtcDecoder can decode the device's native format without conversion.  The line's buffer and
+   *  the size of each read are set by a LatencyProfile.
+   */
+
+class DeviceCapture implements Runnable {
+  private final String          name;
+  private final TargetDataLine  line;
+  private final AudioFormat     format;
+  private final SampleRing      ring;
+  private final int             readSize;
+  private volatile FrameClock   clock;
+  private volatile boolean      running;
+
+  /**
+   * Opens the device's line
+   * @param format format to capture (the channel count is replaced by the most supported up to maxChannels)
+   * @param ringCapacity minimum ring size in bytes (the ring always holds at least what profile asks for)
+   * @throws LineUnavailableException if the device can't capture in format or is in use
+   */
+  DeviceCapture (Mixer.Info mixerInfo, AudioFormat format, int maxChannels, int ringCapacity, LatencyProfile profile)
+      throws LineUnavailableException {
+    name = mixerInfo.getName().trim();
+    Mixer mixer = AudioSystem.getMixer(mixerInfo);
+    this.format = chooseFormat(mixer, format, maxChannels);
+    if (this.format == null) {
+      throw new LineUnavailableException(name + " does not support " + format);
+    }
+    line = (TargetDataLine) mixer.getLine(new DataLine.Info(TargetDataLine.class, this.format));
+    int bufferSize = profile.getBufferBytes(this.format);
+    if (bufferSize > 0) {
+      // The line may round this to a size it supports (see getBufferSize())
+      line.open(this.format, bufferSize);
+    } else {
+      line.open(this.format);
+    }
+    readSize = profile.getReadBytes(this.format);
+    ring = new SampleRing(Math.max(ringCapacity, profile.getRingBytes(this.format)));
+    running = true;
+  }
+
+  /**
+   * @return format with the most channels, up to maxChannels, that mixer supports for capture, trying
+   * the byte order of format first, or null if there's no such format
+   */
+  static AudioFormat chooseFormat (Mixer mixer, AudioFormat format, int maxChannels) {
+    int bytes = (format.getSampleSizeInBits() + 7) / 8;
+    for (int channels = Math.max(1, maxChannels); channels >= 1; channels--) {
+      for (boolean bigEndian : new boolean[] {format.isBigEndian(), !format.isBigEndian()}) {
+        AudioFormat fmt = new AudioFormat(format.getEncoding(), format.getSampleRate(), format.getSampleSizeInBits(), channels,
+                                          bytes * channels, format.getSampleRate(), bigEndian);
+        if (mixer.isLineSupported(new DataLine.Info(TargetDataLine.class, fmt))) {
+          return fmt;
+        }
+      }
+    }
+    return null;
+  }
+
+  String getName () {
+    return name;
+  }
+
+  AudioFormat getFormat () {
+    return format;
+  }
+
+  SampleRing getRing () {
+    return ring;
+  }
+
+  /**
+   * @return size of the line's buffer in bytes
+   */
+  int getBufferSize () {
+    return line.getBufferSize();
+  }
+
+  /**
+   * @return bytes read from the line at a time
+   */
+  int getReadSize () {
+    return readSize;
+  }
+
+  /**
+   * Sets a clock to be updated with the line's frame position after each read
+   */
+  void setClock (FrameClock clock) {
+    this.clock = clock;
+  }
+
+  void start () {
+    new Thread(this, "Capture " + name).start();
+  }
+
+  void stop () {
+    running = false;
+  }
+
+  /**
+   * Captures until stop() is called, then closes the line and the ring.  Call directly to capture
+   * on the calling thread, or use start().
+   */
+  public void run () {
+    try {
+      line.start();
+      byte[] buffer = new byte[readSize];
+      while (running) {
+        // read() blocks until the buffer is filled
+        int size = line.read(buffer, 0, buffer.length);
+        if (size > 0) {
+          ring.write(buffer, 0, size);
+          FrameClock clock = this.clock;
+          if (clock != null) {
+            clock.update(line.getLongFramePosition(), System.nanoTime());
+          }
+        }
+      }
+    } finally {
+      line.close();
+      ring.close();
+    }
+  }
+}
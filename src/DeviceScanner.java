@@ -0,0 +1,183 @@
+import javax.sound.sampled.*;
+import java.util.*;
+import java.util.List;
+import java.util.prefs.Preferences;
+
+  /*
+   *  Finds the audio inputs that can capture in a given format.  Enumerating them means asking every
+   *  mixer for a line, which takes seconds on machines with many USB or virtual devices, so it's
+   *  done on a background thread:
+   *
+   *    - the names found by the last scan are cached in prefs, so the Input menu can be shown at once
+   *    - the last used input is looked up on its own first, so it can be started without waiting
+   *    - then every device is scanned, and rescanned every RESCAN seconds (pref device.rescan) to
+   *      pick up devices plugged in or removed
+   *
+   *  Scanning never opens a line, so it doesn't disturb a capture in progress.  The Listener is
+   *  called on the scanning thread.
+   */
+
+class DeviceScanner implements Runnable {
+  private static final int      RESCAN = 10;
+  private final Preferences     prefs;
+  private final AudioFormat     format;
+  private final Listener        listener;
+  private final Thread          thread;
+  private List<String>          lastNames;
+
+  interface Listener {
+    /**
+     * Called when the last used input has been found, before the full scan
+     */
+    void inputFound (InputSource source);
+
+    /**
+     * Called after a scan that found a different set of inputs from the one before
+     */
+    void inputsChanged (List<InputSource> sources);
+  }
+
+  static class InputSource {
+    Mixer.Info  mixerInfo;
+    Line.Info   lineInfo;
+    AudioFormat format;
+
+    InputSource (Mixer.Info mixerInfo, Line.Info lineInfo, AudioFormat format) {
+      this.mixerInfo = mixerInfo;
+      this.lineInfo = lineInfo;
+      this.format = format;
+    }
+
+    String getName () {
+      return mixerInfo.getName().trim();
+    }
+  }
+
+  static class DupMap<K,V> extends TreeMap<K,V> {
+    Map<K,Integer> counts = new HashMap<>();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put (K name, V val) {
+      if (containsKey(name)) {
+        if (counts.containsKey(name)) {
+          int next = counts.get(name) + 1;
+          super.put((K) (name + "-" + Integer.toString(next)), val);
+          counts.put(name, next);
+        } else {
+          super.put((K) (name + "-" + Integer.toString(1)), remove(name));
+          super.put((K) (name + "-" + Integer.toString(2)), val);
+          counts.put(name, 2);
+        }
+      } else {
+        super.put(name, val);
+      }
+      return val;
+    }
+  }
+
+  /**
+   * @param prefs where the names of the inputs found are cached (device.cache)
+   */
+  DeviceScanner (Preferences prefs, AudioFormat format, Listener listener) {
+    this.prefs = prefs;
+    this.format = format;
+    this.listener = listener;
+    thread = new Thread(this, "Device Scan");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+  }
+
+  /**
+   * @return names of the inputs found by the last scan, in any run of the program
+   */
+  static List<String> getCachedNames (Preferences prefs) {
+    List<String> names = new ArrayList<>();
+    for (String name : prefs.get("device.cache", "").split("\n")) {
+      if (!name.isEmpty()) {
+        names.add(name);
+      }
+    }
+    return names;
+  }
+
+  void start () {
+    thread.start();
+  }
+
+  public void run () {
+    String last = prefs.get("audio.input", null);
+    if (last != null) {
+      List<InputSource> found = getInputSources(format, last);
+      if (!found.isEmpty()) {
+        listener.inputFound(found.get(0));
+      }
+    }
+    while (true) {
+      List<InputSource> sources = getInputSources(format, null);
+      List<String> names = new ArrayList<>();
+      for (InputSource source : sources) {
+        names.add(source.getName());
+      }
+      if (!names.equals(lastNames)) {
+        lastNames = names;
+        prefs.put("device.cache", String.join("\n", names));
+        listener.inputsChanged(sources);
+      }
+      try {
+        Thread.sleep(prefs.getInt("device.rescan", RESCAN) * 1000L);
+      } catch (InterruptedException ex) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * This code enemuerates all the audio input sources available and attempts to pair them with
+   * an audio mixer than can access the various controls, such as as gain, balance and mute.
+   * Note: some input sources, such as digital audio inputs, may have no controls
+   * @param format specifies the AudioFormat the source must support
+   * @param only name of the one input to look for, or null for all of them
+   * @return a List of InputSource objects, each of which describes an input source
+   */
+  static List<InputSource> getInputSources (AudioFormat format, String only) {
+    // Use DupMap to handle devices that return the same name
+    Map<String, Mixer.Info> mixers = new DupMap<>();
+    Map<String, Line.Info> sources = new DupMap<>();
+    for (Mixer.Info mixerInfo : AudioSystem.getMixerInfo()) {
+      String mixerName = mixerInfo.getName().trim();
+      if (only != null && !mixerName.equals(only) && !mixerName.equals("Port " + only)) {
+        // Skip the slow part for the mixers that aren't wanted
+        continue;
+      }
+      Mixer targetMixer = AudioSystem.getMixer(mixerInfo);
+      // Accept either byte order, as DeviceCapture opens the line in whichever the device supports
+      AudioFormat lineFormat = DeviceCapture.chooseFormat(targetMixer, format, 1);
+      if (lineFormat != null) {
+        try {
+          TargetDataLine targetLine = (TargetDataLine) targetMixer.getLine(new DataLine.Info(TargetDataLine.class, lineFormat));
+          if (targetLine != null) {
+            mixers.put(mixerName, mixerInfo);
+          }
+        } catch (LineUnavailableException ex) {
+          // Just let loop continue
+        }
+      } else {
+        for (Line.Info lineInfo : targetMixer.getSourceLineInfo()) {
+          if (mixerName.startsWith("Port ")) {
+            sources.put(mixerName, lineInfo);
+          }
+        }
+      }
+    }
+    List<InputSource> srcList = new ArrayList<>();
+    for (String key : mixers.keySet()) {
+      Line.Info lineInfo = sources.get("Port " + key);
+      if (lineInfo != null) {
+        srcList.add(new InputSource(mixers.get(key), lineInfo, format));
+
+      }
+    }
+    return srcList;
+  }
+}
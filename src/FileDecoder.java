@@ -0,0 +1,191 @@
+import javax.sound.sampled.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+  /*
+   *  Headless decoder for recorded audio files (WAV, AIFF, AU, or anything else AudioSystem can
+   *  read).  Files are pushed through LtcDecoder as fast as they can be read from disk and each
+   *  decoded frame is written as a line of text with the sample offset of its SYNC word:
+   *
+   *    <sample offset> <tab> HH:MM:SS:FF [<tab> 0000xxxx:0000xxxx:0000xxxx:0000xxxx]
+   *
+   *  With -p, PCM WAV and AIFF files are decoded on several threads by ParallelDecoder.  With -pll,
+   *  the bit clock is recovered by PllSlicer, which also decodes shuttle and reverse play, and with
+   *  -filter noisy recordings go through InputFilter first (either way, files are then decoded on
+   *  one thread, as ParallelDecoder only splits the classic slicer's state).
+   *
+   *  Usage: java -jar TimecodeReader.jar [-c channel] [-p threads] [-pll [-bw hertz]] [-filter] [-raw] [-o outFile] file ...
+   */
+
+class FileDecoder implements LtcDecoder.FrameListener {
+  private static final int      BUFFER_SIZE = 64 * 1024;
+  private final Writer          out;
+  private final boolean         raw;
+  private boolean               pll;
+  private double                bandwidth = PllSlicer.DEFAULT_BANDWIDTH;
+  private boolean               filter;
+  private final char[]          line = new char[20 + 1 + 11 + 1 + 35 + 1];
+  private long                  frames;
+
+  FileDecoder (Writer out, boolean raw) {
+    this.out = out;
+    this.raw = raw;
+  }
+
+  /**
+   * Selects PLL bit clock recovery for files decoded by decode() (see LtcDecoder.setPll())
+   */
+  void setPll (boolean pll) {
+    this.pll = pll;
+  }
+
+  /**
+   * Sets the PLL loop bandwidth for files decoded by decode() (see PllSlicer.setBandwidth())
+   */
+  void setPllBandwidth (double hertz) {
+    bandwidth = hertz;
+  }
+
+  /**
+   * Selects the InputFilter for files decoded by decode() (see LtcDecoder.setFilter())
+   */
+  void setFilter (boolean filter) {
+    this.filter = filter;
+  }
+
+  /**
+   * Decodes all of the audio in file from the given channel
+   * @return number of samples decoded
+   */
+  long decode (File file, int channel) throws IOException, UnsupportedAudioFileException {
+    try (AudioInputStream in = openDecodable(AudioSystem.getAudioInputStream(file))) {
+      AudioFormat format = in.getFormat();
+      LtcDecoder decoder = new LtcDecoder(format, channel, this);
+      decoder.setPll(pll);
+      decoder.setPllBandwidth(bandwidth);
+      decoder.setFilter(filter);
+      int frameSize = format.getFrameSize();
+      byte[] buffer = new byte[BUFFER_SIZE - BUFFER_SIZE % frameSize];
+      int fill = 0;
+      int count;
+      while ((count = in.read(buffer, fill, buffer.length - fill)) >= 0) {
+        fill += count;
+        // Only pass whole sample frames to the decoder
+        int whole = fill - fill % frameSize;
+        decoder.process(buffer, 0, whole);
+        System.arraycopy(buffer, whole, buffer, 0, fill - whole);
+        fill -= whole;
+      }
+      return decoder.getSamplePosition();
+    }
+  }
+
+  /**
+   * Returns a stream that LtcDecoder can decode, converting the input to 16 bit signed PCM only if
+   * it's not in a format LtcDecoder supports natively (such as u-law or a-law)
+   */
+  static AudioInputStream openDecodable (AudioInputStream in) {
+    AudioFormat format = in.getFormat();
+    if (LtcDecoder.isSupported(format)) {
+      return in;
+    }
+    AudioFormat target = new AudioFormat(format.getSampleRate(), 16, format.getChannels(), true, format.isBigEndian());
+    return AudioSystem.getAudioInputStream(target, in);
+  }
+
+  public void frameDecoded (long frame, long sample) {
+    // Format sample offset right to left into a fixed 20 char field, then shift it down
+    int end = 20;
+    do {
+      line[--end] = (char) ('0' + sample % 10);
+      sample /= 10;
+    } while (sample > 0);
+    System.arraycopy(line, end, line, 0, 20 - end);
+    int pos = 20 - end;
+    line[pos++] = '\t';
+    pos = LtcDecoder.formatTimecode(frame, line, pos);
+    if (raw) {
+      line[pos++] = '\t';
+      pos = LtcDecoder.formatRaw(frame, line, pos);
+    }
+    line[pos++] = '\n';
+    try {
+      out.write(line, 0, pos);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    frames++;
+  }
+
+  public static void main (String[] args) {
+    int channel = 0;
+    int threads = 0;
+    boolean raw = false;
+    boolean pll = false;
+    double bandwidth = PllSlicer.DEFAULT_BANDWIDTH;
+    boolean filter = false;
+    String outFile = null;
+    java.util.List<File> files = new java.util.ArrayList<>();
+    for (int ii = 0; ii < args.length; ii++) {
+      switch (args[ii]) {
+        case "-c":
+          channel = Integer.parseInt(args[++ii]);
+          break;
+        case "-p":
+          threads = Integer.parseInt(args[++ii]);
+          break;
+        case "-pll":
+          pll = true;
+          break;
+        case "-bw":
+          bandwidth = Double.parseDouble(args[++ii]);
+          break;
+        case "-filter":
+          filter = true;
+          break;
+        case "-raw":
+          raw = true;
+          break;
+        case "-o":
+          outFile = args[++ii];
+          break;
+        default:
+          files.add(new File(args[ii]));
+          break;
+      }
+    }
+    if (files.isEmpty()) {
+      System.err.println("Usage: java -jar TimecodeReader.jar [-c channel] [-p threads] [-pll [-bw hertz]] [-filter] [-raw] [-o outFile] file ...");
+      System.exit(1);
+    }
+    try (Writer out = new BufferedWriter(new OutputStreamWriter(outFile != null ? new FileOutputStream(outFile) : System.out,
+                                                                StandardCharsets.UTF_8), BUFFER_SIZE)) {
+      FileDecoder fileDecoder = new FileDecoder(out, raw);
+      fileDecoder.setPll(pll);
+      fileDecoder.setPllBandwidth(bandwidth);
+      fileDecoder.setFilter(filter);
+      for (File file : files) {
+        if (files.size() > 1) {
+          out.write("# " + file.getPath() + "\n");
+        }
+        long start = System.nanoTime();
+        long startFrames = fileDecoder.frames;
+        long samples;
+        if (threads > 0 && !pll && !filter) {
+          ParallelDecoder parallel = new ParallelDecoder(file, channel);
+          parallel.decode(threads, fileDecoder);
+          samples = parallel.getSampleCount();
+        } else {
+          samples = fileDecoder.decode(file, channel);
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        float rate = AudioSystem.getAudioFileFormat(file).getFormat().getSampleRate();
+        System.err.printf("%s: %d frames, %d samples in %.3f s (%.0f samples/s, %.0fx realtime)%n", file.getName(),
+                          fileDecoder.frames - startFrames, samples, secs, samples / secs, samples / secs / rate);
+      }
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      System.exit(-2);
+    }
+  }
+}
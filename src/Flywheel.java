@@ -0,0 +1,185 @@
+  /*
+   *  Flywheel (freewheel) for LtcDecoder.  Once two consecutive frames have been received, the
+   *  next frame's timecode and SYNC sample are predicted from the last frame and the measured
+   *  frame period.  Then:
+   *
+   *    - if a frame is a quarter period overdue (dropout, bad patch of tape), the predicted frame
+   *      is passed on in its place, flagged as predicted, for up to a set number of frames
+   *    - a received frame that arrives on time but doesn't match the prediction (a bit error that
+   *      still passes the BCD check) is replaced by the predicted frame
+   *    - a received frame that doesn't match but is followed by its own successor (a real jump,
+   *      such as an edit or a change of direction) relocks the flywheel to the new timecode, so a
+   *      jump is passed on one frame late
+   *
+   *  User bits and flags of predicted frames are those of the last frame received.  The frame rate
+   *  used to count frames is the decoder's measured rate (see RateDetector), or 24, 25 or 30 if
+   *  that's too low for the highest frame number seen, and drop frame counting follows the
+   *  frame's drop frame flag.
+   */
+
+class Flywheel {
+  private static final int[]    RATES = {24, 25, 30};
+  private final LtcDecoder      decoder;
+  private final float           sampleRate;
+  private int                   maxPredicted;
+  // Last frame passed on
+  private int                   matched;                  // Consecutive frames seen that followed each other
+  private long                  lastFrame;
+  private int                   lastTimecode;
+  private long                  lastSample;
+  private int                   step = 1;                 // 1 playing forward, -1 backward
+  private double                period;                   // Samples per frame
+  private int                   predicted;                // Predicted frames passed on since the last real one
+  // Frame rate
+  private int                   maxFrameNumber;
+  private boolean               wrapped;
+  // Last frame rejected (may be the first of a jump)
+  private int                   rejectTimecode = -1;
+  private long                  rejectSample;
+
+  /**
+   * @param maxPredicted most predicted frames to pass on in a row before waiting for a real one
+   */
+  Flywheel (LtcDecoder decoder, float sampleRate, int maxPredicted) {
+    this.decoder = decoder;
+    this.sampleRate = sampleRate;
+    this.maxPredicted = maxPredicted;
+  }
+
+  void setMaxPredicted (int maxPredicted) {
+    this.maxPredicted = maxPredicted;
+  }
+
+  int getMaxPredicted () {
+    return maxPredicted;
+  }
+
+  void reset () {
+    matched = 0;
+    predicted = 0;
+    maxFrameNumber = 0;
+    wrapped = false;
+    rejectTimecode = -1;
+  }
+
+  /**
+   * @return true if the flywheel is predicting frames
+   */
+  boolean isLocked () {
+    return matched >= 2;
+  }
+
+  /**
+   * Called by LtcDecoder for each frame received that passes the BCD check
+   */
+  void received (long frame, long sample) {
+    int timecode = TimecodeIndex.pack(frame);
+    int frameNumber = timecode & 0xFF;
+    if (frameNumber < (lastTimecode & 0xFF) && step > 0 && matched > 0) {
+      wrapped = true;
+    }
+    maxFrameNumber = Math.max(maxFrameNumber, frameNumber);
+    if (matched == 0) {
+      accept(frame, timecode, sample, 1);
+      return;
+    }
+    long elapsed = sample - lastSample;
+    if (matched == 1) {
+      // Second frame sets the direction and period, if it follows the first
+      int dir = follows(lastTimecode, timecode, frame, 1) ? 1 : follows(lastTimecode, timecode, frame, -1) ? -1 : 0;
+      if (dir != 0 && elapsed > 0) {
+        step = dir;
+        period = elapsed;
+        accept(frame, timecode, sample, 2);
+      } else {
+        accept(frame, timecode, sample, 1);
+      }
+      return;
+    }
+    int frames = Math.max(1, (int) Math.round(elapsed / period));
+    if (timecode == advance(lastTimecode, frame, step * frames)) {
+      if (predicted == 0 && frames == 1) {
+        // Follow speed changes (the loop averages out sample jitter)
+        period += (elapsed - period) / 4;
+      }
+      accept(frame, timecode, sample, matched + 1);
+    } else if (rejectTimecode >= 0 && Math.abs(sample - rejectSample - period) < period / 4 &&
+               (follows(rejectTimecode, timecode, frame, 1) || follows(rejectTimecode, timecode, frame, -1))) {
+      // Jumped: relock to the new timecode
+      step = follows(rejectTimecode, timecode, frame, 1) ? 1 : -1;
+      accept(frame, timecode, sample, 2);
+    } else {
+      rejectTimecode = timecode;
+      rejectSample = sample;
+      if (frames == 1 && Math.abs(elapsed - period) < period / 4) {
+        // On time, so most likely a bit error: pass on the prediction instead
+        predict(lastSample + elapsed);
+      }
+    }
+  }
+
+  private void accept (long frame, int timecode, long sample, int matched) {
+    this.matched = matched;
+    lastFrame = frame;
+    lastTimecode = timecode;
+    lastSample = sample;
+    predicted = 0;
+    rejectTimecode = -1;
+    decoder.emitFrame(frame, sample, false);
+  }
+
+  /**
+   * Called by LtcDecoder after each chunk of samples.  Passes on predicted frames for any that are
+   * more than a quarter period overdue.
+   * @param samplePos index of the next sample to be decoded
+   */
+  void advance (long samplePos) {
+    while (matched >= 2 && samplePos > lastSample + period * 1.25) {
+      if (predicted >= maxPredicted) {
+        // Freewheeled long enough, so wait for a real frame
+        matched = 0;
+        return;
+      }
+      predict(lastSample + (long) (period + 0.5));
+    }
+  }
+
+  private void predict (long sample) {
+    lastTimecode = advance(lastTimecode, lastFrame, step);
+    lastFrame = TimecodeIndex.setTimecode(lastFrame, lastTimecode);
+    lastSample = sample;
+    predicted++;
+    decoder.emitFrame(lastFrame, sample, true);
+  }
+
+  private boolean follows (int from, int timecode, long frame, int dir) {
+    return timecode == advance(from, frame, dir);
+  }
+
+  /**
+   * @return timecode frames after (or before, if negative) timecode, counted at the frame's rate
+   */
+  private int advance (int timecode, long frame, int frames) {
+    int fps = getFps();
+    boolean drop = fps == 30 && LtcDecoder.isDropFrame(frame);
+    long perDay = TimecodeIndex.toFrames(TimecodeIndex.pack(24, 0, 0, 0), fps, drop);
+    long count = TimecodeIndex.toFrames(timecode, fps, drop) + frames;
+    return TimecodeIndex.fromFrames(((count % perDay) + perDay) % perDay, fps, drop);
+  }
+
+  private int getFps () {
+    int least = maxFrameNumber + 1;
+    FrameRate rate = decoder.getFrameRate();
+    if (rate != null) {
+      least = Math.max(least, rate.getFps());
+    } else if (!wrapped && period > 0) {
+      least = Math.max(least, (int) Math.round(sampleRate / period));
+    }
+    for (int fps : RATES) {
+      if (fps >= least) {
+        return fps;
+      }
+    }
+    return RATES[RATES.length - 1];
+  }
+}
@@ -0,0 +1,135 @@
+import java.util.Arrays;
+
+  /*
+   *  Relates decoded frames to the capture sample clock for jam sync.  The capture thread calls
+   *  update() after each read with the TargetDataLine's frame position, which gives an estimate of
+   *  the sample index being captured at any instant.  Frames arrive from the decoder tagged with
+   *  the absolute sample index of their frame boundary (the end of the SYNC word), so each frame
+   *  can be passed on with its capture-to-decode latency, and the phase within the current frame
+   *  can be queried at any time from any thread.
+   */
+
+class FrameClock implements LtcDecoder.FrameListener {
+  interface Listener {
+    /**
+     * Called from the decoding thread for each valid frame
+     * @param frame packed frame bits (see LtcDecoder)
+     * @param sample absolute sample index (line frame position) of the frame boundary
+     * @param latency estimated time in nanoseconds from capture of the boundary sample until now, or -1 if unknown
+     */
+    void frameTimed (long frame, long sample, long latency);
+  }
+
+  private final double          rate;
+  private volatile Listener[]   listeners = new Listener[0];
+  // Capture clock, written by the capture thread (seqlock: odd count means update in progress)
+  private volatile int          clockSeq;
+  private volatile long         clockPos = -1, clockNanos;
+  // Last frame, written by the decoding thread
+  private volatile int          frameSeq;
+  private volatile long         lastFrame, lastSample = -1;
+  private volatile double       period;
+
+  /**
+   * @param rate sample rate in samples (frames) per second
+   */
+  FrameClock (float rate) {
+    this.rate = rate;
+  }
+
+  synchronized void addListener (Listener listener) {
+    Listener[] list = Arrays.copyOf(listeners, listeners.length + 1);
+    list[list.length - 1] = listener;
+    listeners = list;
+  }
+
+  synchronized void removeListener (Listener listener) {
+    Listener[] list = listeners;
+    for (int ii = 0; ii < list.length; ii++) {
+      if (list[ii] == listener) {
+        Listener[] copy = Arrays.copyOf(list, list.length - 1);
+        System.arraycopy(list, ii + 1, copy, ii, list.length - ii - 1);
+        listeners = copy;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Called by the capture thread with the line's frame position and the time it was read
+   */
+  void update (long framePosition, long nanoTime) {
+    int seq = clockSeq;
+    clockSeq = seq + 1;
+    clockPos = framePosition;
+    clockNanos = nanoTime;
+    clockSeq = seq + 2;
+  }
+
+  /**
+   * @return estimated sample index being captured at nanoTime, or -1 if the clock hasn't been updated
+   */
+  double positionAt (long nanoTime) {
+    long pos, nanos;
+    int seq;
+    do {
+      seq = clockSeq;
+      pos = clockPos;
+      nanos = clockNanos;
+    } while ((seq & 1) != 0 || seq != clockSeq);
+    return pos < 0 ? -1 : pos + (nanoTime - nanos) * rate / 1e9;
+  }
+
+  public void frameDecoded (long frame, long sample) {
+    long now = System.nanoTime();
+    long prev = lastSample;
+    int seq = frameSeq;
+    frameSeq = seq + 1;
+    // Ignore spacing across missing frames when measuring the frame period
+    if (prev >= 0 && sample > prev && (period == 0 || sample - prev < period * 1.5)) {
+      period = sample - prev;
+    }
+    lastFrame = frame;
+    lastSample = sample;
+    frameSeq = seq + 2;
+    double pos = positionAt(now);
+    long latency = pos < 0 ? -1 : Math.max(0, (long) ((pos - sample) * 1e9 / rate));
+    for (Listener listener : listeners) {
+      listener.frameTimed(frame, sample, latency);
+    }
+  }
+
+  /**
+   * @return the packed bits of the last frame decoded
+   */
+  long getLastFrame () {
+    return lastFrame;
+  }
+
+  /**
+   * @return how far the capture clock is into the frame following the last one decoded, as a fraction
+   * of the measured frame period (values >= 1 mean frames are missing), or -1 if not yet known
+   */
+  double getSubFramePhase () {
+    long sample;
+    double per;
+    int seq;
+    do {
+      seq = frameSeq;
+      sample = lastSample;
+      per = period;
+    } while ((seq & 1) != 0 || seq != frameSeq);
+    double pos = positionAt(System.nanoTime());
+    if (sample < 0 || per <= 0 || pos < 0) {
+      return -1;
+    }
+    return (pos - sample) / per;
+  }
+
+  /**
+   * @return measured frame period in samples, or 0 if fewer than two frames have been decoded
+   */
+  double getFramePeriod () {
+    return period;
+  }
+}
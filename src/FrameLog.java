@@ -0,0 +1,90 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+  /*
+   *  Fixed capacity single-producer / single-consumer queue of decoded frames (packed frame bits
+   *  plus sample index).  The decoder thread adds frames without locking or allocating and the
+   *  Swing thread drains them in batches.  If the consumer falls behind, new frames are dropped
+   *  and counted rather than blocking the decoder.
+   */
+
+class FrameLog {
+  private final long[]          entries;
+  private final int             mask;
+  private final AtomicLong      head = new AtomicLong();      // Next frame to write (producer owned)
+  private final AtomicLong      tail = new AtomicLong();      // Next frame to read (consumer owned)
+  private final AtomicLong      dropped = new AtomicLong();
+
+  /**
+   * @param capacity number of frames the queue can hold (rounded up to the next power of 2)
+   */
+  FrameLog (int capacity) {
+    int size = Integer.highestOneBit(Math.max(capacity, 2));
+    if (size < capacity) {
+      size <<= 1;
+    }
+    entries = new long[size * 2];
+    mask = size - 1;
+  }
+
+  /**
+   * Called by the producer thread
+   * @return false if the queue was full and the frame was dropped
+   */
+  boolean add (long frame, long sample) {
+    long wr = head.get();
+    if (wr - tail.get() > mask) {
+      dropped.incrementAndGet();
+      return false;
+    }
+    int idx = ((int) wr & mask) * 2;
+    entries[idx] = frame;
+    entries[idx + 1] = sample;
+    head.lazySet(wr + 1);
+    return true;
+  }
+
+  /**
+   * Called by the consumer thread to take up to max frames
+   * @param dst receives frame, sample pairs
+   * @return number of frames copied into dst
+   */
+  int read (long[] dst, int max) {
+    long rd = tail.get();
+    int count = (int) Math.min(head.get() - rd, Math.min(max, dst.length / 2));
+    for (int ii = 0; ii < count; ii++) {
+      int idx = ((int) (rd + ii) & mask) * 2;
+      dst[ii * 2] = entries[idx];
+      dst[ii * 2 + 1] = entries[idx + 1];
+    }
+    tail.lazySet(rd + count);
+    return count;
+  }
+
+  /**
+   * @return number of frames that can be added before the queue is full
+   */
+  int getSpace () {
+    return (int) (mask + 1 - (head.get() - tail.get()));
+  }
+
+  /**
+   * @return number of frames ever added, which is the position of the next frame to be added
+   */
+  long getAdded () {
+    return head.get();
+  }
+
+  /**
+   * Called by the consumer thread to discard the frames before position (see getAdded())
+   */
+  void skip (long position) {
+    long rd = tail.get();
+    if (position > rd) {
+      tail.lazySet(Math.min(position, head.get()));
+    }
+  }
+
+  long getDropped () {
+    return dropped.get();
+  }
+}
@@ -0,0 +1,79 @@
+  /*
+   *  LTC frame rates.  The 1000/1001 rates (23.976 and 29.97) carry the same frame numbers as 24
+   *  and 30, so they can only be told apart by timing (see RateDetector).  Drop frame counting
+   *  is flagged by bit 10 of the frame, and is only used at 29.97 (and, rarely, 30) fps.
+   */
+
+enum FrameRate {
+  FPS_23_976  (24, true, false, "23.976"),
+  FPS_24      (24, false, false, "24"),
+  FPS_25      (25, false, false, "25"),
+  FPS_29_97   (30, true, false, "29.97"),
+  FPS_29_97_DF(30, true, true, "29.97"),
+  FPS_30      (30, false, false, "30"),
+  FPS_30_DF   (30, false, true, "30");
+
+  private final int             fps;
+  private final boolean         pulldown;
+  private final boolean         drop;
+  private final String          name;
+
+  FrameRate (int fps, boolean pulldown, boolean drop, String name) {
+    this.fps = fps;
+    this.pulldown = pulldown;
+    this.drop = drop;
+    this.name = name;
+  }
+
+  /**
+   * @return frames counted per timecode second (24, 25 or 30)
+   */
+  int getFps () {
+    return fps;
+  }
+
+  /**
+   * @return true if the rate is slowed by 1000/1001 from getFps()
+   */
+  boolean isPulldown () {
+    return pulldown;
+  }
+
+  /**
+   * @return true if frame numbers are dropped at the start of each minute (other than every 10th)
+   */
+  boolean isDrop () {
+    return drop;
+  }
+
+  /**
+   * @return frames per second of real time
+   */
+  double getRate () {
+    return pulldown ? fps * 1000.0 / 1001 : fps;
+  }
+
+  /**
+   * @return the rate for fps, adjusted for 1000/1001 and drop frame (drop frame is ignored at 24 and 25 fps)
+   */
+  static FrameRate of (int fps, boolean pulldown, boolean drop) {
+    switch (fps) {
+      case 24:
+        return pulldown ? FPS_23_976 : FPS_24;
+      case 25:
+        return FPS_25;
+      case 30:
+        return pulldown ? (drop ? FPS_29_97_DF : FPS_29_97) : (drop ? FPS_30_DF : FPS_30);
+      default:
+        throw new IllegalArgumentException("Unsupported frame rate: " + fps);
+    }
+  }
+
+  /**
+   * @return as shown to the user, such as "29.97 fps (drop frame)"
+   */
+  @Override
+  public String toString () {
+    return name + " fps" + (drop ? " (drop frame)" : "");
+  }
+}
@@ -0,0 +1,299 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+  /*
+   *  Sends decoded frames to other machines as UDP datagrams, unicast to each target or to
+   *  multicast groups.  Decoder threads only copy each frame into a preallocated queue, and a
+   *  dedicated sender thread encodes it into a preallocated buffer and sends it, so a slow
+   *  network never holds up decoding, and nothing is allocated per frame on either thread.
+   *  If the sender falls QUEUE frames behind, frames are dropped and counted rather than queued.
+   *  Decoder threads claim a slot and its sequence number together with a compare and set, and
+   *  mark the slot written once they've filled it, so they never wait on a lock or each other.
+   *
+   *  Binary datagram layout (36 bytes, big endian):
+   *
+   *    int     magic ('LTCF')
+   *    int     sequence number (counts every frame queued, so gaps show frames dropped)
+   *    byte    stream (input number << 4 | channel)
+   *    byte    flags (bit 0 = predicted by the flywheel, bit 1 = drop frame)
+   *    short   frame rate in 1/100 fps (2397, 2400, 2500, 2997 or 3000), or 0 if not known yet
+   *    int     timecode packed as 0xHHMMSSFF (binary, not BCD)
+   *    int     user bits (see LtcDecoder.getUserBits())
+   *    long    the 64 data bits of the frame (see LtcDecoder), for the flag bits
+   *    long    sample position of the frame's SYNC word
+   *
+   *  or, as OSC, a message to /ltc/frame with arguments stream (i), timecode "HH:MM:SS:FF" (s),
+   *  user bits (i), frame rate (f, 0 if not known), flags (i, as above) and sample position (h).
+   *
+   *  Send latency (from the frame being queued until its datagrams have been sent) and drops are
+   *  counted for getStats().  Usage: java -cp TimecodeReader.jar FrameSender listen [group:]port [interface]
+   *  prints the frames received on a port (joining the multicast group, if given, on the named
+   *  interface), to check a sender on loopback or the LAN.
+   */
+
+class FrameSender implements AutoCloseable {
+  static final int              MAGIC = 0x4C544346;       // 'LTCF'
+  static final int              BINARY_SIZE = 36;
+  private static final int      QUEUE = 256;              // Frames queued (power of 2)
+  private static final int      SLOT = 4;                 // longs per queued frame
+  private static final int      MAX_PACKET = 96;
+  private final DatagramChannel channel;
+  private final InetSocketAddress[] targets;
+  private final boolean         osc;
+  private final Thread          thread;
+  private volatile boolean      running = true;
+  // Queue of frames: frame, sample, sequence/rate/flags/stream, nanos queued
+  private final long[]          queue = new long[QUEUE * SLOT];
+  // Frames offered (sequence number) << 32 | next slot to write (both wrap), claimed by decoder threads
+  private final AtomicLong      head = new AtomicLong();
+  // Slot number + 1 of the frame last written to each slot, set once the frame is ready to send
+  private final AtomicIntegerArray written = new AtomicIntegerArray(QUEUE);
+  private volatile int          tail;                     // Next slot to send (sender thread)
+  private volatile Thread       waiter;
+  // Sender thread
+  private final ByteBuffer      packet = ByteBuffer.allocateDirect(MAX_PACKET);
+  private final char[]          tcChars = new char[11];
+  // Statistics (written by the sender thread, except dropped)
+  private final AtomicLong      dropped = new AtomicLong();
+  private volatile long         sent, sendErrors, totalLatency, maxLatency, lastLatency;
+
+  /**
+   * @param targets addresses to send each frame to (unicast or multicast)
+   * @param osc true to send OSC messages rather than the binary datagram
+   * @param multicastIf interface to send multicast datagrams from, or null for the system default
+   */
+  FrameSender (InetSocketAddress[] targets, boolean osc, NetworkInterface multicastIf) throws IOException {
+    if (targets.length == 0) {
+      throw new IllegalArgumentException("No targets to send to");
+    }
+    this.targets = targets.clone();
+    this.osc = osc;
+    boolean v6 = targets[0].getAddress() instanceof java.net.Inet6Address;
+    channel = DatagramChannel.open(v6 ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET);
+    // Never block the sender: a full socket buffer counts as a drop
+    channel.configureBlocking(false);
+    channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+    channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, 4);
+    if (multicastIf != null) {
+      channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, multicastIf);
+    }
+    thread = new Thread(this::run, "FrameSender");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MAX_PRIORITY);
+    thread.start();
+  }
+
+  /**
+   * Parses a comma or space separated list of host:port targets
+   */
+  static InetSocketAddress[] parseTargets (String text) throws IOException {
+    List<InetSocketAddress> list = new ArrayList<>();
+    for (String target : text.trim().split("[,\\s]+")) {
+      if (target.isEmpty()) {
+        continue;
+      }
+      int colon = target.lastIndexOf(':');
+      if (colon <= 0) {
+        throw new IllegalArgumentException("Target must be host:port: " + target);
+      }
+      String host = target.substring(0, colon).replace("[", "").replace("]", "");
+      list.add(new InetSocketAddress(InetAddress.getByName(host), Integer.parseInt(target.substring(colon + 1))));
+    }
+    return list.toArray(new InetSocketAddress[0]);
+  }
+
+  /**
+   * @return a listener that sends each frame decoder passes on, along with its frame rate and whether
+   * it was predicted (add it to decoder with LtcDecoder.addListener())
+   * @param stream identifies the input and channel in the datagram (0 - 255)
+   */
+  LtcDecoder.FrameListener listener (LtcDecoder decoder, int stream) {
+    return (frame, sample) -> send(frame, sample, stream, decoder.getFrameRate(), decoder.isPredicted());
+  }
+
+  /**
+   * Queues a frame to be sent.  Never blocks, and may be called from any number of decoder threads.
+   */
+  void send (long frame, long sample, int stream, FrameRate rate, boolean predicted) {
+    long nanos = System.nanoTime();
+    int fps = rate == null ? 0 : (int) (rate.getRate() * 100);
+    long info = (stream & 0xFF) | (predicted ? 0x100 : 0) | (LtcDecoder.isDropFrame(frame) ? 0x200 : 0) | (long) fps << 16;
+    // Take the next sequence number, and the next slot unless the queue is full
+    long hd;
+    int wr;
+    boolean full;
+    do {
+      hd = head.get();
+      wr = (int) hd;
+      full = wr - tail >= QUEUE || !running;
+    } while (!head.compareAndSet(hd, ((hd >>> 32) + 1) << 32 | ((full ? wr : wr + 1) & 0xFFFFFFFFL)));
+    if (full) {
+      dropped.incrementAndGet();
+      return;
+    }
+    int slot = (wr & (QUEUE - 1)) * SLOT;
+    queue[slot] = frame;
+    queue[slot + 1] = sample;
+    queue[slot + 2] = info | (hd & 0xFFFFFFFF00000000L);
+    queue[slot + 3] = nanos;
+    written.set(wr & (QUEUE - 1), wr + 1);
+    Thread wt = waiter;
+    if (wt != null) {
+      LockSupport.unpark(wt);
+    }
+  }
+
+  private void run () {
+    // Once stopped, carry on until the queue is empty
+    while (running || tail != (int) head.get()) {
+      int rd = tail;
+      if (written.get(rd & (QUEUE - 1)) != rd + 1) {
+        // Empty, or the next frame is still being written
+        waiter = thread;
+        if (written.get(rd & (QUEUE - 1)) != rd + 1 && running) {
+          LockSupport.park(this);
+        }
+        waiter = null;
+        continue;
+      }
+      int slot = (rd & (QUEUE - 1)) * SLOT;
+      long frame = queue[slot];
+      long sample = queue[slot + 1];
+      long info = queue[slot + 2];
+      long nanos = queue[slot + 3];
+      tail = rd + 1;
+      packet.clear();
+      if (osc) {
+        encodeOsc(frame, sample, info);
+      } else {
+        encodeBinary(frame, sample, info);
+      }
+      packet.flip();
+      boolean ok = true;
+      for (InetSocketAddress target : targets) {
+        packet.position(0);
+        try {
+          ok &= channel.send(packet, target) > 0;
+        } catch (IOException ex) {
+          ok = false;
+        }
+      }
+      long latency = System.nanoTime() - nanos;
+      if (ok) {
+        sent++;
+        lastLatency = latency;
+        totalLatency += latency;
+        maxLatency = Math.max(maxLatency, latency);
+      } else {
+        sendErrors++;
+      }
+    }
+  }
+
+  private void encodeBinary (long frame, long sample, long info) {
+    packet.putInt(MAGIC).putInt((int) (info >>> 32));
+    packet.put((byte) info).put((byte) (info >> 8)).putShort((short) (info >> 16));
+    packet.putInt(TimecodeIndex.pack(frame)).putInt(LtcDecoder.getUserBits(frame));
+    packet.putLong(frame).putLong(sample);
+  }
+
+  private void encodeOsc (long frame, long sample, long info) {
+    putOscString("/ltc/frame");
+    putOscString(",isifih");
+    packet.putInt((int) info & 0xFF);
+    LtcDecoder.formatTimecode(frame, tcChars, 0);
+    for (char ch : tcChars) {
+      packet.put((byte) ch);
+    }
+    packet.put((byte) 0);                                   // 11 chars + null is already a multiple of 4
+    packet.putInt(LtcDecoder.getUserBits(frame));
+    packet.putFloat((int) (info >> 16 & 0xFFFF) / 100f);
+    packet.putInt((int) (info >> 8) & 0xFF);
+    packet.putLong(sample);
+  }
+
+  // OSC strings are null terminated and padded with nulls to a multiple of 4 bytes
+  private void putOscString (String text) {
+    for (int ii = 0; ii < text.length(); ii++) {
+      packet.put((byte) text.charAt(ii));
+    }
+    do {
+      packet.put((byte) 0);
+    } while ((packet.position() & 3) != 0);
+  }
+
+  /**
+   * @return {frames sent, frames dropped (queue full or send failed), mean latency ns, max latency ns,
+   * last latency ns}
+   */
+  long[] getStats () {
+    long count = sent;
+    return new long[] {count, dropped.get() + sendErrors, count > 0 ? totalLatency / count : 0, maxLatency, lastLatency};
+  }
+
+  /**
+   * Stops the sender thread, once it has sent any frames queued, and closes the channel
+   */
+  public void close () throws IOException {
+    running = false;
+    LockSupport.unpark(thread);
+    try {
+      thread.join(1000);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    channel.close();
+  }
+
+  public static void main (String[] args) throws Exception {
+    if (args.length < 2 || args.length > 3 || !args[0].equals("listen")) {
+      System.err.println("Usage: FrameSender listen [group:]port [interface]");
+      System.exit(1);
+    }
+    int colon = args[1].lastIndexOf(':');
+    InetAddress group = colon > 0 ? InetAddress.getByName(args[1].substring(0, colon)) : null;
+    int port = Integer.parseInt(args[1].substring(colon + 1));
+    try (DatagramChannel in = DatagramChannel.open(group instanceof java.net.Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET)) {
+      in.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+      in.bind(new InetSocketAddress(port));
+      if (group != null && group.isMulticastAddress()) {
+        in.join(group, args.length > 2 ? NetworkInterface.getByName(args[2]) :
+                       NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress()));
+      }
+      ByteBuffer buf = ByteBuffer.allocate(1500);
+      char[] tc = new char[11];
+      while (true) {
+        buf.clear();
+        in.receive(buf);
+        buf.flip();
+        if (buf.remaining() >= BINARY_SIZE && buf.getInt(0) == MAGIC) {
+          int seq = buf.getInt(4);
+          int stream = buf.get(8) & 0xFF;
+          int flags = buf.get(9);
+          int rate = buf.getShort(10);
+          LtcDecoder.formatTimecode(buf.getLong(20), tc, 0);
+          System.out.printf("%d stream %d %s %s %.2f fps%s sample %d%n", seq, stream, new String(tc),
+                            String.format("%08x", buf.getInt(16)), rate / 100.0, (flags & 1) != 0 ? " predicted" : "", buf.getLong(28));
+        } else {
+          StringBuilder text = new StringBuilder();
+          while (buf.hasRemaining()) {
+            byte bb = buf.get();
+            text.append(bb >= 32 && bb < 127 ? (char) bb : '.');
+          }
+          System.out.println(text);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,80 @@
+import javax.sound.sampled.AudioFormat;
+
+  /*
+   *  Capture buffering, from as little as the audio stack will allow, for chasing live timecode,
+   *  to large buffers that ride out long stalls, for logging.  A profile sets the size of the
+   *  TargetDataLine's buffer, how much DeviceCapture reads from it at a time (a frame boundary
+   *  can't be decoded until the read holding it completes, so this is most of the latency), and
+   *  how much the SampleRing can hold while the decoders catch up.  Decoders take whatever is in
+   *  the ring, so the size of their reads adds no latency.  The measured latency is shown by
+   *  LatencyStats.
+   */
+
+enum LatencyProfile {
+  MINIMAL ("Minimal (Live Chase)", 10, 2, 0.5),
+  LOW     ("Low", 40, 10, 0.5),
+  DEFAULT ("Default", 0, 0, 0.5),
+  LARGE   ("Large (Logging)", 1000, 250, 8);
+
+  private final String          name;
+  private final int             bufferMillis;
+  private final int             readMillis;
+  private final double          ringSeconds;
+
+  /**
+   * @param bufferMillis line buffer, or 0 for the line's default
+   * @param readMillis audio read at a time, or 0 for 512 sample frames
+   * @param ringSeconds least audio the ring holds
+   */
+  LatencyProfile (String name, int bufferMillis, int readMillis, double ringSeconds) {
+    this.name = name;
+    this.bufferMillis = bufferMillis;
+    this.readMillis = readMillis;
+    this.ringSeconds = ringSeconds;
+  }
+
+  /**
+   * @return the profile with the given name(), or DEFAULT if there's none
+   */
+  static LatencyProfile of (String name) {
+    for (LatencyProfile profile : values()) {
+      if (profile.name().equals(name)) {
+        return profile;
+      }
+    }
+    return DEFAULT;
+  }
+
+  /**
+   * @return line buffer size in bytes to ask for, or 0 for the line's default
+   */
+  int getBufferBytes (AudioFormat format) {
+    return bytes(format, bufferMillis / 1000.0);
+  }
+
+  /**
+   * @return bytes to read from the line at a time (a whole number of sample frames)
+   */
+  int getReadBytes (AudioFormat format) {
+    return readMillis > 0 ? Math.max(format.getFrameSize(), bytes(format, readMillis / 1000.0)) : 512 * format.getFrameSize();
+  }
+
+  /**
+   * @return least ring capacity in bytes
+   */
+  int getRingBytes (AudioFormat format) {
+    return bytes(format, ringSeconds);
+  }
+
+  private static int bytes (AudioFormat format, double seconds) {
+    return (int) Math.round(format.getSampleRate() * seconds) * format.getFrameSize();
+  }
+
+  /**
+   * @return as shown in the Input menu
+   */
+  @Override
+  public String toString () {
+    return name;
+  }
+}
@@ -0,0 +1,102 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+  /*
+   *  Measured latency from capture of each frame's boundary sample to the frame being decoded, as
+   *  estimated by FrameClock from the line's frame position.  This takes in the time samples wait
+   *  in the line's buffer and for the read holding them to complete, in the ring, and to be
+   *  decoded, but not any delay in the converter or driver before the line counts a sample as
+   *  captured.
+   *
+   *  Latencies are counted in a histogram of microseconds with SUB buckets for each power of 2
+   *  (so within about 3% from 64 us up), which takes an increment per frame on the decoding thread
+   *  and leaves working out the percentiles to whoever reads them.  Only the decoding thread
+   *  writes the counts, with ordered stores, so they can be read from any thread.
+   */
+
+class LatencyStats implements FrameClock.Listener {
+  private static final int      SUB = 32;
+  private static final int      BUCKETS = 22 * SUB;     // Up to 2^26 us (over a minute)
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private volatile long         frames, total, max, last;
+
+  public void frameTimed (long frame, long sample, long latency) {
+    if (latency < 0) {
+      // Capture clock not running yet
+      return;
+    }
+    long micros = latency / 1000;
+    int bucket = Math.min(bucket(micros), BUCKETS - 1);
+    counts.lazySet(bucket, counts.get(bucket) + 1);
+    last = latency;
+    max = Math.max(max, latency);
+    total += latency;
+    frames++;
+  }
+
+  // Below 2 * SUB us each bucket is 1 us, then each doubling is split into SUB buckets
+  private static int bucket (long micros) {
+    if (micros < 2 * SUB) {
+      return (int) micros;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(micros) - 5;
+    return (shift + 1) * SUB + (int) (micros >>> shift) - SUB;
+  }
+
+  // Returns the highest latency in us counted by bucket
+  private static long upperBound (int bucket) {
+    if (bucket < 2 * SUB) {
+      return bucket;
+    }
+    int shift = bucket / SUB - 1;
+    return ((long) (bucket % SUB + SUB + 1) << shift) - 1;
+  }
+
+  /**
+   * @return number of frames measured
+   */
+  long getFrames () {
+    return frames;
+  }
+
+  /**
+   * @return latency of the last frame measured in nanoseconds
+   */
+  long getLast () {
+    return last;
+  }
+
+  /**
+   * Fills dst with the latencies in milliseconds that the given percentages of frames were measured within
+   * @param percents percentages in increasing order
+   */
+  void percentiles (double[] percents, double[] dst) {
+    long count = 0;
+    for (int ii = 0; ii < BUCKETS; ii++) {
+      count += counts.get(ii);
+    }
+    long seen = 0;
+    int pp = 0;
+    for (int ii = 0; ii < BUCKETS && pp < percents.length; ii++) {
+      seen += counts.get(ii);
+      while (pp < percents.length && seen > 0 && seen >= Math.ceil(percents[pp] * count / 100)) {
+        // The last bucket also counts everything above it
+        dst[pp++] = ii < BUCKETS - 1 ? Math.min(upperBound(ii) / 1e3, max / 1e6) : max / 1e6;
+      }
+    }
+    // Frames counted since the total was taken
+    while (pp < percents.length) {
+      dst[pp++] = max / 1e6;
+    }
+  }
+
+  /**
+   * @return as "n frames, mean x ms, median x ms, 90% x ms, 99% x ms, 99.9% x ms, max x ms"
+   */
+  String summary () {
+    double[] pct = new double[4];
+    percentiles(new double[] {50, 90, 99, 99.9}, pct);
+    long n = frames;
+    return String.format("%d frames, mean %.1f ms, median %.1f ms, 90%% %.1f ms, 99%% %.1f ms, 99.9%% %.1f ms, max %.1f ms", n,
+                         n > 0 ? total / 1e6 / n : 0, pct[0], pct[1], pct[2], pct[3], max / 1e6);
+  }
+}
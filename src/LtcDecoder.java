@@ -0,0 +1,828 @@
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+  /*
+   *  UI-free LTC decoder.  Feed it raw PCM bytes with process() (or feed() for a ByteBuffer) and
+   *  it calls each FrameListener each time a complete, BCD-valid 80 bit frame (64 data bits +
+   *  SYNC) has been received.  Frames are passed as a primitive long, with no objects made per
+   *  frame, and the static getHours(), getFlag(), getUserBits(), etc. read the fields from it.
+   *
+   *  8, 16, 24 and 32 bit integer PCM (signed, or unsigned for 8 bit) and 32 bit float PCM are
+   *  decoded in their native form, at any sample rate, so no AudioSystem conversion is needed.
+   *  The unpacking loop for the format is chosen once, when the decoder is created, and samples
+   *  are unpacked to a common 24 bit scale before slicing.  Unpacking, level metering and finding
+   *  zero crossings are done together by a SampleScanner (vectorized where the JVM supports it),
+   *  so the bit slicer only runs for the samples where there's an edge.
+   *
+   *  The classic slicer only locks near play speed.  setPll(true) switches to PllSlicer, which
+   *  also reads jog, shuttle and reverse play and measures the playback speed and direction.
+   *  setFilter(true) adds an InputFilter in front of either slicer for noisy, hummy or offset inputs.
+   *  setFlywheel() adds a Flywheel after the slicer, which checks each frame against the one it
+   *  predicts, and fills dropouts with predicted frames.  The frame rate (see RateDetector) is
+   *  measured from the frames received, and getFrameRate() gives it for each frame passed on.
+   *  getStats() counts frames, errors, bit jitter, levels and decode time for monitoring.
+   *
+   *  Frames are passed as a packed long holding the four 16 bit frame words, with word 0
+   *  (frame units, bits 0-15 of the LTC frame) in the low 16 bits and word 3 (hours) in the
+   *  high 16 bits, so bit n of the long is bit n of the LTC frame (see layout below).
+   *
+   *  frame[0]  | u  u  u  u | C  d  F  F | u  u  u  u | f  f  f  f |  Frames
+   *             15 14 13 12  11 10 9  8    7  6  5  4   3  2  1  0
+   *
+   *  frame[1]  | u  u  u  u | x  S  S  S | u  u  u  u | s  s  s  s |  Seconds
+   *             31 30 29 28  27 26 25 24  23 22 21 20  19 18 17 16
+   *
+   *  frame[2]  | u  u  u  u | x  M  M  M | u  u  u  u | m  m  m  m |  Minutes
+   *             47 46 45 44  43 42 41 40  39 38 37 36  35 34 33 32
+   *
+   *  frame[3]  | u  u  u  u | x  c  H  H | u  u  u  u | h  h  h  h |  Hours
+   *             63 62 61 60  59 58 57 56  55 54 53 52  51 50 49 49
+   *
+   *  SYNC      | 1  0  1  1 | 1  1  1  1 | 1  1  1  1 | 1  1  0  0 |  SYNC Pattern
+   *             79 78 77 76  75 74 73 72  71 70 69 68  67 66 65 64
+   *
+   *  u = User bits, Upper case = tens, lower case = units
+   *  d = drop frame flag, c = clock sync flag, C = color frame flag
+   *  x = special flag bits bits (usage depends on frame rate)
+   *  if 25 fps
+   *    bit 59 is polarity correction bit
+   *    bit 27 is BFG0 and bit 43 is BFG2
+   *  else
+   *    bit 27 is polarity correction bit (obsolete, or reassigned)
+   *    bit 43 is BFG0 and bit 59 is BFG2
+   *  if BFG0 == 1 user bits contain four 8 bit chars, else unspecified data
+   */
+
+class LtcDecoder {
+  static final int              SYNC = 0xBFFC;
+  static final char[]           HEX = "0123456789abcdef".toCharArray();
+  static final int              STATE_SIZE = 11;
+  // Sample encodings (see unpack())
+  static final int              PCM8S = 0, PCM8U = 1, PCM16BE = 2, PCM16LE = 3, PCM24BE = 4, PCM24LE = 5,
+                                PCM32BE = 6, PCM32LE = 7, FLOAT32BE = 8, FLOAT32LE = 9;
+  static final int              FULL_SCALE = 0x800000;    // Unpacked samples are in the range +/- FULL_SCALE
+  private static final int      CHUNK = 256;              // Samples unpacked at a time
+
+  interface FrameListener {
+    /**
+     * Called from the decoding thread for each valid frame
+     * @param frame packed 64 data bits of the frame (see layout above)
+     * @param sample index of the sample (counted from the last reset) on which the SYNC word completed
+     * (or, played backwards, on which the frame's last data bit completed).  getSpeed(), isLocked() and
+     * isPredicted() and getFrameRate() describe this frame while the listener is being called.
+     */
+    void frameDecoded (long frame, long sample);
+  }
+
+  private volatile FrameListener[] listeners;
+  // AudioFormat-related variables
+  private final int             encoding;
+  private final int             frameSize;
+  private final int             channelOffset;
+  private final int             threshold;                // Smallest step across zero that counts as an edge
+  private final int[]           samples = new int[CHUNK];
+  private final long[]          edges = new long[CHUNK / 64];
+  private final long[]          sums = new long[3];       // Level sums (see SampleScanner)
+  private byte[]                copy;                     // Holds data fed from ByteBuffers without an array
+  private SampleScanner         scanner = SampleScanner.get();
+  private final float           sampleRate;
+  private PllSlicer             pll;
+  private double                pllBandwidth = PllSlicer.DEFAULT_BANDWIDTH;
+  private InputFilter           filter;
+  private boolean               high;                     // Filtered signal last crossed the upper hysteresis level
+  private Flywheel              flywheel;
+  private boolean               predicted;                // Frame being passed to the listener was predicted
+  private final RateDetector    rateDetector;
+  private final DecoderStats    stats = new DecoderStats();
+  private boolean               inSync;                   // Last SYNC word ended a whole frame
+  // Timecode decoder variables (holds state between called to process() method)
+  private boolean               skipBit;
+  private boolean               bitValue;
+  private int[]                 frame = new int[4];
+  private int                   bitCount;
+  private int                   frameIndex;
+  private int                   lastInterval;
+  private int                   frameWord;
+  private int                   lastSample;
+  private int                   interval;
+  private long                  samplePos;
+  private int                   level, peak, rms;
+
+  LtcDecoder (AudioFormat format, FrameListener listener) {
+    this(format, 0, listener);
+  }
+
+  /**
+   * @param format PCM format of the data passed to process() (see isSupported())
+   * @param channel index of the channel that carries LTC (for multichannel formats)
+   * @param listener receives each decoded frame (may be null, to add listeners later)
+   */
+  LtcDecoder (AudioFormat format, int channel, FrameListener listener) {
+    encoding = getEncoding(format);
+    if (encoding < 0) {
+      throw new IllegalArgumentException("Audio format not recognized: " + format);
+    }
+    if (channel < 0 || channel >= format.getChannels()) {
+      throw new IllegalArgumentException("Invalid channel " + channel + " for " + format);
+    }
+    listeners = listener != null ? new FrameListener[] {listener} : new FrameListener[0];
+    frameSize = format.getFrameSize();
+    channelOffset = channel * (format.getSampleSizeInBits() / 8);
+    sampleRate = format.getSampleRate();
+    threshold = getThreshold(sampleRate);
+    rateDetector = new RateDetector(sampleRate);
+  }
+
+  /**
+   * Adds a listener to be called after those already added.  Listeners can be added and removed from
+   * any thread, and take effect from the next frame decoded.
+   */
+  synchronized void addListener (FrameListener listener) {
+    FrameListener[] list = Arrays.copyOf(listeners, listeners.length + 1);
+    list[list.length - 1] = listener;
+    listeners = list;
+  }
+
+  synchronized void removeListener (FrameListener listener) {
+    FrameListener[] list = listeners;
+    for (int ii = 0; ii < list.length; ii++) {
+      if (list[ii] == listener) {
+        FrameListener[] less = Arrays.copyOf(list, list.length - 1);
+        System.arraycopy(list, ii + 1, less, ii, less.length - ii);
+        listeners = less;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Selects PLL bit clock recovery (see PllSlicer) or the classic slicer.  State saved by saveState()
+   * only covers the classic slicer.
+   */
+  void setPll (boolean enable) {
+    pll = enable ? new PllSlicer(this, sampleRate) : null;
+    if (pll != null) {
+      pll.setBandwidth(pllBandwidth);
+    }
+  }
+
+  /**
+   * Sets the loop bandwidth of the PLL (see PllSlicer.setBandwidth()), now and whenever it's next enabled
+   */
+  void setPllBandwidth (double hertz) {
+    pllBandwidth = hertz;
+    if (pll != null) {
+      pll.setBandwidth(hertz);
+    }
+  }
+
+  /**
+   * Sets the scanner used to unpack samples and find edges (defaults to SampleScanner.get())
+   */
+  void setScanner (SampleScanner scanner) {
+    this.scanner = scanner;
+  }
+
+  /**
+   * Enables or disables the InputFilter (DC removal, band pass and hysteresis) ahead of the slicer.
+   * State saved by saveState() doesn't include the filter.
+   */
+  void setFilter (boolean enable) {
+    filter = enable ? new InputFilter(sampleRate) : null;
+    high = false;
+  }
+
+  /**
+   * @return the input filter (to tune it for a nominal frame rate), or null if not enabled
+   */
+  InputFilter getFilter () {
+    return filter;
+  }
+
+  /**
+   * Enables the Flywheel, or disables it if frames is 0
+   * @param frames most predicted frames to pass on in a row when frames are missing
+   */
+  void setFlywheel (int frames) {
+    flywheel = frames > 0 ? new Flywheel(this, sampleRate, frames) : null;
+  }
+
+  Flywheel getFlywheel () {
+    return flywheel;
+  }
+
+  /**
+   * @return true if the frame being passed to the listener was predicted by the flywheel rather than received
+   */
+  boolean isPredicted () {
+    return predicted;
+  }
+
+  /**
+   * @return frame rate measured from the frames received (see RateDetector), or null if not known yet
+   */
+  FrameRate getFrameRate () {
+    return rateDetector.getFrameRate();
+  }
+
+  /**
+   * @return the PLL slicer (to adjust its bandwidth or nominal frame rate), or null if not enabled
+   */
+  PllSlicer getPll () {
+    return pll;
+  }
+
+  /**
+   * @return measured playback speed (negative when playing backwards), or 0 if the PLL isn't enabled
+   */
+  double getSpeed () {
+    return pll != null ? pll.getSpeed() : 0;
+  }
+
+  /**
+   * @return true if the PLL is locked to the bit clock (always true for the classic slicer)
+   */
+  boolean isLocked () {
+    return pll == null || pll.isLocked();
+  }
+
+  /**
+   * @return true if format can be decoded without conversion
+   */
+  static boolean isSupported (AudioFormat format) {
+    return getEncoding(format) >= 0;
+  }
+
+  /**
+   * @return the sample encoding (PCM8S, etc) used to unpack format, or -1 if it's not supported
+   */
+  static int getEncoding (AudioFormat format) {
+    AudioFormat.Encoding enc = format.getEncoding();
+    boolean be = format.isBigEndian();
+    switch (format.getSampleSizeInBits()) {
+      case 8:
+        return enc == AudioFormat.Encoding.PCM_SIGNED ? PCM8S : enc == AudioFormat.Encoding.PCM_UNSIGNED ? PCM8U : -1;
+      case 16:
+        return enc == AudioFormat.Encoding.PCM_SIGNED ? (be ? PCM16BE : PCM16LE) : -1;
+      case 24:
+        return enc == AudioFormat.Encoding.PCM_SIGNED ? (be ? PCM24BE : PCM24LE) : -1;
+      case 32:
+        if (enc == AudioFormat.Encoding.PCM_SIGNED) {
+          return be ? PCM32BE : PCM32LE;
+        }
+        return enc == AudioFormat.Encoding.PCM_FLOAT ? (be ? FLOAT32BE : FLOAT32LE) : -1;
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * The slicer ignores sign changes smaller than this (the original 10 counts of 16 bit audio at
+   * 22050 Hz).  At higher rates an edge is spread over more samples, so the step between any two
+   * samples is smaller and the threshold scales down to match.
+   */
+  static int getThreshold (float sampleRate) {
+    return (int) (10 * (FULL_SCALE >> 15) * 22050 / sampleRate);
+  }
+
+  void reset () {
+    skipBit = bitValue = false;
+    bitCount = frameIndex = lastInterval = frameWord = lastSample = interval = 0;
+    inSync = false;
+    samplePos = 0;
+    level = peak = rms = 0;
+    sums[SampleScanner.ABS_SUM] = sums[SampleScanner.SQUARE_SUM] = sums[SampleScanner.PEAK] = 0;
+    if (pll != null) {
+      pll.reset();
+    }
+    if (filter != null) {
+      filter.reset();
+      high = false;
+    }
+    if (flywheel != null) {
+      flywheel.reset();
+    }
+    rateDetector.reset();
+  }
+
+  /**
+   * Sets the sample index reported for the next sample passed to process()
+   */
+  void setSamplePosition (long samplePos) {
+    this.samplePos = samplePos;
+  }
+
+  /**
+   * Saves the bit slicer and frame assembly state into STATE_SIZE ints of dst starting at pos.
+   * Two decoders with equal state at the same sample position produce identical output from then on.
+   */
+  void saveState (int[] dst, int pos) {
+    dst[pos] = (skipBit ? 1 : 0) | (bitValue ? 2 : 0);
+    dst[pos + 1] = bitCount;
+    dst[pos + 2] = frameIndex;
+    dst[pos + 3] = lastInterval;
+    dst[pos + 4] = frameWord;
+    dst[pos + 5] = lastSample;
+    dst[pos + 6] = interval;
+    // Only the frame words already received can affect output, so stale words are zeroed
+    for (int ii = 0; ii < 4; ii++) {
+      dst[pos + 7 + ii] = ii < frameIndex ? frame[ii] : 0;
+    }
+  }
+
+  /**
+   * Restores state previously saved with saveState() and sets the sample position
+   */
+  void loadState (int[] src, int pos, long samplePos) {
+    skipBit = (src[pos] & 1) != 0;
+    bitValue = (src[pos] & 2) != 0;
+    bitCount = src[pos + 1];
+    frameIndex = src[pos + 2];
+    lastInterval = src[pos + 3];
+    frameWord = src[pos + 4];
+    lastSample = src[pos + 5];
+    interval = src[pos + 6];
+    for (int ii = 0; ii < 4; ii++) {
+      frame[ii] = src[pos + 7 + ii];
+    }
+    this.samplePos = samplePos;
+  }
+
+  /**
+   * @return true if the current state equals the state saved in src at pos
+   */
+  boolean stateEquals (int[] src, int pos) {
+    if (src[pos] != ((skipBit ? 1 : 0) | (bitValue ? 2 : 0)) || src[pos + 1] != bitCount || src[pos + 2] != frameIndex ||
+        src[pos + 3] != lastInterval || src[pos + 4] != frameWord || src[pos + 5] != lastSample || src[pos + 6] != interval) {
+      return false;
+    }
+    for (int ii = 0; ii < frameIndex; ii++) {
+      if (src[pos + 7 + ii] != frame[ii]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Decodes count bytes of PCM data (must be a whole number of sample frames)
+   */
+  void process (byte[] buffer, int offset, int count) {
+    long start = System.nanoTime();
+    int total = count / frameSize;
+    // Unpack a small chunk at a time (stays in L1 cache) and slice it
+    for (int done = 0; done < total; done += CHUNK) {
+      sliceChunk(buffer, offset + channelOffset + done * frameSize, frameSize, Math.min(CHUNK, total - done));
+    }
+    stats.buffer(total, System.nanoTime() - start);
+    updateLevels(total);
+  }
+
+  /**
+   * Decodes the whole sample frames remaining in buf and advances its position past them (a partial
+   * sample frame at the end is left in buf).  Buffers without an accessible array, such as direct
+   * buffers, are copied through a small array held by the decoder.
+   */
+  void feed (ByteBuffer buf) {
+    int count = buf.remaining() - buf.remaining() % frameSize;
+    if (buf.hasArray()) {
+      process(buf.array(), buf.arrayOffset() + buf.position(), count);
+      buf.position(buf.position() + count);
+      return;
+    }
+    long start = System.nanoTime();
+    if (copy == null) {
+      copy = new byte[CHUNK * frameSize];
+    }
+    int total = 0;
+    while (count > 0) {
+      int len = Math.min(count, copy.length);
+      buf.get(copy, 0, len);
+      sliceChunk(copy, channelOffset, frameSize, len / frameSize);
+      total += len / frameSize;
+      count -= len;
+    }
+    stats.buffer(total, System.nanoTime() - start);
+    updateLevels(total);
+  }
+
+  /**
+   * Unpacks and slices len samples (up to 256), stride bytes apart starting at src[offset], adds them
+   * to the level sums and advances the sample position.  Used by process() and by decoders that
+   * interleave several channels (see MultiChannelDecoder), which must call updateLevels() themselves.
+   */
+  void sliceChunk (byte[] src, int offset, int stride, int len) {
+    if (filter != null) {
+      // The filter carries state from sample to sample, so every sample goes through slice()
+      unpack(encoding, src, offset, stride, len, samples);
+      SampleScanner.scan(samples, 0, len, 0, Integer.MAX_VALUE, edges, sums);
+      for (int ii = 0; ii < len; ii++) {
+        slice(samples[ii], samplePos + ii);
+      }
+    } else {
+      int before = lastSample;
+      lastSample = scanner.scan(encoding, src, offset, stride, len, samples, lastSample, threshold, edges, sums);
+      // Visit each crossing, counting the samples in between as slice() would
+      int next = 0;
+      for (int ww = 0; ww < edges.length; ww++) {
+        for (long bits = edges[ww]; bits != 0; bits &= bits - 1) {
+          int ii = ww << 6 | Long.numberOfTrailingZeros(bits);
+          interval += ii - next;
+          next = ii + 1;
+          if (pll != null) {
+            pll.edge(ii > 0 ? samples[ii - 1] : before, samples[ii], samplePos + ii);
+          } else {
+            edge(samplePos + ii);
+          }
+        }
+      }
+      interval += len - next;
+    }
+    samplePos += len;
+    if (flywheel != null) {
+      flywheel.advance(samplePos);
+    }
+  }
+
+  /**
+   * Computes the input levels from the samples sliced since the last call, and publishes the counters
+   * of getStats()
+   * @param total number of samples sliced since the last call
+   */
+  void updateLevels (int total) {
+    if (total > 0) {
+      level = (int) (100 * sums[SampleScanner.ABS_SUM] / (total * (double) (FULL_SCALE / 2)));
+      peak = (int) (100 * sums[SampleScanner.PEAK] / FULL_SCALE);
+      rms = (int) (100 * Math.sqrt((double) sums[SampleScanner.SQUARE_SUM] / total) / (FULL_SCALE >> SampleScanner.SQUARE_SHIFT));
+    }
+    sums[SampleScanner.ABS_SUM] = sums[SampleScanner.SQUARE_SUM] = sums[SampleScanner.PEAK] = 0;
+    stats.publish(peak, rms);
+  }
+
+  /**
+   * Unpacks count samples of the given encoding, stride bytes apart starting at src[offset], into dst
+   * scaled to +/- FULL_SCALE.  There's a separate loop for each encoding, so the JIT compiles each
+   * without any per-sample tests of the format.
+   */
+  static void unpack (int encoding, byte[] src, int offset, int stride, int count, int[] dst) {
+    unpack(encoding, src, offset, stride, count, dst, 0);
+  }
+
+  /**
+   * Unpacks into dst starting at dst[dstOffset]
+   */
+  static void unpack (int encoding, byte[] src, int offset, int stride, int count, int[] dst, int dstOffset) {
+    int end = offset + count * stride;
+    int ii = dstOffset;
+    switch (encoding) {
+      case PCM8S:
+        for (int idx = offset; idx < end; idx += stride) {
+          dst[ii++] = src[idx] << 16;
+        }
+        break;
+      case PCM8U:
+        for (int idx = offset; idx < end; idx += stride) {
+          dst[ii++] = ((src[idx] & 0xFF) - 0x80) << 16;
+        }
+        break;
+      case PCM16BE:
+        for (int idx = offset; idx < end; idx += stride) {
+          dst[ii++] = src[idx] << 16 | (src[idx + 1] & 0xFF) << 8;
+        }
+        break;
+      case PCM16LE:
+        for (int idx = offset; idx < end; idx += stride) {
+          dst[ii++] = src[idx + 1] << 16 | (src[idx] & 0xFF) << 8;
+        }
+        break;
+      case PCM24BE:
+        for (int idx = offset; idx < end; idx += stride) {
+          dst[ii++] = src[idx] << 16 | (src[idx + 1] & 0xFF) << 8 | (src[idx + 2] & 0xFF);
+        }
+        break;
+      case PCM24LE:
+        for (int idx = offset; idx < end; idx += stride) {
+          dst[ii++] = src[idx + 2] << 16 | (src[idx + 1] & 0xFF) << 8 | (src[idx] & 0xFF);
+        }
+        break;
+      case PCM32BE:
+        // Low byte is below the 24 bit scale
+        for (int idx = offset; idx < end; idx += stride) {
+          dst[ii++] = src[idx] << 16 | (src[idx + 1] & 0xFF) << 8 | (src[idx + 2] & 0xFF);
+        }
+        break;
+      case PCM32LE:
+        for (int idx = offset; idx < end; idx += stride) {
+          dst[ii++] = src[idx + 3] << 16 | (src[idx + 2] & 0xFF) << 8 | (src[idx + 1] & 0xFF);
+        }
+        break;
+      case FLOAT32BE:
+        for (int idx = offset; idx < end; idx += stride) {
+          int bits = src[idx] << 24 | (src[idx + 1] & 0xFF) << 16 | (src[idx + 2] & 0xFF) << 8 | (src[idx + 3] & 0xFF);
+          dst[ii++] = (int) (Float.intBitsToFloat(bits) * FULL_SCALE);
+        }
+        break;
+      case FLOAT32LE:
+        for (int idx = offset; idx < end; idx += stride) {
+          int bits = src[idx + 3] << 24 | (src[idx + 2] & 0xFF) << 16 | (src[idx + 1] & 0xFF) << 8 | (src[idx] & 0xFF);
+          dst[ii++] = (int) (Float.intBitsToFloat(bits) * FULL_SCALE);
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown encoding: " + encoding);
+    }
+  }
+
+  /**
+   * Passes one sample to the bit slicer.  Used by sliceChunk() when the input filter is enabled, and by
+   * decoders that unpack the samples themselves, which must also keep track of the sample position.
+   * @param pos sample index reported if this sample completes a frame
+   */
+  void slice (int sample, long pos) {
+    if (filter != null) {
+      filterSlice(sample, pos);
+      return;
+    }
+    // Count bit intervals by watching zero crossing
+    if (lastSample > 0 != sample > 0 && Math.abs(lastSample - sample) > threshold) {
+      if (pll != null) {
+        pll.edge(lastSample, sample, pos);
+      } else {
+        edge(pos);
+      }
+    } else {
+      interval++;
+    }
+    lastSample = sample;
+  }
+
+  // Counts bit intervals by watching the filtered signal cross the hysteresis levels
+  private void filterSlice (int sample, long pos) {
+    sample = filter.filter(sample);
+    int hyst = filter.getHysteresis();
+    if (high ? sample < -hyst : sample > hyst) {
+      // The PLL interpolates between samples measured from the level crossed
+      int crossed = high ? -hyst : hyst;
+      high = !high;
+      if (pll != null) {
+        pll.edge(lastSample - crossed, sample - crossed, pos);
+      } else {
+        edge(pos);
+      }
+    } else {
+      interval++;
+    }
+    lastSample = sample;
+  }
+
+  // Called for each zero crossing to clock bits into frameWord and look for SYNC
+  private void edge (long pos) {
+    if (skipBit) {
+      // skip 2nd half of '1' bit
+      skipBit = false;
+    } else {
+      // The interval before this one was half a bit if the last bit was a '1'
+      boolean lastHalf = bitValue;
+      if (interval > (lastInterval + (lastInterval >> 1))) {
+        // transitioned to a '0' bit
+        frameWord = frameWord >> 1;
+        bitValue = false;
+      } else if (interval < (lastInterval - (lastInterval >> 2))) {
+        // transitioned to a '1' bit
+        frameWord = (frameWord >> 1) + 0x8000;
+        bitValue = true;
+        skipBit = true;
+      } else {
+        // same as last bit
+        frameWord >>= 1;
+        if (bitValue) {
+          frameWord |= 0x8000;
+          skipBit = true;
+        }
+      }
+      // Look for end of frame sync pattern 0b1011111111111100;
+      if (frameWord == SYNC) {
+        if (frameIndex == 4) {
+          // Time code frame received in frame[]
+          decodeFrame(pos);
+          inSync = true;
+        } else {
+          if (frameIndex > 0) {
+            stats.partialFrame();
+          }
+          syncLost();
+        }
+        frameIndex = 0;
+        bitCount = 0;
+        frameWord = 0;
+      } else if (++bitCount >= 16) {
+        // Measure the jitter of the last bit of each word (doing it for every bit costs too much)
+        int length = bitValue ? interval << 1 : interval;
+        int lastLength = lastHalf ? lastInterval << 1 : lastInterval;
+        if (lastLength > 0) {
+          stats.jitter(Math.abs(length - lastLength) * 100 / lastLength);
+        }
+        if (frameIndex < 4) {
+          frame[frameIndex++] = frameWord;
+        } else {
+          // No SYNC where it should be
+          frameIndex = 0;
+          stats.partialFrame();
+          syncLost();
+        }
+        bitCount = 0;
+      }
+    }
+    lastInterval = interval;
+    interval = 0;
+  }
+
+  /**
+   * Called by the PLL for each bit it clocks out.  It times edges itself, so this rebases the count of
+   * samples since the last edge as edge() does, which would otherwise overflow after about 12 hours at
+   * 48 kHz.
+   */
+  void bitClocked () {
+    interval = 0;
+  }
+
+  // Counts frames that were being received no longer arriving where expected
+  private void syncLost () {
+    if (inSync) {
+      stats.syncLoss();
+    }
+    inSync = false;
+  }
+
+  private void decodeFrame (long sample) {
+    frameReceived((frame[0] & 0xFFFFL) | (frame[1] & 0xFFFFL) << 16 | (frame[2] & 0xFFFFL) << 32 | (frame[3] & 0xFFFFL) << 48, sample);
+  }
+
+  /**
+   * Called by the slicer with the 64 data bits of each frame received (and by ReplaySource with each
+   * frame replayed)
+   */
+  void frameReceived (long bits, long sample) {
+    // Error check on data
+    if ((bits & 0x0F) > 9 || ((bits >> 16) & 0x0F) > 9 || ((bits >> 32) & 0x0F) > 9 || ((bits >> 48) & 0x0F) > 9) {
+      stats.bcdReject();
+      return;
+    }
+    stats.frame();
+    FrameRate rate = rateDetector.update(bits, sample);
+    if (pll != null && rate != null) {
+      // Speed is measured from, and the loop restarts at, the detected rate
+      pll.setNominalFps(rate.getRate());
+    }
+    if (flywheel != null) {
+      flywheel.received(bits, sample);
+    } else {
+      notifyListeners(bits, sample);
+    }
+  }
+
+  /**
+   * Called by the flywheel with each frame it passes on
+   */
+  void emitFrame (long bits, long sample, boolean predicted) {
+    if (predicted) {
+      stats.predicted();
+    }
+    this.predicted = predicted;
+    notifyListeners(bits, sample);
+    this.predicted = false;
+  }
+
+  private void notifyListeners (long bits, long sample) {
+    for (FrameListener listener : listeners) {
+      listener.frameDecoded(bits, sample);
+    }
+  }
+
+  /**
+   * @return counters for monitoring, which survive reset() (see DecoderStats)
+   */
+  DecoderStats getStats () {
+    return stats;
+  }
+
+  /**
+   * @return number of samples processed since the last reset
+   */
+  long getSamplePosition () {
+    return samplePos;
+  }
+
+  /**
+   * @return average input level of the last buffer passed to process() (0 - 100)
+   */
+  int getLevel () {
+    return level;
+  }
+
+  /**
+   * @return peak input level of the last buffer passed to process() (percent of full scale)
+   */
+  int getPeak () {
+    return peak;
+  }
+
+  /**
+   * @return RMS input level of the last buffer passed to process() (percent of full scale)
+   */
+  int getRms () {
+    return rms;
+  }
+
+  /**
+   * @return hours of frame (0 - 23)
+   */
+  static int getHours (long frame) {
+    return (int) ((frame >> 56) & 0x03) * 10 + (int) ((frame >> 48) & 0x0F);
+  }
+
+  /**
+   * @return minutes of frame (0 - 59)
+   */
+  static int getMinutes (long frame) {
+    return (int) ((frame >> 40) & 0x07) * 10 + (int) ((frame >> 32) & 0x0F);
+  }
+
+  /**
+   * @return seconds of frame (0 - 59)
+   */
+  static int getSeconds (long frame) {
+    return (int) ((frame >> 24) & 0x07) * 10 + (int) ((frame >> 16) & 0x0F);
+  }
+
+  /**
+   * @return frame number of frame (0 - 29)
+   */
+  static int getFrameNumber (long frame) {
+    return (int) ((frame >> 8) & 0x03) * 10 + (int) (frame & 0x0F);
+  }
+
+  /**
+   * @return true if the drop frame flag (bit 10) of frame is set
+   */
+  static boolean isDropFrame (long frame) {
+    return (frame & 0x400) != 0;
+  }
+
+  /**
+   * @return the value of a flag bit of frame (10, 11, 27, 43, 58 or 59, see layout above)
+   */
+  static boolean getFlag (long frame, int bit) {
+    return (frame & (1L << bit)) != 0;
+  }
+
+  /**
+   * Formats frame as "HH:MM:SS:FF" (or "HH:MM:SS;FF" if the drop frame flag is set)
+   * @return position in dst following the last character written
+   */
+  static int formatTimecode (long frame, char[] dst, int pos) {
+    dst[pos++] = (char) ('0' + ((frame >> 56) & 0x03));
+    dst[pos++] = (char) ('0' + ((frame >> 48) & 0x0F));
+    dst[pos++] = ':';
+    dst[pos++] = (char) ('0' + ((frame >> 40) & 0x07));
+    dst[pos++] = (char) ('0' + ((frame >> 32) & 0x0F));
+    dst[pos++] = ':';
+    dst[pos++] = (char) ('0' + ((frame >> 24) & 0x07));
+    dst[pos++] = (char) ('0' + ((frame >> 16) & 0x0F));
+    dst[pos++] = (frame & 0x400) != 0 ? ';' : ':';
+    dst[pos++] = (char) ('0' + ((frame >> 8) & 0x03));
+    dst[pos++] = (char) ('0' + (frame & 0x0F));
+    return pos;
+  }
+
+  /**
+   * Formats the four frame words as 8 digit hex values, most significant word first, as in
+   * "0000xxxx:0000xxxx:0000xxxx:0000xxxx"
+   * @return position in dst following the last character written
+   */
+  static int formatRaw (long frame, char[] dst, int pos) {
+    for (int ii = 3; ii >= 0; ii--) {
+      int val = (int) (frame >>> (ii * 16)) & 0xFFFF;
+      for (int shift = 28; shift >= 0; shift -= 4) {
+        dst[pos++] = HEX[(val >>> shift) & 0x0F];
+      }
+      if (ii > 0) {
+        dst[pos++] = ':';
+      }
+    }
+    return pos;
+  }
+
+  /**
+   * @return the 32 user bits of frame packed as 8 hex digits, with the user bits from frame[3] first
+   */
+  static int getUserBits (long frame) {
+    int userBits = 0;
+    for (int ii = 3; ii >= 0; ii--) {
+      int word = (int) (frame >>> (ii * 16));
+      userBits = (userBits << 8) | ((word >> 8) & 0xF0) | ((word >> 4) & 0x0F);
+    }
+    return userBits;
+  }
+}
@@ -0,0 +1,181 @@
+import javax.sound.sampled.AudioFormat;
+
+  /*
+   *  Generates LTC as 16 bit signed PCM, one frame at a time, into a caller supplied buffer.
+   *  Each bit cell starts with a transition and a '1' bit has a second transition half way
+   *  through (biphase mark), followed by the SYNC word (see LtcDecoder for the frame layout).
+   *  Bit edges fall on fractional sample times, which are carried over from frame to frame,
+   *  so the output keeps the exact frame rate (29.97 for drop frame) at any sample rate.
+   *
+   *  setSpeed() scales the bit rate from the next frame on, which can be used to simulate
+   *  varispeed playback.  encode() allocates nothing and writes about 4000 times faster than
+   *  real time at 48 kHz, so LtcGenerator can feed hours of LTC through the decoder in a minute.
+   */
+
+class LtcEncoder {
+  private final float           sampleRate;
+  private final int             fps;
+  private final boolean         drop;
+  private final double          frameRate;
+  private final long            framesPerDay;
+  private final int             polarityBit;
+  // AudioFormat-related variables
+  private final boolean         bigEndian;
+  private final int             frameSize;
+  private final int             channelOffset;
+  // Generator state
+  private long                  frameCount;
+  private int                   userBits;
+  private long                  flags;
+  private boolean               polarity;
+  private int                   amplitude = 0x3000;
+  private double                speed = 1;
+  private double                phase;
+  private boolean               high;
+
+  /**
+   * @param format 16 bit signed PCM format of the generated data
+   * @param channel index of the channel to write LTC into (other channels are left untouched)
+   * @param fps nominal frame rate (24, 25 or 30)
+   * @param drop true for drop frame timecode (the frame rate is then fps * 1000 / 1001)
+   */
+  LtcEncoder (AudioFormat format, int channel, int fps, boolean drop) {
+    this(format, channel, FrameRate.of(fps, drop, drop));
+  }
+
+  /**
+   * @param format 16 bit signed PCM format of the generated data
+   * @param channel index of the channel to write LTC into (other channels are left untouched)
+   * @param rate frame rate, which also sets the drop frame flag
+   */
+  LtcEncoder (AudioFormat format, int channel, FrameRate rate) {
+    if (format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED || format.getSampleSizeInBits() != 16) {
+      throw new IllegalArgumentException("Audio format not recognized: " + format);
+    }
+    if (channel < 0 || channel >= format.getChannels()) {
+      throw new IllegalArgumentException("Invalid channel " + channel + " for " + format);
+    }
+    sampleRate = format.getSampleRate();
+    fps = rate.getFps();
+    drop = rate.isDrop();
+    frameRate = rate.getRate();
+    framesPerDay = TimecodeIndex.toFrames(TimecodeIndex.pack(24, 0, 0, 0), fps, drop);
+    polarityBit = fps == 25 ? 59 : 27;
+    bigEndian = format.isBigEndian();
+    frameSize = format.getFrameSize();
+    channelOffset = channel * 2;
+  }
+
+  /**
+   * Sets the timecode of the next frame (packed as 0xHHMMSSFF, see TimecodeIndex)
+   */
+  void setTimecode (int timecode) {
+    frameCount = TimecodeIndex.toFrames(timecode, fps, drop) % framesPerDay;
+  }
+
+  /**
+   * @return timecode of the next frame, packed as 0xHHMMSSFF
+   */
+  int getTimecode () {
+    return TimecodeIndex.fromFrames(frameCount, fps, drop);
+  }
+
+  /**
+   * Sets the 32 user bits, in the order returned by LtcDecoder.getUserBits()
+   */
+  void setUserBits (int userBits) {
+    this.userBits = userBits;
+  }
+
+  /**
+   * Sets the flag bits of every frame from here on
+   * @param flags packed frame (see LtcDecoder) with any of the flag bits 11, 27, 43, 58 and 59 set (the
+   *              drop frame flag is set by the frame rate, and the polarity bit by setPolarityCorrection())
+   */
+  void setFlags (long flags) {
+    this.flags = flags & (1L << 11 | 1L << 27 | 1L << 43 | 1L << 58 | 1L << 59);
+  }
+
+  /**
+   * Sets the polarity correction bit (59 at 25 fps, otherwise 27) so each frame has an even number of
+   * zero bits, which makes every frame start with a transition in the same direction
+   */
+  void setPolarityCorrection (boolean polarity) {
+    this.polarity = polarity;
+  }
+
+  /**
+   * @param amplitude peak sample value (0 - 32767)
+   */
+  void setAmplitude (int amplitude) {
+    this.amplitude = amplitude;
+  }
+
+  /**
+   * @param speed playback speed as a multiple of the nominal frame rate
+   */
+  void setSpeed (double speed) {
+    this.speed = speed;
+  }
+
+  /**
+   * @return packed bits (see LtcDecoder) of the next frame
+   */
+  long getFrame () {
+    long bits = TimecodeIndex.setTimecode(flags | (drop ? 0x400 : 0), getTimecode());
+    // Each word carries 8 user bits, in bits 4-7 (low nibble) and 12-15 (high nibble)
+    for (int ii = 0; ii < 4; ii++) {
+      int ub = (userBits >>> (ii * 8)) & 0xFF;
+      bits |= (long) ((ub & 0x0F) << 4 | (ub & 0xF0) << 8) << (ii * 16);
+    }
+    if (polarity) {
+      // 80 bits with an even number of zeros have an even number of ones, and SYNC has an odd number
+      bits &= ~(1L << polarityBit);
+      if ((Long.bitCount(bits) + Integer.bitCount(LtcDecoder.SYNC)) % 2 != 0) {
+        bits |= 1L << polarityBit;
+      }
+    }
+    return bits;
+  }
+
+  /**
+   * @return the most bytes the next call to encode() can write at the current speed
+   */
+  int getFrameBytes () {
+    return ((int) Math.ceil(sampleRate / (frameRate * speed)) + 1) * frameSize;
+  }
+
+  /**
+   * Writes the next frame into dst starting at offset, which needs room for getFrameBytes() bytes,
+   * and advances to the following frame
+   * @return number of bytes written (a whole number of sample frames)
+   */
+  int encode (byte[] dst, int offset) {
+    long bits = getFrame();
+    double half = sampleRate / (frameRate * speed * 160);
+    int pos = offset + channelOffset;
+    for (int bit = 0; bit < 80; bit++) {
+      boolean one = bit < 64 ? ((bits >>> bit) & 1) != 0 : ((LtcDecoder.SYNC >>> (bit - 64)) & 1) != 0;
+      high = !high;
+      for (int hb = 0; hb < 2; hb++) {
+        if (hb == 1 && one) {
+          high = !high;
+        }
+        int value = high ? amplitude : -amplitude;
+        // Emit the samples that fall within this half bit, carrying the fraction into the next
+        for (phase += half; phase > 0; phase--) {
+          if (bigEndian) {
+            dst[pos] = (byte) (value >> 8);
+            dst[pos + 1] = (byte) value;
+          } else {
+            dst[pos] = (byte) value;
+            dst[pos + 1] = (byte) (value >> 8);
+          }
+          pos += frameSize;
+        }
+      }
+    }
+    frameCount = (frameCount + 1) % framesPerDay;
+    return pos - offset - channelOffset;
+  }
+}
@@ -0,0 +1,332 @@
+import javax.sound.sampled.*;
+import java.io.*;
+
+  /*
+   *  Generates LTC with LtcEncoder, for feeding devices and for soak testing readers.  The LTC
+   *  is played on an audio output (a SourceDataLine), written to a WAV, AIFF or AU file, or, with
+   *  -loopback, decoded straight back by LtcDecoder, checking every frame decoded against the one
+   *  generated, for regression runs of hours of LTC in a minute or so:
+   *
+   *    java -cp TimecodeReader.jar LtcGenerator [-r rate] [-t HH:MM:SS:FF] [-u userBits] [-f flag,...] [-polarity]
+   *                  [-s sampleRate] [-ch channels] [-c channel] [-a amplitude] [-speed speed] [-d seconds]
+   *                  [-m mixer | -o file | -loopback [-pll [-bw hertz]] [-filter]]
+   *
+   *  rate is 23.976, 24, 25, 29.97, 29.97df, 30 or 30df (default 30), userBits is 8 hex digits in the
+   *  order shown by the reader, flags are bit numbers (11, 27, 43, 58 or 59, see LtcDecoder),
+   *  amplitude is a percentage of full scale and hertz is the PLL loop bandwidth (see PllSlicer).
+   *  Output goes to the default audio output (or mixer) until stopped, or for the given number of
+   *  seconds, and files default to a minute.
+   */
+
+class LtcGenerator {
+  private static final int      BUFFER_SIZE = 16 * 1024;
+
+  /*
+   *  Reads as the LTC generated by an encoder, one frame at a time, remembering the last SENT
+   *  frames for Loopback.  Other channels are silent.
+   */
+  static class EncoderStream extends InputStream {
+    private static final int    SENT = 256;             // Power of 2
+    private final LtcEncoder    encoder;
+    private final long[]        sent = new long[SENT];
+    private final byte[]        one = new byte[1];
+    private long                frames;
+    private byte[]              frame = new byte[0];
+    private int                 pos, fill;
+    private long                remaining;
+
+    /**
+     * @param length bytes to read before end of stream, or -1 for no end
+     */
+    EncoderStream (LtcEncoder encoder, long length) {
+      this.encoder = encoder;
+      remaining = length;
+    }
+
+    /**
+     * @return number of frames generated so far
+     */
+    long getFrameCount () {
+      return frames;
+    }
+
+    /**
+     * @return packed bits (see LtcDecoder) of frame n (counting from 0), or -1 if it's too long ago
+     */
+    long getSent (long n) {
+      return n < frames && n >= frames - SENT ? sent[(int) n & (SENT - 1)] : -1;
+    }
+
+    @Override
+    public int read (byte[] dst, int off, int len) {
+      if (remaining == 0) {
+        return -1;
+      }
+      if (pos == fill) {
+        int need = encoder.getFrameBytes();
+        if (frame.length < need) {
+          frame = new byte[need];
+        }
+        sent[(int) frames++ & (SENT - 1)] = encoder.getFrame();
+        fill = encoder.encode(frame, 0);
+        pos = 0;
+      }
+      int count = Math.min(len, fill - pos);
+      if (remaining > 0) {
+        count = (int) Math.min(count, remaining);
+        remaining -= count;
+      }
+      System.arraycopy(frame, pos, dst, off, count);
+      pos += count;
+      return count;
+    }
+
+    @Override
+    public int read () {
+      return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+    }
+  }
+
+  /*
+   *  Checks the frames decoded from an EncoderStream against those it generated.  Frames are
+   *  decoded in the order they were generated, so one that matches a later frame than expected
+   *  means those in between were missed, and one that matches none is an error.
+   */
+  static class Loopback implements LtcDecoder.FrameListener {
+    private final EncoderStream stream;
+    private long                next;                   // Index of the next frame expected
+    private long                decoded, missed, errors;
+
+    Loopback (EncoderStream stream) {
+      this.stream = stream;
+    }
+
+    public void frameDecoded (long frame, long sample) {
+      for (long n = Math.max(next, stream.getFrameCount() - EncoderStream.SENT); n < stream.getFrameCount(); n++) {
+        if (stream.getSent(n) == frame) {
+          // The decoder can't see the start of the first frame, as it hasn't had a SYNC yet
+          if (decoded > 0) {
+            missed += n - next;
+          }
+          decoded++;
+          next = n + 1;
+          return;
+        }
+      }
+      if (errors++ < 10) {
+        char[] text = new char[11];
+        LtcDecoder.formatTimecode(frame, text, 0);
+        System.err.println("Frame not generated at sample " + sample + ": " + new String(text) + " " + Long.toHexString(frame));
+      }
+    }
+  }
+
+  /**
+   * Plays the stream on line until it ends (or forever)
+   */
+  static void play (InputStream in, SourceDataLine line) throws IOException, LineUnavailableException {
+    AudioFormat format = line.getFormat();
+    int frameSize = format.getFrameSize();
+    // Write about 50 ms at a time, into a line buffer of about 200 ms
+    int chunk = Math.max(frameSize, (int) (format.getSampleRate() / 20) * frameSize);
+    line.open(format, chunk * 4);
+    line.start();
+    byte[] buffer = new byte[chunk];
+    int fill = 0;
+    int count;
+    while ((count = in.read(buffer, fill, buffer.length - fill)) >= 0) {
+      fill += count;
+      if (fill == buffer.length) {
+        line.write(buffer, 0, fill);
+        fill = 0;
+      }
+    }
+    line.write(buffer, 0, fill - fill % frameSize);
+    line.drain();
+    line.close();
+  }
+
+  /**
+   * Decodes the stream with LtcDecoder and prints how many of the frames generated were decoded
+   * @return true if every frame was decoded correctly
+   */
+  static boolean loopback (EncoderStream in, AudioFormat format, int channel, boolean pll, double bandwidth, boolean filter) {
+    Loopback check = new Loopback(in);
+    LtcDecoder decoder = new LtcDecoder(format, channel, check);
+    decoder.setPll(pll);
+    decoder.setPllBandwidth(bandwidth);
+    decoder.setFilter(filter);
+    int frameSize = format.getFrameSize();
+    byte[] buffer = new byte[BUFFER_SIZE - BUFFER_SIZE % frameSize];
+    long start = System.nanoTime();
+    int fill = 0;
+    int count;
+    while ((count = in.read(buffer, fill, buffer.length - fill)) >= 0) {
+      fill += count;
+      if (fill == buffer.length) {
+        decoder.process(buffer, 0, fill);
+        fill = 0;
+      }
+    }
+    decoder.process(buffer, 0, fill - fill % frameSize);
+    double secs = (System.nanoTime() - start) / 1e9;
+    double audio = decoder.getSamplePosition() / format.getSampleRate();
+    System.out.printf("%d frames generated, %d decoded, %d missed, %d errors (%.0f s of audio in %.1f s, %.0fx real time)%n",
+                      in.getFrameCount(), check.decoded, check.missed, check.errors, audio, secs, audio / secs);
+    return check.missed == 0 && check.errors == 0 && check.decoded > 0;
+  }
+
+  private static FrameRate parseRate (String text) {
+    boolean drop = text.toLowerCase().endsWith("df");
+    switch (drop ? text.substring(0, text.length() - 2) : text) {
+      case "23.976":
+        return FrameRate.FPS_23_976;
+      case "24":
+        return FrameRate.FPS_24;
+      case "25":
+        return FrameRate.FPS_25;
+      case "29.97":
+        return drop ? FrameRate.FPS_29_97_DF : FrameRate.FPS_29_97;
+      case "30":
+        return drop ? FrameRate.FPS_30_DF : FrameRate.FPS_30;
+      default:
+        throw new IllegalArgumentException("Unsupported frame rate: " + text);
+    }
+  }
+
+  private static AudioFileFormat.Type fileType (String name) {
+    String lower = name.toLowerCase();
+    if (lower.endsWith(".aif") || lower.endsWith(".aiff")) {
+      return AudioFileFormat.Type.AIFF;
+    } else if (lower.endsWith(".au")) {
+      return AudioFileFormat.Type.AU;
+    }
+    return AudioFileFormat.Type.WAVE;
+  }
+
+  public static void main (String[] args) throws Exception {
+    FrameRate rate = FrameRate.FPS_30;
+    int timecode = 0;
+    int userBits = 0;
+    long flags = 0;
+    boolean polarity = false;
+    float sampleRate = 48000;
+    int channels = 1;
+    int channel = 0;
+    double amplitude = 50;
+    double speed = 1;
+    double seconds = -1;
+    String mixer = null;
+    String outFile = null;
+    boolean loopback = false;
+    boolean pll = false;
+    double bandwidth = PllSlicer.DEFAULT_BANDWIDTH;
+    boolean filter = false;
+    try {
+      for (int ii = 0; ii < args.length; ii++) {
+        switch (args[ii]) {
+          case "-r":
+            rate = parseRate(args[++ii]);
+            break;
+          case "-t":
+            timecode = TimecodeIndex.parse(args[++ii]);
+            break;
+          case "-u":
+            userBits = (int) Long.parseLong(args[++ii], 16);
+            break;
+          case "-f":
+            for (String bit : args[++ii].split(",")) {
+              flags |= 1L << Integer.parseInt(bit.trim());
+            }
+            break;
+          case "-polarity":
+            polarity = true;
+            break;
+          case "-s":
+            sampleRate = Float.parseFloat(args[++ii]);
+            break;
+          case "-ch":
+            channels = Integer.parseInt(args[++ii]);
+            break;
+          case "-c":
+            channel = Integer.parseInt(args[++ii]);
+            break;
+          case "-a":
+            amplitude = Double.parseDouble(args[++ii]);
+            break;
+          case "-speed":
+            speed = Double.parseDouble(args[++ii]);
+            break;
+          case "-d":
+            seconds = Double.parseDouble(args[++ii]);
+            break;
+          case "-m":
+            mixer = args[++ii];
+            break;
+          case "-o":
+            outFile = args[++ii];
+            break;
+          case "-loopback":
+            loopback = true;
+            break;
+          case "-pll":
+            pll = true;
+            break;
+          case "-bw":
+            bandwidth = Double.parseDouble(args[++ii]);
+            break;
+          case "-filter":
+            filter = true;
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option: " + args[ii]);
+        }
+      }
+      if (speed <= 0) {
+        // LtcEncoder only plays forwards
+        throw new IllegalArgumentException("Speed must be above 0: " + speed);
+      }
+    } catch (RuntimeException ex) {
+      System.err.println(ex.getMessage());
+      System.err.println("Usage: LtcGenerator [-r rate] [-t HH:MM:SS:FF] [-u userBits] [-f flag,...] [-polarity] " +
+                         "[-s sampleRate] [-ch channels] [-c channel] [-a amplitude] [-speed speed] [-d seconds] " +
+                         "[-m mixer | -o file | -loopback [-pll [-bw hertz]] [-filter]]");
+      System.exit(1);
+    }
+    AudioFormat format = new AudioFormat(sampleRate, 16, channels, true, false);
+    LtcEncoder encoder = new LtcEncoder(format, channel, rate);
+    encoder.setTimecode(timecode);
+    encoder.setUserBits(userBits);
+    encoder.setFlags(flags);
+    encoder.setPolarityCorrection(polarity);
+    encoder.setAmplitude((int) Math.round(Math.min(amplitude, 100) * 32767 / 100));
+    encoder.setSpeed(speed);
+    if (seconds < 0 && (outFile != null || loopback)) {
+      seconds = 60;
+    }
+    long length = seconds < 0 ? -1 : Math.round(seconds * sampleRate) * format.getFrameSize();
+    EncoderStream in = new EncoderStream(encoder, length);
+    if (loopback) {
+      System.exit(loopback(in, format, channel, pll, bandwidth, filter) ? 0 : 1);
+    } else if (outFile != null) {
+      AudioInputStream audio = new AudioInputStream(in, format, length / format.getFrameSize());
+      AudioSystem.write(audio, fileType(outFile), new File(outFile));
+    } else {
+      SourceDataLine line = null;
+      if (mixer == null) {
+        line = AudioSystem.getSourceDataLine(format);
+      } else {
+        for (Mixer.Info info : AudioSystem.getMixerInfo()) {
+          if (info.getName().trim().equals(mixer)) {
+            line = AudioSystem.getSourceDataLine(format, info);
+          }
+        }
+        if (line == null) {
+          System.err.println("Mixer not found: " + mixer);
+          System.exit(1);
+        }
+      }
+      play(in, line);
+    }
+  }
+}
@@ -0,0 +1,241 @@
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import java.util.concurrent.locks.LockSupport;
+
+  /*
+   *  Generates MIDI Time Code from decoded LTC and sends it to a javax.sound.midi Receiver.
+   *
+   *  Frames reach the decoder in bursts, one per buffer read from the line, so quarter frame
+   *  messages can't simply be sent as frames are decoded.  Instead a scheduler thread sends each
+   *  quarter frame when the capture clock (see FrameClock) reaches its sample position: a
+   *  quarter of the measured frame period apart, starting from the frame boundaries the decoder
+   *  has found.  Frames between decoded ones are counted on from the last one, so the quarter
+   *  frames run evenly however the decoding is batched, and only stop if no frame is decoded for
+   *  MAX_MISSING frames.
+   *
+   *  Each pair of frames carries the 8 quarter frame pieces of the timecode of the first frame.
+   *  When timecode starts, or jumps, or isn't playing forward at play speed (which MTC can only
+   *  follow with full messages), a full frame SysEx message is sent instead, and quarter frames
+   *  start again once two frames in a row follow on from each other.
+   *
+   *  The scheduler sleeps until shortly before each message is due, then spins for the rest, and
+   *  the difference between when each quarter frame was due and when it was sent is kept for
+   *  getStats().  Full frame messages are sent as soon as the frame that needs one is decoded, so
+   *  have no due time and aren't counted in the lateness.  The scheduler reuses one ShortMessage
+   *  for every quarter frame, so it allocates nothing while timecode runs on.
+   */
+
+class MtcOutput implements LtcDecoder.FrameListener, AutoCloseable {
+  private static final int      MAX_MISSING = 4;          // Frames to count on without a decoded frame
+  private static final long     SPIN_NANOS = 500_000;     // Spin rather than sleep for the last 0.5 ms before a message
+  private final Receiver        receiver;
+  private final FrameClock      clock;
+  private final LtcDecoder      decoder;
+  private final double          sampleRate;
+  private final Thread          thread;
+  private volatile boolean      running = true;
+  // Last frame decoded (guarded by this)
+  private long                  lastFrame;
+  private long                  lastSample = -1;
+  private int                   following;                // Frames in a row that followed the one before
+  private boolean               resync;                   // Full frame message needed
+  private int                   fps;
+  private boolean               drop;
+  private int                   rateCode;                 // MTC rate (0 = 24, 1 = 25, 2 = 29.97 drop frame, 3 = 30)
+  // Scheduler thread
+  private int                   piece;                    // Next quarter frame piece (0 - 7)
+  private int                   pieceTimecode;            // Timecode sent by the current 8 pieces
+  private boolean               started;                  // Sending quarter frames
+  private long                  nextQuarter;              // Next quarter frame, counted from the frame boundary at lastSample
+  private final ShortMessage    quarter = new ShortMessage();
+  // Jitter statistics (written by the scheduler thread)
+  private volatile long         messages, timed, totalLate, maxLate, sumSquares;
+
+  /**
+   * @param clock capture clock of the stream being decoded (must be updated as samples are captured)
+   * @param decoder decoder to take the frame rate from (add this to it as a listener)
+   */
+  MtcOutput (Receiver receiver, FrameClock clock, LtcDecoder decoder, float sampleRate) {
+    this.receiver = receiver;
+    this.clock = clock;
+    this.decoder = decoder;
+    this.sampleRate = sampleRate;
+    thread = new Thread(this::run, "MTC");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MAX_PRIORITY);
+    thread.start();
+  }
+
+  /**
+   * Called on the decoding thread for each frame.  The sample position is that of the frame's SYNC
+   * word, which is the boundary where the next frame starts.
+   */
+  public synchronized void frameDecoded (long frame, long sample) {
+    FrameRate rate = decoder.getFrameRate();
+    double period = clock.getFramePeriod();
+    if (rate == null && period <= 0) {
+      return;
+    }
+    fps = rate != null ? rate.getFps() : nearestFps(sampleRate / period);
+    drop = fps == 30 && LtcDecoder.isDropFrame(frame);
+    rateCode = fps == 24 ? 0 : fps == 25 ? 1 : drop ? 2 : 3;
+    boolean follows = lastSample >= 0 && sample > lastSample && sample - lastSample < period * 1.5 &&
+                      TimecodeIndex.pack(frame) == advance(TimecodeIndex.pack(lastFrame), 1);
+    following = follows ? following + 1 : 0;
+    if (!follows) {
+      resync = true;
+    }
+    lastFrame = frame;
+    lastSample = sample;
+    if (following < 2) {
+      started = false;
+    } else if (started) {
+      // Count quarter frames from the new boundary, one frame on from the last
+      nextQuarter -= 4;
+    }
+    LockSupport.unpark(thread);
+  }
+
+  private static int nearestFps (double fps) {
+    return fps < 24.5 ? 24 : fps < 27.5 ? 25 : 30;
+  }
+
+  // Counts frames from timecode at the current rate
+  private int advance (int timecode, int frames) {
+    long perDay = TimecodeIndex.toFrames(TimecodeIndex.pack(24, 0, 0, 0), fps, drop);
+    long count = TimecodeIndex.toFrames(timecode, fps, drop) + frames;
+    return TimecodeIndex.fromFrames(((count % perDay) + perDay) % perDay, fps, drop);
+  }
+
+  private void run () {
+    // Messages are sent outside the lock, so a slow receiver never holds up the decoding thread
+    while (running) {
+      boolean scheduled = false;
+      long due = 0;
+      int message = 0;
+      int full = -1;
+      double period = clock.getFramePeriod();
+      synchronized (this) {
+        if (resync) {
+          resync = false;
+          // Frame starting at the boundary just decoded
+          full = advance(TimecodeIndex.pack(lastFrame), 1);
+        }
+        double pos = clock.positionAt(System.nanoTime());
+        if (full < 0 && following >= 2 && period > 0 && pos >= 0) {
+          if (!started) {
+            // Start with piece 0 on the next frame boundary to be captured
+            started = true;
+            nextQuarter = 4 * (long) Math.ceil((pos - lastSample) / period);
+            piece = 0;
+          }
+          long frames = Math.floorDiv(nextQuarter, 4);
+          double sample = lastSample + nextQuarter * period / 4;
+          if (frames > MAX_MISSING) {
+            // Timecode has stopped
+            following = 0;
+            started = false;
+          } else if (sample < pos - period / 4) {
+            // Fallen behind the capture clock (not scheduled for a while), so start again
+            started = false;
+          } else {
+            if (piece == 0) {
+              pieceTimecode = advance(TimecodeIndex.pack(lastFrame), (int) frames + 1);
+            }
+            message = quarterFrame(piece, pieceTimecode);
+            due = System.nanoTime() + (long) ((sample - pos) * 1e9 / sampleRate);
+            scheduled = true;
+          }
+        }
+      }
+      if (full >= 0) {
+        send(fullFrame(full));
+        continue;
+      } else if (!scheduled) {
+        LockSupport.parkNanos(this, 5_000_000);
+        continue;
+      }
+      // Sleep until just before the message is due, then spin
+      long wait;
+      while (running && (wait = due - System.nanoTime()) > SPIN_NANOS) {
+        LockSupport.parkNanos(this, wait - SPIN_NANOS);
+      }
+      while (running && System.nanoTime() < due) {
+        // Spin
+      }
+      synchronized (this) {
+        // Skip the message if a frame decoded meanwhile restarted the sequence, or if closed before it was due
+        scheduled = running && started && !resync;
+        if (scheduled) {
+          nextQuarter++;
+          piece = (piece + 1) & 7;
+        }
+      }
+      if (scheduled) {
+        send(message, due);
+      }
+    }
+  }
+
+  // The 8 pieces are the low and high nibbles of frames, seconds, minutes and hours (with the rate)
+  private int quarterFrame (int piece, int timecode) {
+    int value = piece < 6 ? (timecode >> (piece / 2 * 8)) & 0xFF : (timecode >>> 24) | rateCode << 5;
+    return piece << 4 | ((piece & 1) == 0 ? value & 0x0F : value >> 4);
+  }
+
+  private byte[] fullFrame (int timecode) {
+    return new byte[] {(byte) 0xF0, 0x7F, 0x7F, 0x01, 0x01, (byte) (timecode >>> 24 | rateCode << 5), (byte) (timecode >> 16),
+                       (byte) (timecode >> 8), (byte) timecode, (byte) 0xF7};
+  }
+
+  // Sends a quarter frame message due at System.nanoTime() due (receivers send or copy the message
+  // before returning, so the same one can be used every time)
+  private void send (int quarterFrame, long due) {
+    try {
+      quarter.setMessage(ShortMessage.MIDI_TIME_CODE, quarterFrame, 0);
+    } catch (InvalidMidiDataException ex) {
+      throw new IllegalStateException(ex);
+    }
+    receiver.send(quarter, -1);
+    long late = System.nanoTime() - due;
+    messages++;
+    timed++;
+    totalLate += late;
+    sumSquares += late / 1000 * (late / 1000);
+    maxLate = Math.max(maxLate, late);
+  }
+
+  private void send (byte[] sysex) {
+    try {
+      receiver.send(new SysexMessage(sysex, sysex.length), -1);
+    } catch (InvalidMidiDataException ex) {
+      throw new IllegalStateException(ex);
+    }
+    messages++;
+  }
+
+  /**
+   * @return {messages sent, mean lateness ns, RMS lateness ns, max lateness ns}, the lateness being that
+   * of the quarter frame messages
+   */
+  long[] getStats () {
+    long count = timed;
+    return new long[] {messages, count > 0 ? totalLate / count : 0, count > 0 ? (long) (Math.sqrt((double) sumSquares / count) * 1000) : 0,
+                       maxLate};
+  }
+
+  /**
+   * Stops the scheduler (the receiver is left open)
+   */
+  public void close () {
+    running = false;
+    LockSupport.unpark(thread);
+    try {
+      thread.join(1000);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
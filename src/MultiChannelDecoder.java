@@ -0,0 +1,158 @@
+import javax.sound.sampled.AudioFormat;
+
+  /*
+   *  Decodes LTC on several channels of an interleaved PCM stream at once.  The buffer is worked
+   *  through in chunks small enough to stay in L1 cache, and each channel of a chunk is unpacked
+   *  and sliced by that channel's own LtcDecoder (see LtcDecoder.sliceChunk()), so an 8 channel
+   *  interface carrying LTC from eight machines costs one pass over memory rather than eight.  Any format supported
+   *  by LtcDecoder can be decoded.
+   *
+   *  Channels with a null listener are skipped.  Not thread safe: process() must only be called
+   *  from one thread at a time, as DecoderPool does when it runs a MultiChannelDecoder as a Sink.
+   */
+
+class MultiChannelDecoder implements DecoderPool.Sink {
+  private static final int      CHUNK = 256;              // Sample frames unpacked at a time
+  private final LtcDecoder[]    decoders;                 // Decoder for each active channel
+  private final int[]           channels;                 // Channel index of each active decoder
+  private final int[]           offsets;                  // Byte offset of each active channel in a sample frame
+  private final int             frameSize;
+  private long                  samplePos;
+
+  /**
+   * @param format PCM format of the data passed to process() (see LtcDecoder.isSupported())
+   * @param listeners listener for each channel (array may be shorter than the number of channels)
+   */
+  MultiChannelDecoder (AudioFormat format, LtcDecoder.FrameListener[] listeners) {
+    if (!LtcDecoder.isSupported(format)) {
+      throw new IllegalArgumentException("Audio format not recognized: " + format);
+    }
+    int count = 0;
+    for (int ch = 0; ch < Math.min(listeners.length, format.getChannels()); ch++) {
+      count += listeners[ch] != null ? 1 : 0;
+    }
+    decoders = new LtcDecoder[count];
+    channels = new int[count];
+    offsets = new int[count];
+    for (int ch = 0, ii = 0; ii < count; ch++) {
+      if (listeners[ch] != null) {
+        decoders[ii] = new LtcDecoder(format, ch, listeners[ch]);
+        channels[ii] = ch;
+        offsets[ii] = ch * (format.getSampleSizeInBits() / 8);
+        ii++;
+      }
+    }
+    frameSize = format.getFrameSize();
+  }
+
+  void reset () {
+    for (LtcDecoder decoder : decoders) {
+      decoder.reset();
+    }
+    samplePos = 0;
+  }
+
+  /**
+   * Switches every channel between the classic slicer and PLL bit clock recovery (see LtcDecoder.setPll())
+   */
+  void setPll (boolean enable) {
+    for (LtcDecoder decoder : decoders) {
+      decoder.setPll(enable);
+    }
+  }
+
+  /**
+   * Sets the PLL loop bandwidth of every channel (see LtcDecoder.setPllBandwidth())
+   */
+  void setPllBandwidth (double hertz) {
+    for (LtcDecoder decoder : decoders) {
+      decoder.setPllBandwidth(hertz);
+    }
+  }
+
+  /**
+   * Enables or disables the InputFilter on every channel (see LtcDecoder.setFilter())
+   */
+  void setFilter (boolean enable) {
+    for (LtcDecoder decoder : decoders) {
+      decoder.setFilter(enable);
+    }
+  }
+
+  /**
+   * Enables the Flywheel on every channel, or disables it if frames is 0 (see LtcDecoder.setFlywheel())
+   */
+  void setFlywheel (int frames) {
+    for (LtcDecoder decoder : decoders) {
+      decoder.setFlywheel(frames);
+    }
+  }
+
+  /**
+   * @return decoder for channel, or null if the channel has no listener
+   */
+  LtcDecoder getDecoder (int channel) {
+    for (int dd = 0; dd < decoders.length; dd++) {
+      if (channels[dd] == channel) {
+        return decoders[dd];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Sets the sample index reported for the next sample frame passed to process()
+   */
+  void setSamplePosition (long samplePos) {
+    this.samplePos = samplePos;
+  }
+
+  long getSamplePosition () {
+    return samplePos;
+  }
+
+  /**
+   * Decodes count bytes of interleaved PCM data (must be a whole number of sample frames)
+   */
+  void process (byte[] buffer, int offset, int count) {
+    long began = System.nanoTime();
+    int total = count / frameSize;
+    int active = decoders.length;
+    for (LtcDecoder decoder : decoders) {
+      decoder.setSamplePosition(samplePos);
+    }
+    for (int done = 0; done < total; done += CHUNK) {
+      int len = Math.min(CHUNK, total - done);
+      int start = offset + done * frameSize;
+      for (int dd = 0; dd < active; dd++) {
+        decoders[dd].sliceChunk(buffer, start + offsets[dd], frameSize, len);
+      }
+    }
+    samplePos += total;
+    // Each channel is charged an equal share of the decoding time, then its levels and counters are published
+    long nanos = (System.nanoTime() - began) / Math.max(1, active);
+    for (LtcDecoder decoder : decoders) {
+      decoder.getStats().buffer(total, nanos);
+      decoder.updateLevels(total);
+    }
+  }
+
+  /**
+   * Decodes bytes read from a SampleRing, keeping sample positions equal to the stream position across overruns
+   */
+  public void decode (byte[] buffer, int count, long position) {
+    samplePos = position / frameSize;
+    process(buffer, 0, count);
+  }
+
+  public void closed () {
+  }
+
+  /**
+   * @return average input level of channel in the last buffer passed to process() (0 - 100)
+   */
+  int getLevel (int channel) {
+    LtcDecoder decoder = getDecoder(channel);
+    return decoder != null ? decoder.getLevel() : 0;
+  }
+}
@@ -0,0 +1,270 @@
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+  /*
+   *  Decodes one long PCM WAV or AIFF file on several cores.  The sample data is split
+   *  into segments which are memory mapped and decoded in parallel, each starting from a fresh
+   *  decoder.  While decoding the start of its segment, each task saves a snapshot of the
+   *  decoder state every CHUNK samples.
+   *
+   *  The results are then stitched in order.  Starting from the true state at the end of the
+   *  previous segment, the start of the next segment is re-decoded until the state matches one
+   *  of that segment's snapshots (normally within a frame, once both have locked on to the same
+   *  SYNC word).  From that point on the two decoders are guaranteed to produce identical output,
+   *  so frames are taken from the re-decode before the match and from the segment after it.
+   *  If a segment never converges it is simply re-decoded in full, so the output is always
+   *  identical to decoding the file sequentially.
+   *
+   *  Usage: java -cp TimecodeReader.jar ParallelDecoder [-c channel] file
+   *  runs the sequential decoder and then the parallel decoder with 1 to N threads, checks
+   *  the outputs are identical and prints the scaling curve.
+   */
+
+class ParallelDecoder {
+  private static final int      CHUNK = 64;               // Samples between state snapshots
+  private static final int      SEGMENT_BYTES = 16 * 1024 * 1024;
+  private final File            file;
+  private final AudioFormat     format;
+  private final int             channel;
+  private final long            dataStart;
+  private final long            sampleCount;
+  private final int             frameSize;
+  private final int             window;                   // Samples covered by snapshots at start of each segment
+
+  ParallelDecoder (File file, int channel) throws IOException {
+    this.file = file;
+    this.channel = channel;
+    try {
+      AudioFileFormat fileFormat = AudioSystem.getAudioFileFormat(file);
+      format = fileFormat.getFormat();
+      if (!LtcDecoder.isSupported(format)) {
+        throw new IllegalArgumentException("Parallel decoding requires integer or float PCM: " + format);
+      }
+      frameSize = format.getFrameSize();
+      dataStart = findData(file, fileFormat.getType());
+      sampleCount = Math.min(fileFormat.getFrameLength(), (file.length() - dataStart) / frameSize);
+      // Allow about four frames at the slowest frame rate for segments to converge
+      window = (int) (format.getSampleRate() / 6) / CHUNK * CHUNK;
+    } catch (javax.sound.sampled.UnsupportedAudioFileException ex) {
+      throw new IOException(ex);
+    }
+  }
+
+  /**
+   * Locates the first byte of sample data in a WAV or AIFF file
+   */
+  private static long findData (File file, AudioFileFormat.Type type) throws IOException {
+    try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      boolean aiff = type == AudioFileFormat.Type.AIFF || type == AudioFileFormat.Type.AIFC;
+      if (!aiff && type != AudioFileFormat.Type.WAVE) {
+        throw new IllegalArgumentException("Parallel decoding requires a WAV or AIFF file: " + type);
+      }
+      ByteBuffer hdr = ByteBuffer.allocate(12).order(aiff ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+      long pos = 12;
+      while (pos + 8 <= fc.size()) {
+        hdr.clear().limit(8);
+        fc.read(hdr, pos);
+        String id = new String(hdr.array(), 0, 4, java.nio.charset.StandardCharsets.US_ASCII);
+        long size = hdr.getInt(4) & 0xFFFFFFFFL;
+        if (!aiff && id.equals("data")) {
+          return pos + 8;
+        } else if (aiff && id.equals("SSND")) {
+          hdr.clear().limit(4);
+          fc.read(hdr, pos + 8);
+          // Skip offset and blockSize fields, plus any offset to the first sample frame
+          return pos + 16 + hdr.getInt(0);
+        }
+        // Chunks are padded to an even size
+        pos += 8 + size + (size & 1);
+      }
+      throw new IOException("No sample data found in " + file);
+    }
+  }
+
+  long getSampleCount () {
+    return sampleCount;
+  }
+
+  /**
+   * Decodes the whole file with the given number of threads and passes the frames to listener in order
+   */
+  void decode (int threads, LtcDecoder.FrameListener listener) throws IOException {
+    try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long segSamples = Math.max(SEGMENT_BYTES / frameSize, window * 4L);
+      List<Segment> segments = new ArrayList<>();
+      for (long start = 0; start < sampleCount; start += segSamples) {
+        segments.add(new Segment(fc, start, Math.min(start + segSamples, sampleCount)));
+      }
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      try {
+        pool.invoke(new RecursiveAction() {
+          protected void compute () {
+            invokeAll(segments);
+          }
+        });
+      } finally {
+        pool.shutdown();
+      }
+      stitch(segments, listener);
+    }
+  }
+
+  private void stitch (List<Segment> segments, LtcDecoder.FrameListener listener) {
+    int[] state = new int[LtcDecoder.STATE_SIZE];
+    FrameList pending = new FrameList();
+    LtcDecoder decoder = new LtcDecoder(format, channel, pending);
+    byte[] buffer = new byte[CHUNK * frameSize];
+    for (int ii = 0; ii < segments.size(); ii++) {
+      Segment seg = segments.get(ii);
+      long resume = seg.start;
+      if (ii > 0) {
+        // Re-decode from the true state until it converges with one of the segment's snapshots
+        decoder.loadState(state, 0, seg.start);
+        pending.clear();
+        ByteBuffer data = seg.data.duplicate();
+        data.position(0);
+        resume = -1;
+        for (int snap = 0; data.hasRemaining(); snap++) {
+          int len = Math.min(buffer.length, data.remaining());
+          data.get(buffer, 0, len);
+          decoder.process(buffer, 0, len);
+          if (snap < seg.snapCount && decoder.stateEquals(seg.snapshots, snap * LtcDecoder.STATE_SIZE)) {
+            resume = decoder.getSamplePosition();
+            break;
+          }
+        }
+        pending.sendTo(listener, Long.MIN_VALUE);
+        if (resume < 0) {
+          // Never converged, so the re-decode covered the whole segment
+          decoder.saveState(state, 0);
+          continue;
+        }
+      }
+      seg.frames.sendTo(listener, resume);
+      System.arraycopy(seg.endState, 0, state, 0, state.length);
+    }
+  }
+
+  private class Segment extends RecursiveAction {
+    private final FileChannel   fc;
+    private final long          start, end;
+    private ByteBuffer          data;
+    private final FrameList     frames = new FrameList();
+    private int[]               snapshots;
+    private int                 snapCount;
+    private final int[]         endState = new int[LtcDecoder.STATE_SIZE];
+
+    Segment (FileChannel fc, long start, long end) {
+      this.fc = fc;
+      this.start = start;
+      this.end = end;
+    }
+
+    protected void compute () {
+      try {
+        data = fc.map(FileChannel.MapMode.READ_ONLY, dataStart + start * frameSize, (end - start) * frameSize);
+      } catch (IOException ex) {
+        throw new java.io.UncheckedIOException(ex);
+      }
+      LtcDecoder decoder = new LtcDecoder(format, channel, frames);
+      decoder.setSamplePosition(start);
+      ByteBuffer src = data.duplicate();
+      // Decode the convergence window in CHUNK sized steps, saving the state after each
+      byte[] buffer = new byte[CHUNK * frameSize];
+      snapshots = new int[(window / CHUNK) * LtcDecoder.STATE_SIZE];
+      while (src.hasRemaining() && snapCount < window / CHUNK) {
+        int len = Math.min(buffer.length, src.remaining());
+        src.get(buffer, 0, len);
+        decoder.process(buffer, 0, len);
+        decoder.saveState(snapshots, snapCount++ * LtcDecoder.STATE_SIZE);
+      }
+      buffer = new byte[64 * 1024 - (64 * 1024) % frameSize];
+      while (src.hasRemaining()) {
+        int len = Math.min(buffer.length, src.remaining());
+        src.get(buffer, 0, len);
+        decoder.process(buffer, 0, len);
+      }
+      decoder.saveState(endState, 0);
+    }
+  }
+
+  // Growable list of (frame, sample) pairs
+  static class FrameList implements LtcDecoder.FrameListener {
+    long[]  entries = new long[256];
+    int     size;
+
+    public void frameDecoded (long frame, long sample) {
+      if (size + 2 > entries.length) {
+        entries = Arrays.copyOf(entries, entries.length * 2);
+      }
+      entries[size++] = frame;
+      entries[size++] = sample;
+    }
+
+    void clear () {
+      size = 0;
+    }
+
+    // Passes on all frames whose sample position is at or after from
+    void sendTo (LtcDecoder.FrameListener listener, long from) {
+      for (int ii = 0; ii < size; ii += 2) {
+        if (entries[ii + 1] >= from) {
+          listener.frameDecoded(entries[ii], entries[ii + 1]);
+        }
+      }
+    }
+  }
+
+  public static void main (String[] args) throws Exception {
+    int channel = 0;
+    String path = null;
+    for (int ii = 0; ii < args.length; ii++) {
+      if (args[ii].equals("-c")) {
+        channel = Integer.parseInt(args[++ii]);
+      } else {
+        path = args[ii];
+      }
+    }
+    if (path == null) {
+      System.err.println("Usage: java -cp TimecodeReader.jar ParallelDecoder [-c channel] file");
+      System.exit(1);
+    }
+    ParallelDecoder pd = new ParallelDecoder(new File(path), channel);
+    // Sequential reference
+    FrameList reference = new FrameList();
+    long start = System.nanoTime();
+    try (javax.sound.sampled.AudioInputStream in = AudioSystem.getAudioInputStream(new File(path))) {
+      LtcDecoder decoder = new LtcDecoder(in.getFormat(), channel, reference);
+      byte[] buffer = new byte[64 * 1024 - (64 * 1024) % pd.frameSize];
+      int count;
+      while ((count = in.read(buffer)) > 0) {
+        decoder.process(buffer, 0, count);
+      }
+    }
+    double seqSecs = (System.nanoTime() - start) / 1e9;
+    System.out.printf("sequential: %d frames, %.3f s, %.0f samples/s%n", reference.size / 2, seqSecs, pd.sampleCount / seqSecs);
+    int cores = Runtime.getRuntime().availableProcessors();
+    for (int threads = 1; threads <= cores; threads++) {
+      FrameList result = new FrameList();
+      start = System.nanoTime();
+      pd.decode(threads, result);
+      double secs = (System.nanoTime() - start) / 1e9;
+      boolean same = result.size == reference.size &&
+                     Arrays.equals(Arrays.copyOf(result.entries, result.size), Arrays.copyOf(reference.entries, reference.size));
+      System.out.printf("%2d threads: %d frames, %.3f s, %.0f samples/s, speedup %.2f, %s%n", threads, result.size / 2, secs,
+                        pd.sampleCount / secs, seqSecs / secs, same ? "identical" : "MISMATCH");
+    }
+  }
+}
@@ -0,0 +1,196 @@
+  /*
+   *  Phase-locked loop bit clock recovery for LtcDecoder.  The classic slicer compares each edge
+   *  interval with the one before it, so it only holds lock near play speed.  This one tracks
+   *  the half bit period with a second order loop: each zero crossing (timed to a fraction of a
+   *  sample by interpolating between the samples either side of it) is compared with the time
+   *  the loop predicted for it, and the error corrects both the phase and the period.  Edges one
+   *  half period apart make up a '1' bit and edges a whole bit period apart a '0' bit, so the
+   *  loop follows anything from jog to shuttle speeds, as long as a half bit still spans a couple
+   *  of samples (4x play speed at 44.1 kHz, 10x at 192 kHz, or at 96 kHz for rates other than
+   *  29.97).  Until it locks, the loop runs with wide acquisition gains, so it pulls in from play
+   *  speed to any of these within a frame or two.  An edge can only be timed to about half a
+   *  sample, so the error allowed while locked includes a sample of quantization on top of a
+   *  fraction of the period, but stays under half a period so half and whole bits can't be
+   *  confused, and the loop never locks to a half bit under MIN_PERIOD samples.
+   *
+   *  Bits go through an 80 bit shift register which is checked for the SYNC word in both bit
+   *  orders.  Played in reverse, a frame arrives last bit first, so SYNC arrives (bit reversed)
+   *  before the data bits, and the frame is complete 64 bits later.  The register is cleared
+   *  whenever the loop loses lock, and a frame is only passed on once a whole 80 bits have been
+   *  clocked in step since then (or since the last SYNC), so bits clocked while out of step never
+   *  make up a frame.  The nominal frame rate, which sets the starting period and what getSpeed()
+   *  calls play speed, is set by LtcDecoder from the rate RateDetector measures.
+   *
+   *  Per sample cost is the same as the classic slicer (only edges do any work).
+   */
+
+class PllSlicer {
+  private static final double   DAMPING = 0.707;
+  private static final int      LOCK_EDGES = 32;          // Consecutive good edges needed to report lock
+  private static final double   MIN_BIT_RATE = 300;       // Half bits per second at 1/10 speed and 24 fps (rounded down)
+  private static final double   MIN_PERIOD = 1.5;         // Shortest half bit (in samples) the loop locks to
+  private static final double   ACQUIRE_ALPHA = 0.5;      // Phase and period gains until locked
+  private static final double   ACQUIRE_BETA = 0.05;
+  static final double           DEFAULT_BANDWIDTH = 100;
+  private final LtcDecoder      decoder;
+  private final DecoderStats    stats;
+  private final double          sampleRate;
+  private double                bandwidth = DEFAULT_BANDWIDTH; // Loop bandwidth in Hz
+  private double                nominalFps = 30;
+  // Loop state (times are in samples)
+  private double                edgeAt;                   // Predicted time of the last edge
+  private double                period;                   // Half bit period
+  private boolean               halfBit;                  // Seen the first half of a '1' bit
+  private int                   goodEdges;
+  // 80 bit shift register, newest bit in bit 15 of hi and oldest in bit 0 of lo
+  private long                  lo;
+  private int                   hi;
+  private int                   direction = 1;
+  private int                   sinceSync;                // Bits since the last frame, or -1 if not receiving frames
+  private int                   bits;                     // Bits shifted in since the loop lost lock or the last SYNC
+  private int                   edges;                    // Edges tracked, to measure the jitter of every 16th
+
+  /**
+   * @param decoder receives frames through frameReceived()
+   */
+  PllSlicer (LtcDecoder decoder, float sampleRate) {
+    this.decoder = decoder;
+    stats = decoder.getStats();
+    this.sampleRate = sampleRate;
+    reset();
+  }
+
+  void reset () {
+    // Start from play speed at the nominal frame rate
+    period = sampleRate / (nominalFps * 160);
+    edgeAt = 0;
+    halfBit = false;
+    goodEdges = 0;
+    lo = hi = 0;
+    bits = 0;
+    direction = 1;
+    sinceSync = -1;
+  }
+
+  /**
+   * Sets the loop bandwidth.  Higher values follow speed changes faster (shuttle), lower values
+   * reject more edge jitter.
+   * @param hertz bandwidth of the loop in Hz (default DEFAULT_BANDWIDTH)
+   */
+  void setBandwidth (double hertz) {
+    bandwidth = hertz;
+  }
+
+  /**
+   * Sets the frame rate that getSpeed() treats as play speed, and that reset() starts the loop from (default 30)
+   * @param fps frames per second of real time (see FrameRate.getRate())
+   */
+  void setNominalFps (double fps) {
+    nominalFps = fps;
+  }
+
+  /**
+   * Called by LtcDecoder for each zero crossing, which is between the sample before pos and the one at pos
+   */
+  void edge (int before, int after, long pos) {
+    // Interpolate time of the crossing
+    double at = pos - 1 + (double) before / (before - after);
+    double dt = at - edgeAt;
+    boolean locked = goodEdges >= LOCK_EDGES;
+    if (dt < period * (locked ? 0.5 : 0.75) || dt > period * 3) {
+      // Not a half or whole bit from the last edge.  Unless locked, take this as the new period, as a
+      // shorter interval must be a half bit and a much longer one is most likely a whole bit
+      if (!locked) {
+        period = dt < period ? Math.max(dt, 1) : Math.min(dt / 2, sampleRate / MIN_BIT_RATE);
+      } else {
+        stats.jitter(100);
+      }
+      lostLock();
+      halfBit = false;
+      edgeAt = at;
+      return;
+    }
+    int halves = dt < period * 1.5 ? 1 : 2;
+    double err = at - (edgeAt + halves * period);
+    if ((++edges & 15) == 0) {
+      stats.jitter((int) (Math.abs(err) * 50 / period));
+    }
+    // Second order loop, with gains set per edge from the time since the last one (or wider until locked)
+    double theta = 2 * Math.PI * bandwidth * dt / sampleRate;
+    double alpha = Math.min(1, 2 * DAMPING * theta);
+    double beta = Math.min(0.5, theta * theta);
+    if (!locked) {
+      alpha = Math.max(alpha, ACQUIRE_ALPHA);
+      beta = Math.max(beta, ACQUIRE_BETA);
+    }
+    edgeAt += halves * period + alpha * err;
+    period += beta * err / halves;
+    if (Math.abs(err) < Math.min(period * 0.35 + 1, period * 0.45) && period >= MIN_PERIOD) {
+      goodEdges = Math.min(goodEdges + 1, LOCK_EDGES);
+    } else {
+      lostLock();
+    }
+    if (halves == 1) {
+      if (halfBit) {
+        halfBit = false;
+        shift(1, pos);
+      } else {
+        halfBit = true;
+      }
+    } else {
+      // A whole bit with half a '1' pending means we were out of step, so drop the half
+      halfBit = false;
+      shift(0, pos);
+    }
+  }
+
+  // Discards the bits in the shift register, which may have been clocked out of step
+  private void lostLock () {
+    goodEdges = 0;
+    lo = hi = 0;
+    bits = 0;
+  }
+
+  private void shift (int bit, long pos) {
+    decoder.bitClocked();
+    lo = (lo >>> 1) | (long) (hi & 1) << 63;
+    hi = (hi >>> 1) | bit << 15;
+    if (sinceSync >= 0 && ++sinceSync > 80) {
+      // The next frame should have ended on the last bit
+      stats.syncLoss();
+      sinceSync = -1;
+    }
+    bits = Math.min(bits + 1, 80);
+    if (bits < 80) {
+      // Not a whole frame of bits clocked in step yet
+      return;
+    }
+    if (hi == LtcDecoder.SYNC) {
+      // Played forwards: SYNC is the last 16 bits received, with the data bits before it
+      direction = 1;
+      sinceSync = 0;
+      bits = 0;
+      decoder.frameReceived(lo, pos);
+    } else if ((Integer.reverse((int) lo) >>> 16) == LtcDecoder.SYNC) {
+      // Played backwards: the oldest 16 bits are SYNC in reverse order, followed by the data bits in reverse
+      direction = -1;
+      sinceSync = 0;
+      bits = 0;
+      decoder.frameReceived(Long.reverse(lo >>> 16 | (long) hi << 48), pos);
+    }
+  }
+
+  /**
+   * @return true if the loop has tracked the last LOCK_EDGES edges
+   */
+  boolean isLocked () {
+    return goodEdges >= LOCK_EDGES;
+  }
+
+  /**
+   * @return measured playback speed relative to the nominal frame rate, negative when playing backwards
+   */
+  double getSpeed () {
+    return direction * sampleRate / (period * 160 * nominalFps);
+  }
+}
@@ -0,0 +1,104 @@
+  /*
+   *  Classifies the frame rate of LTC from the spacing of its SYNC words, so it's known within a
+   *  few frames rather than after the frame number next wraps.  The frame period (80 bit
+   *  periods) is averaged over a sliding window of up to WINDOW frames and reclassified with each
+   *  frame, and the drop frame flag of each frame is added to the 29.97/30 rates.
+   *
+   *  25 fps is known by the second frame, but 23.976 and 24, or 29.97 and 30 fps, are only 0.1%
+   *  apart, which is less than a sample per frame at low sample rates.  So the choice between
+   *  them waits until the window spans enough samples that the two differ by RESOLUTION samples
+   *  (a few frames, however low the sample rate), which is well outside the SYNC jitter.
+   *
+   *  A frame that arrives off the beat of the window (a new source, a change of speed) restarts
+   *  the window.  Frames missing from the window are counted from the gap, so a dropout doesn't.
+   *  When the measured rate isn't near any standard rate (jog, shuttle or varispeed), the last
+   *  rate classified is kept.
+   */
+
+class RateDetector {
+  private static final int      WINDOW = 16;              // Frames averaged
+  private static final double   TOLERANCE = 0.02;         // Standard rates are at least 4% apart, apart from the 1000/1001 pairs
+  private static final double   RESOLUTION = 4;           // Samples the 1000/1001 pairs must differ by over the window
+  private static final int[]    FPS = {24, 24, 25, 30, 30};
+  private static final double[] RATES = {24000 / 1001.0, 24, 25, 30000 / 1001.0, 30};
+  private final float           sampleRate;
+  // Ring of SYNC sample positions, and frame counts since the window started
+  private final long[]          samples = new long[WINDOW];
+  private final long[]          frames = new long[WINDOW];
+  private int                   head;
+  private int                   count;
+  private double                period;                   // Mean samples per frame over the window
+  private FrameRate             rate;
+
+  RateDetector (float sampleRate) {
+    this.sampleRate = sampleRate;
+  }
+
+  void reset () {
+    count = 0;
+    rate = null;
+  }
+
+  /**
+   * Adds a frame to the window
+   * @param sample sample position of the frame's SYNC word
+   * @return the frame rate, or null if it's not known yet
+   */
+  FrameRate update (long frame, long sample) {
+    long step = 1;
+    if (count > 0) {
+      long elapsed = sample - samples[head];
+      if (count > 1) {
+        step = Math.round(elapsed / period);
+        if (step < 1 || Math.abs(elapsed - step * period) > period / 8) {
+          count = 0;
+        }
+      } else if (elapsed <= 0) {
+        count = 0;
+      }
+    }
+    long last = frames[head];
+    head = (head + 1) % WINDOW;
+    samples[head] = sample;
+    frames[head] = count > 0 ? last + step : 0;
+    count = Math.min(count + 1, WINDOW);
+    boolean drop = LtcDecoder.isDropFrame(frame);
+    if (count > 1) {
+      int oldest = (head - count + 1 + WINDOW) % WINDOW;
+      long span = samples[head] - samples[oldest];
+      period = span / (double) (frames[head] - frames[oldest]);
+      int best = classify(sampleRate / period);
+      if (best >= 0 && FPS[best] != 25 && span < RESOLUTION * 1001) {
+        // Too few frames yet to tell fps from fps * 1000 / 1001, so keep the rate classified before
+        // the window restarted, if any, or wait
+        return rate = rate != null && rate.getFps() == FPS[best] ? FrameRate.of(FPS[best], rate.isPulldown(), drop) : null;
+      } else if (best >= 0) {
+        return rate = FrameRate.of(FPS[best], RATES[best] != FPS[best], drop);
+      }
+    }
+    return rate = rate != null ? FrameRate.of(rate.getFps(), rate.isPulldown(), drop) : null;
+  }
+
+  /**
+   * @return index of the standard rate nearest fps, or -1 if none is within TOLERANCE
+   */
+  private static int classify (double fps) {
+    int best = -1;
+    double bestError = TOLERANCE;
+    for (int ii = 0; ii < RATES.length; ii++) {
+      double error = Math.abs(fps / RATES[ii] - 1);
+      if (error < bestError) {
+        best = ii;
+        bestError = error;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * @return the rate returned by the last update(), or null if not known
+   */
+  FrameRate getFrameRate () {
+    return rate;
+  }
+}
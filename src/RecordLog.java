@@ -0,0 +1,283 @@
+import javax.swing.AbstractListModel;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+  /*
+   *  Backing store for the "Record" tab.  Recorded frames are kept as packed longs in a fixed
+   *  capacity ring (oldest rows are discarded once it's full) and formatted into text only when
+   *  a JList asks for a visible row, so memory use stays flat however long a session runs.
+   *
+   *  Every recorded frame is also streamed in the background to a spool file, which holds the
+   *  complete recording and is what "Save Recording As..." copies.  The decoder never waits for
+   *  either, so if the view or the spool writer falls so far behind that its queue fills, frames
+   *  are dropped, and a GAP row giving the number dropped is recorded in their place.
+   *
+   *  Threads: add() is called by the decoder thread, refresh(), clear() and save() by the Swing
+   *  thread, and the spool file is written (and copied by save()) by its own daemon thread.
+   */
+
+class RecordLog extends AbstractListModel<String> {
+  static final String[]         TYPES = {"None", "Timecode", "Raw Frame", "TC + Raw Frame"};
+  static final int              LINE = 50;                // Length of longest formatted line
+  static final long             STOPPED = 0x0F;           // Not a valid frame (frame units > 9), marks end of a capture
+  static final long             GAP = 0x0E;               // Not a valid frame, marks frames dropped (sample is the count)
+  private static final int      TYPE_SHIFT = 56;
+  private static final long     SAMPLE_MASK = (1L << TYPE_SHIFT) - 1;
+  // Rows shown in the view (Swing thread only)
+  private final long[]          frames;
+  private final long[]          samples;
+  private int                   first, size;
+  // Frames on their way to the view and to the spool file
+  private final FrameLog        viewQueue = new FrameLog(8192);
+  private final FrameLog        spoolQueue = new FrameLog(65536);
+  private final long[]          batch = new long[1024];
+  private volatile int          type;
+  private long                  viewGap, spoolGap;        // Frames dropped since the last GAP row (decoder thread only)
+  // Spool file writer
+  private final File            spool;
+  private final Thread          spoolThread;
+  private final AtomicLong      clearSpool = new AtomicLong(-1); // Spool queue position to clear up to, or -1
+  private final AtomicReference<Save> saving = new AtomicReference<>();
+  private volatile IOException  spoolError;
+
+  // A save() waiting for the spool writer
+  private static class Save {
+    private final File                  file;
+    private final Consumer<IOException> done;
+
+    private Save (File file, Consumer<IOException> done) {
+      this.file = file;
+      this.done = done;
+    }
+  }
+
+  /**
+   * @param capacity maximum number of rows kept for display
+   */
+  RecordLog (int capacity) throws IOException {
+    frames = new long[capacity];
+    samples = new long[capacity];
+    spool = File.createTempFile("TimecodeReader", ".txt");
+    spool.deleteOnExit();
+    spoolThread = new Thread(this::writeSpool, "Record Spool");
+    spoolThread.setDaemon(true);
+    spoolThread.start();
+  }
+
+  /**
+   * Sets what is recorded for each frame (one of TYPES)
+   */
+  void setType (String name) {
+    type = java.util.Arrays.asList(TYPES).indexOf(name);
+  }
+
+  boolean isRecording () {
+    return type > 0;
+  }
+
+  /**
+   * Called by the decoder thread to record a frame (or STOPPED, which may wait for the spool writer)
+   */
+  void add (long frame, long sample) {
+    long tagged = (sample & SAMPLE_MASK) | (long) type << TYPE_SHIFT;
+    if (frame == STOPPED) {
+      // Wait for room for the end of the capture and a gap before it, so the spool file marks every gap
+      while (spoolQueue.getSpace() < 2 && spoolThread.isAlive()) {
+        LockSupport.unpark(spoolThread);
+        LockSupport.parkNanos(this, 1000000L);
+      }
+    }
+    viewGap = add(viewQueue, viewGap, frame, tagged);
+    if ((spoolGap = add(spoolQueue, spoolGap, frame, tagged)) > 0) {
+      // Spool writer is stalled, so wake it up
+      LockSupport.unpark(spoolThread);
+    }
+  }
+
+  // Adds a frame to queue, preceded by a GAP row if frames have been dropped, and returns the new gap
+  private static long add (FrameLog queue, long gap, long frame, long tagged) {
+    if (gap > 0 && !queue.add(GAP, gap)) {
+      return gap + 1;
+    }
+    return queue.add(frame, tagged) ? 0 : 1;
+  }
+
+  /**
+   * Called by the Swing thread to move newly recorded frames into the view
+   * @return true if rows were added
+   */
+  boolean refresh () {
+    int oldSize = size;
+    int dropped = 0;
+    int count;
+    while ((count = viewQueue.read(batch, batch.length / 2)) > 0) {
+      for (int ii = 0; ii < count; ii++) {
+        int idx = (first + size) % frames.length;
+        frames[idx] = batch[ii * 2];
+        samples[idx] = batch[ii * 2 + 1];
+        if (size < frames.length) {
+          size++;
+        } else {
+          first = (first + 1) % frames.length;
+          dropped++;
+        }
+      }
+    }
+    if (dropped > 0) {
+      fireIntervalRemoved(this, 0, Math.min(dropped, oldSize) - 1);
+      oldSize -= Math.min(dropped, oldSize);
+    }
+    if (size > oldSize) {
+      fireIntervalAdded(this, oldSize, size - 1);
+    } else if (dropped > 0) {
+      fireContentsChanged(this, 0, size - 1);
+    }
+    return dropped > 0 || size > oldSize;
+  }
+
+  /**
+   * Clears the view and the spool file, including frames recorded but not yet shown or written
+   */
+  void clear () {
+    viewQueue.skip(viewQueue.getAdded());
+    if (size > 0) {
+      int oldSize = size;
+      first = size = 0;
+      fireIntervalRemoved(this, 0, oldSize - 1);
+    }
+    // The spool writer discards whatever was queued before now
+    clearSpool.set(spoolQueue.getAdded());
+    LockSupport.unpark(spoolThread);
+  }
+
+  /**
+   * Copies the complete recording to file in the background, once the spool writer has caught up
+   * @param done called on the spool thread when the file has been written (with null) or has failed
+   * @return false if a save is already in progress
+   */
+  boolean save (File file, Consumer<IOException> done) {
+    Save save = new Save(file, done);
+    if (!saving.compareAndSet(null, save)) {
+      return false;
+    }
+    if (!spoolThread.isAlive() && saving.compareAndSet(save, null)) {
+      done.accept(spoolError != null ? spoolError : new IOException("Recording not spooled"));
+    }
+    LockSupport.unpark(spoolThread);
+    return true;
+  }
+
+  public int getSize () {
+    return size;
+  }
+
+  public String getElementAt (int index) {
+    int idx = (first + index) % frames.length;
+    char[] line = new char[LINE];
+    int len = format(frames[idx], samples[idx], line);
+    // Strip newline for display
+    return new String(line, 0, len - 1);
+  }
+
+  /**
+   * Formats a recorded frame into line as "HH:MM:SS:FF - 0000xxxx:0000xxxx:0000xxxx:0000xxxx\n", or
+   * the part of it selected by the type it was recorded with
+   * @param tagged sample index and type, as queued by add()
+   * @return number of chars written
+   */
+  static int format (long frame, long tagged, char[] line) {
+    if (frame == STOPPED) {
+      "Stopped\n".getChars(0, 8, line, 0);
+      return 8;
+    } else if (frame == GAP) {
+      String gap = "Gap: " + tagged + " frames not recorded\n";
+      gap.getChars(0, gap.length(), line, 0);
+      return gap.length();
+    }
+    switch ((int) (tagged >>> TYPE_SHIFT)) {
+      case 1:
+        LtcDecoder.formatTimecode(frame, line, 0);
+        line[11] = '\n';
+        return 12;
+      case 2:
+        LtcDecoder.formatRaw(frame, line, 0);
+        line[35] = '\n';
+        return 36;
+      case 3:
+        LtcDecoder.formatTimecode(frame, line, 0);
+        line[11] = ' ';
+        line[12] = '-';
+        line[13] = ' ';
+        LtcDecoder.formatRaw(frame, line, 14);
+        line[49] = '\n';
+        return LINE;
+      default:
+        return 0;
+    }
+  }
+
+  private void writeSpool () {
+    char[] line = new char[LINE];
+    long[] entries = new long[2048];
+    Writer out = null;
+    try {
+      out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spool), StandardCharsets.UTF_8), 64 * 1024);
+      while (true) {
+        long clearTo = clearSpool.getAndSet(-1);
+        if (clearTo >= 0) {
+          spoolQueue.skip(clearTo);
+          out.close();
+          out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spool), StandardCharsets.UTF_8), 64 * 1024);
+        }
+        int count;
+        while ((count = spoolQueue.read(entries, entries.length / 2)) > 0) {
+          for (int ii = 0; ii < count; ii++) {
+            out.write(line, 0, format(entries[ii * 2], entries[ii * 2 + 1], line));
+          }
+        }
+        Save save = saving.get();
+        if (save != null) {
+          out.flush();
+          IOException error = null;
+          try {
+            Files.copy(spool.toPath(), save.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+          } catch (IOException ex) {
+            error = ex;
+          }
+          saving.set(null);
+          save.done.accept(error);
+        }
+        // The spool queue holds over half an hour of frames, so waking ten times a second is plenty
+        LockSupport.parkNanos(this, 100000000L);
+      }
+    } catch (IOException ex) {
+      ex.printStackTrace();
+      spoolError = ex;
+      // Fail any save waiting for the spool writer
+      Save save = saving.getAndSet(null);
+      if (save != null) {
+        save.done.accept(ex);
+      }
+    }
+  }
+
+  /**
+   * @return frames recorded but never shown, as the view fell behind
+   */
+  long getViewDropped () {
+    return viewQueue.getDropped();
+  }
+
+  /**
+   * @return frames recorded but missing from the spool file, as the spool writer fell behind
+   */
+  long getSpoolDropped () {
+    return spoolQueue.getDropped();
+  }
+}
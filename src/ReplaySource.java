@@ -0,0 +1,104 @@
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+  /*
+   *  Plays back a binary capture file (see CaptureFile) on its own thread, using the recorded
+   *  decode times to pace the frames.  A speed of 1 replays in real time, N replays N times faster
+   *  and 0 (or less) replays as fast as the listeners can take frames.  Frames are passed in to an
+   *  LtcDecoder as if its slicer had just received them, so whatever listens to its frames (and
+   *  asks it for the frame rate) sees replayed frames just as it would decoded ones.
+   */
+
+class ReplaySource implements Runnable {
+  private final CaptureFile.Reader        in;
+  private final double                    speed;
+  private final LtcDecoder                decoder;
+  private final Runnable                  onDone;
+  private volatile boolean                running;
+  private Thread                          thread;
+  private long                            frames;
+
+  /**
+   * Opens file for replay
+   * @param onDone called on the replay thread when the replay finishes or is stopped (may be null)
+   */
+  ReplaySource (File file, double speed, Runnable onDone) throws IOException {
+    in = new CaptureFile.Reader(file);
+    this.speed = speed;
+    this.onDone = onDone;
+    decoder = new LtcDecoder(new AudioFormat(in.getSampleRate(), 16, 1, true, false), null);
+  }
+
+  /**
+   * @return the decoder replayed frames are passed through (add listeners to it before start())
+   */
+  LtcDecoder getDecoder () {
+    return decoder;
+  }
+
+  float getSampleRate () {
+    return in.getSampleRate();
+  }
+
+  void start () {
+    running = true;
+    (thread = new Thread(this, "Replay")).start();
+  }
+
+  void stop () {
+    running = false;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  /**
+   * Waits for the replay to finish or be stopped
+   */
+  void join () throws InterruptedException {
+    if (thread != null) {
+      thread.join();
+    }
+  }
+
+  boolean isRunning () {
+    return running;
+  }
+
+  public void run () {
+    try (CaptureFile.Reader in = this.in) {
+      long start = System.nanoTime();
+      long first = -1;
+      while (running && in.next()) {
+        if (first < 0) {
+          first = in.getNanos();
+        }
+        if (speed > 0) {
+          // Wait until this frame is due
+          long due = start + (long) ((in.getNanos() - first) / speed);
+          long wait;
+          while (running && (wait = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, wait);
+          }
+        }
+        if (running) {
+          decoder.frameReceived(in.getFrame(), in.getSample());
+          frames++;
+        }
+      }
+    } catch (IOException ex) {
+      ex.printStackTrace();
+    } finally {
+      running = false;
+      if (onDone != null) {
+        onDone.run();
+      }
+    }
+  }
+
+  long getFrames () {
+    return frames;
+  }
+}
@@ -0,0 +1,172 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+  /*
+   *  Single-producer / single-consumer ring buffer used to hand raw audio bytes from the
+   *  TargetDataLine capture thread to a decoder thread.  Neither side takes a lock: the
+   *  producer only advances head, the consumer only advances tail.  The consumer registers a
+   *  ready listener, which the producer calls after every write and on close, and drains the
+   *  ring with poll() when it's called (see DecoderPool), so an idle reader uses no CPU.
+   *
+   *  If the consumer falls so far behind that a write will not fit, the whole write is
+   *  dropped (to keep sample alignment) and counted as an overrun rather than lost silently.
+   *  The position of each drop is also queued so the consumer can tell exactly where in the
+   *  original stream every byte it reads came from (see getLastReadPosition()).
+   */
+
+class SampleRing {
+  private final byte[]          buffer;
+  private final int             mask;
+  private final AtomicLong      head = new AtomicLong();      // Next byte to write (producer owned)
+  private final AtomicLong      tail = new AtomicLong();      // Next byte to read (consumer owned)
+  private final AtomicLong      overruns = new AtomicLong();
+  private final AtomicLong      droppedBytes = new AtomicLong();
+  private volatile Runnable     readyListener;
+  private volatile boolean      closed;
+  // Queue of gaps left by dropped writes: ring position of the gap and total bytes dropped up to and including it
+  private static final int      GAPS = 64;
+  private final long[]          gapAt = new long[GAPS];
+  private final long[]          gapTotal = new long[GAPS];
+  private volatile int          gapWrite;                   // Producer owned
+  private long                  pendingAt = -1;             // Producer owned
+  private long                  pendingTotal;               // Producer owned
+  private volatile int          gapRead;                    // Consumer owned
+  private long                  skipped;                    // Consumer owned
+  private long                  lastReadPos;                // Consumer owned
+
+  /**
+   * @param capacity size of the ring in bytes (rounded up to the next power of 2)
+   */
+  SampleRing (int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Ring capacity must be > 0: " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    buffer = new byte[size];
+    mask = size - 1;
+  }
+
+  int capacity () {
+    return buffer.length;
+  }
+
+  /**
+   * Called by the producer thread to append bytes to the ring.  Never blocks.
+   * @return true if the bytes were queued, or false if they were dropped as an overrun
+   */
+  boolean write (byte[] src, int off, int len) {
+    long wr = head.get();
+    boolean fits = len <= buffer.length - (int) (wr - tail.get());
+    if (fits && pendingAt >= 0) {
+      // Publish the preceding gap before any bytes that follow it, or keep dropping until there's room to
+      int gw = gapWrite;
+      if (gw - gapRead < GAPS) {
+        gapAt[gw & (GAPS - 1)] = pendingAt;
+        gapTotal[gw & (GAPS - 1)] = pendingTotal;
+        gapWrite = gw + 1;
+        pendingAt = -1;
+      } else {
+        fits = false;
+      }
+    }
+    if (!fits) {
+      overruns.incrementAndGet();
+      // Consecutive drops all happen at the same ring position, so they merge into one gap
+      pendingAt = wr;
+      pendingTotal = droppedBytes.addAndGet(len);
+      return false;
+    }
+    int idx = (int) wr & mask;
+    int first = Math.min(len, buffer.length - idx);
+    System.arraycopy(src, off, buffer, idx, first);
+    System.arraycopy(src, off + first, buffer, 0, len - first);
+    // Volatile store of head before the listener runs, so a consumer it wakes sees the bytes
+    head.set(wr + len);
+    wakeConsumer();
+    return true;
+  }
+
+  /**
+   * Sets a listener to be called on the producer thread each time data is written or the ring is closed
+   */
+  void setReadyListener (Runnable readyListener) {
+    this.readyListener = readyListener;
+  }
+
+  private void wakeConsumer () {
+    Runnable listener = readyListener;
+    if (listener != null) {
+      listener.run();
+    }
+  }
+
+  /**
+   * Called by the consumer thread to take up to len bytes without blocking.
+   * @return number of bytes read, 0 if the ring is empty, or -1 if it has been closed and fully drained
+   */
+  int poll (byte[] dst, int off, int len) {
+    long rd = tail.get();
+    boolean wasClosed = closed;
+    int avail = (int) (head.get() - rd);
+    if (avail == 0) {
+      // closed was read before head, so no write can have been missed
+      return wasClosed ? -1 : 0;
+    }
+    return take(rd, avail, dst, off, len);
+  }
+
+  /**
+   * @return true if there are bytes waiting to be read, or the ring has been closed
+   */
+  boolean isReady () {
+    return closed || head.get() != tail.get();
+  }
+
+  private int take (long rd, int avail, byte[] dst, int off, int len) {
+    int count = Math.min(avail, len);
+    // Account for any writes dropped before this point and don't read across the next one
+    int gr = gapRead;
+    while (gr != gapWrite) {
+      long at = gapAt[gr & (GAPS - 1)];
+      if (at > rd) {
+        count = (int) Math.min(count, at - rd);
+        break;
+      }
+      skipped = gapTotal[gr & (GAPS - 1)];
+      gapRead = ++gr;
+    }
+    lastReadPos = rd + skipped;
+    int idx = (int) rd & mask;
+    int first = Math.min(count, buffer.length - idx);
+    System.arraycopy(buffer, idx, dst, off, first);
+    System.arraycopy(buffer, 0, dst, off + first, count - first);
+    tail.lazySet(rd + count);
+    return count;
+  }
+
+  /**
+   * Marks the ring as closed and calls the ready listener.  Bytes already queued can still be read.
+   */
+  void close () {
+    closed = true;
+    wakeConsumer();
+  }
+
+  /**
+   * Called by the consumer thread to get the stream position of the first byte returned by the last
+   * call to poll(), where stream position counts every byte ever passed to write(), including dropped bytes
+   */
+  long getLastReadPosition () {
+    return lastReadPos;
+  }
+
+  long getOverruns () {
+    return overruns.get();
+  }
+
+  long getDroppedBytes () {
+    return droppedBytes.get();
+  }
+}
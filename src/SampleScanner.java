@@ -0,0 +1,85 @@
+import java.util.Arrays;
+
+  /*
+   *  Unpacks a chunk of PCM samples and, in the same pass, accumulates the level meter sums and
+   *  marks each sample that's a zero crossing in a bitmask.  The bit slicer then only has to visit
+   *  the marked samples (a handful per bit) rather than testing every sample itself.
+   *
+   *  This class is the scalar implementation.  When the jdk.incubator.vector module is available
+   *  (Java 17 or later, run with --add-modules jdk.incubator.vector), get() returns a VectorScanner
+   *  instead, which does the same work several samples per instruction.  VectorScanner is built
+   *  from the vector/ module, and is loaded by name so this module still compiles and runs on
+   *  Java 8.  Both produce identical results for samples within full scale.  Set -Dltc.vector=false
+   *  to force the scalar path.
+   */
+
+class SampleScanner {
+  // Indexes of the level sums in the sums[] array passed to scan()
+  static final int              ABS_SUM = 0, SQUARE_SUM = 1, PEAK = 2;
+  static final int              SQUARE_SHIFT = 12;        // Samples are squared at 12 bit scale, so sums of a chunk can't overflow an int
+  static final SampleScanner    SCALAR = new SampleScanner();
+  private static SampleScanner  best;
+
+  /**
+   * @return the fastest scanner available in this JVM
+   */
+  static synchronized SampleScanner get () {
+    if (best == null) {
+      best = SCALAR;
+      if (!"false".equals(System.getProperty("ltc.vector"))) {
+        try {
+          best = (SampleScanner) Class.forName("VectorScanner").getDeclaredConstructor().newInstance();
+        } catch (Exception | LinkageError ex) {
+          // Not built, or the vector module isn't present
+        }
+      }
+    }
+    return best;
+  }
+
+  /**
+   * @return short name of the implementation (for benchmarks and diagnostics)
+   */
+  String getName () {
+    return "scalar";
+  }
+
+  /**
+   * Unpacks count samples (at most 64 * edges.length) as LtcDecoder.unpack() does, then adds their
+   * absolute values, squares (at SQUARE_SHIFT) and peak to sums, and sets bit n of edges (bit n & 63
+   * of edges[n >> 6]) if dst[n] crosses zero from the sample before it by more than threshold.
+   * @param last the sample before dst[0]
+   * @return the last sample unpacked (the new value for last)
+   */
+  int scan (int encoding, byte[] src, int offset, int stride, int count, int[] dst, int last, int threshold,
+            long[] edges, long[] sums) {
+    LtcDecoder.unpack(encoding, src, offset, stride, count, dst);
+    Arrays.fill(edges, 0);
+    return scan(dst, 0, count, last, threshold, edges, sums);
+  }
+
+  /**
+   * Scans the already unpacked samples dst[from] to dst[count - 1] (the scalar part of scan(), also used
+   * by VectorScanner for the samples left over after its last whole vector)
+   */
+  static int scan (int[] dst, int from, int count, int last, int threshold, long[] edges, long[] sums) {
+    long absSum = 0, squareSum = 0;
+    int peak = (int) sums[PEAK];
+    for (int ii = from; ii < count; ii++) {
+      int sample = dst[ii];
+      int mag = Math.abs(sample);
+      int scaled = sample >> SQUARE_SHIFT;
+      absSum += mag;
+      squareSum += scaled * scaled;
+      peak = Math.max(peak, mag);
+      if (last > 0 != sample > 0 && Math.abs(last - sample) > threshold) {
+        edges[ii >> 6] |= 1L << ii;
+      }
+      last = sample;
+    }
+    sums[ABS_SUM] += absSum;
+    sums[SQUARE_SUM] += squareSum;
+    sums[PEAK] = peak;
+    return last;
+  }
+}
@@ -0,0 +1,97 @@
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.List;
+
+  /*
+   *  Backing store for the "Streams" tab, which shows the latest timecode decoded on every input
+   *  channel being captured.  Each row is the FrameListener for its channel: decoder threads only
+   *  publish the latest frame, and refresh() (on the Swing thread) updates the rows that changed.
+   */
+
+class StreamTable extends AbstractTableModel {
+  private static final String[] COLUMNS = {"Input", "Channel", "Timecode", "Frames"};
+  private final List<Row>       rows = new ArrayList<>();
+
+  static class Row implements LtcDecoder.FrameListener {
+    private final String        input;
+    private final int           channel;
+    private final char[]        tcChars = new char[11];
+    private volatile long       frame;
+    private volatile long       frames;
+    private long                shownFrames = -1;
+    private String              timecode = "--:--:--:--";
+
+    private Row (String input, int channel) {
+      this.input = input;
+      this.channel = channel;
+    }
+
+    // Called on the decoding thread
+    public void frameDecoded (long frame, long sample) {
+      this.frame = frame;
+      frames++;
+    }
+  }
+
+  /**
+   * Adds a row for channel of input (Swing thread only)
+   * @return the row, which should be passed the channel's decoded frames
+   */
+  Row add (String input, int channel) {
+    Row row = new Row(input, channel);
+    rows.add(row);
+    fireTableRowsInserted(rows.size() - 1, rows.size() - 1);
+    return row;
+  }
+
+  void clear () {
+    if (!rows.isEmpty()) {
+      int last = rows.size() - 1;
+      rows.clear();
+      fireTableRowsDeleted(0, last);
+    }
+  }
+
+  /**
+   * Called by the Swing thread to show newly decoded frames
+   */
+  void refresh () {
+    for (int ii = 0; ii < rows.size(); ii++) {
+      Row row = rows.get(ii);
+      long frames = row.frames;
+      if (frames != row.shownFrames) {
+        row.shownFrames = frames;
+        LtcDecoder.formatTimecode(row.frame, row.tcChars, 0);
+        row.timecode = new String(row.tcChars);
+        fireTableRowsUpdated(ii, ii);
+      }
+    }
+  }
+
+  public int getRowCount () {
+    return rows.size();
+  }
+
+  public int getColumnCount () {
+    return COLUMNS.length;
+  }
+
+  @Override
+  public String getColumnName (int column) {
+    return COLUMNS[column];
+  }
+
+  public Object getValueAt (int rowIndex, int columnIndex) {
+    Row row = rows.get(rowIndex);
+    switch (columnIndex) {
+      case 0:
+        return row.input;
+      case 1:
+        return row.channel + 1;
+      case 2:
+        return row.timecode;
+      default:
+        return row.shownFrames;
+    }
+  }
+}
@@ -0,0 +1,410 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+
+  /*
+   *  Streaming continuity checker for comparing timecode generators.  Each channel added is a
+   *  FrameListener that checks every frame against the one before it as it's decoded, and
+   *  writes a line for each problem found:
+   *
+   *    jump        timecode doesn't follow on (including backwards)
+   *    repeat      the same frame sent more than once (timecode held while time moves on)
+   *    skip        frame numbers missing although no time is missing (up to a second of them)
+   *    dropout     frames missing from the signal, with timecode carrying on where it should
+   *    drop frame  drop frame flag set at 24 or 25 fps or changing, a frame number that should
+   *                have been dropped, or frames dropped at a tenth minute
+   *    user bits   user bits changed
+   *
+   *  Whether time has moved on is judged from the sample positions of the frames, using the frame
+   *  period measured over the current continuous run.
+   *
+   *  With two channels of the same input (so the same sample clock), the second is also compared
+   *  with the first: for each frame of the second, the sample position of the same timecode on the
+   *  first is projected from its last frame, and the difference is the offset between the feeds.
+   *  Offsets are fitted to a line as they arrive, whose slope is the drift between the two
+   *  generators in parts per million.  A step of more than half a frame (one feed jumping) starts
+   *  a new fit, and the report gives the longest one.
+   *
+   *  Everything is kept as running counts and sums, so memory use stays the same however long
+   *  the session, and report() sums it up at the end.  Events of each kind are only written
+   *  until MAX_LOGGED have been, and counted after that.
+   *
+   *  Usage: java -cp TimecodeReader.jar TimecodeAnalyzer [-c channel[,channel]] [-pll] [-filter] file ...
+   */
+
+class TimecodeAnalyzer {
+  static final String[]         EVENTS = {"jump", "repeat", "skip", "dropout", "drop frame", "user bits"};
+  private static final int      JUMP = 0, REPEAT = 1, SKIP = 2, DROPOUT = 3, DROP_FRAME = 4, USER_BITS = 5;
+  private static final int      MAX_LOGGED = 100;         // Events of each kind written out before they're only counted
+  private static final int      MIN_RUN = 25;             // Frames in a run before its measured period is used
+  private final PrintStream     events;
+  private final float           sampleRate;
+  private final List<Channel>   channels = new ArrayList<>();
+  // Comparison of the second channel with the first (guarded by this)
+  private long                  pairs, offsetJumps, rateMismatches;
+  private double                lastOffset;
+  private final Fit             fit = new Fit();
+  private final Fit             longestFit = new Fit();
+
+  // Least squares line through (x, y) points, updated one point at a time (Welford's method)
+  private static class Fit {
+    long    count;
+    double  firstX, lastX, meanX, meanY, sxx, sxy, syy, minY, maxY;
+
+    void add (double x, double y) {
+      if (count++ == 0) {
+        firstX = x;
+      }
+      lastX = x;
+      double dx = x - meanX;
+      double dy = y - meanY;
+      meanX += dx / count;
+      meanY += dy / count;
+      sxx += dx * (x - meanX);
+      sxy += dx * (y - meanY);
+      syy += dy * (y - meanY);
+      minY = count == 1 ? y : Math.min(minY, y);
+      maxY = count == 1 ? y : Math.max(maxY, y);
+    }
+
+    double slope () {
+      return sxx > 0 ? sxy / sxx : 0;
+    }
+
+    // Standard deviation of y about the line
+    double residual () {
+      return count > 2 ? Math.sqrt(Math.max(0, syy - sxy * slope()) / (count - 2)) : 0;
+    }
+
+    void copy (Fit src) {
+      count = src.count;
+      firstX = src.firstX;
+      lastX = src.lastX;
+      meanX = src.meanX;
+      meanY = src.meanY;
+      sxx = src.sxx;
+      sxy = src.sxy;
+      syy = src.syy;
+      minY = src.minY;
+      maxY = src.maxY;
+    }
+  }
+
+  /**
+   * Analyzes the frames of one channel
+   */
+  class Channel implements LtcDecoder.FrameListener {
+    private final String        name;
+    private final LtcDecoder    decoder;
+    private final long[]        counts = new long[EVENTS.length];
+    private long                frames;
+    private int                 firstTimecode;
+    private long                firstSample;
+    // Last frame
+    private int                 lastTimecode;
+    private long                lastSample;
+    private int                 lastUserBits;
+    private boolean             lastDrop;
+    private FrameRate           rate;
+    private boolean             rateWarned;
+    // Current continuous run, and the longest one
+    private long                runSample;
+    private long                runFrames;
+    private long                longestRun;
+    private double              longestPeriod;
+
+    private Channel (String name, LtcDecoder decoder) {
+      this.name = name;
+      this.decoder = decoder;
+    }
+
+    public void frameDecoded (long frame, long sample) {
+      synchronized (TimecodeAnalyzer.this) {
+        analyze(frame, sample);
+        if (this == channels.get(channels.size() - 1) && channels.size() == 2) {
+          compare(channels.get(0), this);
+        }
+      }
+    }
+
+    private void analyze (long frame, long sample) {
+      int timecode = TimecodeIndex.pack(frame);
+      boolean drop = LtcDecoder.isDropFrame(frame);
+      int userBits = LtcDecoder.getUserBits(frame);
+      FrameRate frameRate = decoder != null ? decoder.getFrameRate() : null;
+      rate = frameRate != null ? frameRate : rate;
+      int fps = getFps();
+      if (frames++ == 0) {
+        firstTimecode = timecode;
+        firstSample = runSample = sample;
+        setLast(timecode, sample, userBits, drop);
+        return;
+      }
+      if (drop != lastDrop) {
+        event(DROP_FRAME, sample, timecode, "drop frame flag " + (drop ? "set" : "cleared"));
+      } else if (drop && fps != 30 && !rateWarned) {
+        rateWarned = true;
+        event(DROP_FRAME, sample, timecode, "drop frame flag set at " + fps + " fps");
+      }
+      if (userBits != lastUserBits) {
+        event(USER_BITS, sample, timecode, String.format("%08x -> %08x", lastUserBits, userBits));
+      }
+      int ss = (timecode >> 8) & 0xFF;
+      int mm = (timecode >> 16) & 0xFF;
+      if (drop && fps == 30 && ss == 0 && (timecode & 0xFF) < 2 && mm % 10 != 0) {
+        // Can't be counted, so just start again from the next frame
+        event(DROP_FRAME, sample, timecode, "frame number should have been dropped");
+        endRun(sample);
+        setLast(timecode, sample, userBits, drop);
+        return;
+      }
+      long elapsed = Math.max(1, Math.round((sample - lastSample) / getPeriod()));
+      long advance = advance(lastTimecode, timecode, fps, drop);
+      if (advance == elapsed) {
+        if (elapsed > 1) {
+          event(DROPOUT, sample, timecode, (elapsed - 1) + " frames missing");
+        }
+        runFrames += elapsed;
+      } else {
+        if (advance >= 0 && advance < elapsed) {
+          event(REPEAT, sample, timecode, (elapsed - advance) + " frames repeated");
+        } else if (advance > elapsed && advance - elapsed <= fps) {
+          if (drop && ss == 0 && mm % 10 == 0 && (timecode & 0xFF) == advance - elapsed) {
+            event(DROP_FRAME, sample, timecode, "frames dropped at a tenth minute");
+          } else {
+            event(SKIP, sample, timecode, (advance - elapsed) + " frames skipped after " + TimecodeIndex.format(lastTimecode));
+          }
+        } else {
+          event(JUMP, sample, timecode, "from " + TimecodeIndex.format(lastTimecode));
+        }
+        endRun(sample);
+      }
+      setLast(timecode, sample, userBits, drop);
+    }
+
+    private void setLast (int timecode, long sample, int userBits, boolean drop) {
+      lastTimecode = timecode;
+      lastSample = sample;
+      lastUserBits = userBits;
+      lastDrop = drop;
+    }
+
+    private void endRun (long sample) {
+      if (runFrames > longestRun) {
+        longestRun = runFrames;
+        longestPeriod = (lastSample - runSample) / (double) runFrames;
+      }
+      runSample = sample;
+      runFrames = 0;
+    }
+
+    private int getFps () {
+      return rate != null ? rate.getFps() : 30;
+    }
+
+    private double getNominalPeriod () {
+      return sampleRate / (rate != null ? rate.getRate() : 30);
+    }
+
+    /**
+     * @return samples per frame, measured over the current run once it's long enough
+     */
+    double getPeriod () {
+      return runFrames >= MIN_RUN ? (lastSample - runSample) / (double) runFrames : getNominalPeriod();
+    }
+
+    private void event (int kind, long sample, int timecode, String detail) {
+      long count = ++counts[kind];
+      if (events != null && count <= MAX_LOGGED) {
+        events.printf("%s\t%d\t%s\t%s\t%s%s%n", name, sample, TimecodeIndex.format(timecode), EVENTS[kind], detail,
+                      count == MAX_LOGGED ? " (further " + EVENTS[kind] + " events are only counted)" : "");
+      }
+    }
+
+    private void report (Formatter out) {
+      out.format("%s: %d frames", name, frames);
+      if (frames == 0) {
+        out.format("%n");
+        return;
+      }
+      out.format(", %s to %s (%.1f s)%n", TimecodeIndex.format(firstTimecode), TimecodeIndex.format(lastTimecode),
+                 (lastSample - firstSample) / sampleRate);
+      long run = Math.max(runFrames, longestRun);
+      double period = runFrames >= longestRun ? getPeriod() : longestPeriod;
+      out.format("  frame rate %s", rate != null ? rate : "not known");
+      if (run >= MIN_RUN) {
+        double ppm = (getNominalPeriod() / period - 1) * 1e6;
+        out.format(", %+.1f ppm against the sample clock", ppm);
+      }
+      out.format("%n  longest continuous run %d frames%n ", run + 1);
+      for (int ii = 0; ii < EVENTS.length; ii++) {
+        out.format(" %d %s%s", counts[ii], EVENTS[ii], ii < EVENTS.length - 1 ? "," : "");
+      }
+      out.format("%n");
+    }
+  }
+
+  /**
+   * @param events where each problem found is written as it's found (channel, sample, timecode, kind and
+   *               detail, tab separated), or null to only count them
+   */
+  TimecodeAnalyzer (PrintStream events, float sampleRate) {
+    this.events = events;
+    this.sampleRate = sampleRate;
+  }
+
+  /**
+   * Adds a channel to analyze.  The second channel added is also compared with the first, so it must be
+   * from the same input (sample positions must count the same samples).
+   * @param decoder decoder the channel's frames come from, for the frame rate (may be null, for 30 fps)
+   * @return listener to add to decoder
+   */
+  synchronized Channel addChannel (String name, LtcDecoder decoder) {
+    if (channels.size() == 2) {
+      throw new IllegalStateException("Only two channels can be compared");
+    }
+    Channel channel = new Channel(name, decoder);
+    channels.add(channel);
+    return channel;
+  }
+
+  /**
+   * @return frames timecode moved on from prev to timecode (negative if backwards), within +/- half a day
+   */
+  static long advance (int prev, int timecode, int fps, boolean drop) {
+    long perDay = TimecodeIndex.toFrames(TimecodeIndex.pack(24, 0, 0, 0), fps, drop);
+    long diff = Math.floorMod(TimecodeIndex.toFrames(timecode, fps, drop) - TimecodeIndex.toFrames(prev, fps, drop), perDay);
+    return diff > perDay / 2 ? diff - perDay : diff;
+  }
+
+  // Measures the offset of the frame just analyzed on b from the same timecode on a
+  private void compare (Channel a, Channel b) {
+    if (a.frames == 0 || Math.abs(b.lastSample - a.lastSample) > sampleRate) {
+      // a has stopped, or not started
+      return;
+    }
+    if (a.getFps() != b.getFps() || a.lastDrop != b.lastDrop) {
+      rateMismatches++;
+      return;
+    }
+    double period = a.getPeriod();
+    double offset = b.lastSample - (a.lastSample + advance(a.lastTimecode, b.lastTimecode, a.getFps(), a.lastDrop) * period);
+    if (pairs++ > 0 && Math.abs(offset - lastOffset) > period / 2) {
+      offsetJumps++;
+      if (events != null && offsetJumps <= MAX_LOGGED) {
+        events.printf("%s\t%d\t%s\toffset\t%.1f -> %.1f samples%n", b.name, b.lastSample, TimecodeIndex.format(b.lastTimecode),
+                      lastOffset, offset);
+      }
+      endFit();
+    }
+    lastOffset = offset;
+    fit.add(b.lastSample, offset);
+  }
+
+  private void endFit () {
+    if (fit.count > longestFit.count) {
+      longestFit.copy(fit);
+    }
+    fit.count = 0;
+    fit.meanX = fit.meanY = fit.sxx = fit.sxy = fit.syy = 0;
+  }
+
+  /**
+   * @return summary of everything analyzed so far
+   */
+  synchronized String report () {
+    Formatter out = new Formatter();
+    for (Channel channel : channels) {
+      channel.report(out);
+    }
+    if (channels.size() == 2) {
+      Fit best = fit.count >= longestFit.count ? fit : longestFit;
+      Channel a = channels.get(0);
+      out.format("%s - %s: %d frames compared, %d offset jumps", channels.get(1).name, a.name, pairs, offsetJumps);
+      if (rateMismatches > 0) {
+        out.format(", %d frames at a different frame rate", rateMismatches);
+      }
+      out.format("%n");
+      if (best.count > 0) {
+        double period = a.getPeriod();
+        out.format("  offset %.1f samples (%.3f ms, %.3f frames), min %.1f, max %.1f, std dev %.2f samples%n", best.meanY,
+                   best.meanY * 1e3 / sampleRate, best.meanY / period, best.minY, best.maxY, best.residual());
+        double seconds = (best.lastX - best.firstX) / sampleRate;
+        out.format("  drift %+.2f ppm (%+.2f ms per hour) over %d frames (%.1f s)%n", best.slope() * 1e6,
+                   best.slope() * 3600e3, best.count, seconds);
+      }
+    }
+    return out.toString();
+  }
+
+  public static void main (String[] args) throws Exception {
+    int[] chans = {0};
+    boolean pll = false;
+    boolean filter = false;
+    List<File> files = new ArrayList<>();
+    for (int ii = 0; ii < args.length; ii++) {
+      switch (args[ii]) {
+        case "-c":
+          String[] parts = args[++ii].split(",");
+          chans = new int[parts.length];
+          for (int cc = 0; cc < parts.length; cc++) {
+            chans[cc] = Integer.parseInt(parts[cc].trim());
+          }
+          break;
+        case "-pll":
+          pll = true;
+          break;
+        case "-filter":
+          filter = true;
+          break;
+        default:
+          files.add(new File(args[ii]));
+          break;
+      }
+    }
+    if (files.isEmpty() || chans.length > 2 || (chans.length == 2 && chans[0] == chans[1])) {
+      System.err.println("Usage: TimecodeAnalyzer [-c channel[,channel]] [-pll] [-filter] file ...");
+      System.exit(1);
+    }
+    for (File file : files) {
+      try (AudioInputStream in = FileDecoder.openDecodable(AudioSystem.getAudioInputStream(file))) {
+        AudioFormat format = in.getFormat();
+        System.out.println("# " + file.getPath());
+        TimecodeAnalyzer analyzer = new TimecodeAnalyzer(System.out, format.getSampleRate());
+        // Decode the channels wanted, then add the analyzer to them (in the order given, the first being the reference)
+        LtcDecoder.FrameListener[] listeners = new LtcDecoder.FrameListener[Math.max(chans[0], chans[chans.length - 1]) + 1];
+        for (int ch : chans) {
+          listeners[ch] = (frame, sample) -> { };
+        }
+        MultiChannelDecoder decoder = new MultiChannelDecoder(format, listeners);
+        for (int ch : chans) {
+          LtcDecoder channelDecoder = decoder.getDecoder(ch);
+          if (channelDecoder == null) {
+            System.err.println(file + " has no channel " + ch);
+            System.exit(1);
+          }
+          channelDecoder.addListener(analyzer.addChannel("Channel " + ch, channelDecoder));
+        }
+        decoder.setPll(pll);
+        decoder.setFilter(filter);
+        int frameSize = format.getFrameSize();
+        byte[] buffer = new byte[64 * 1024 - (64 * 1024) % frameSize];
+        int fill = 0;
+        int count;
+        while ((count = in.read(buffer, fill, buffer.length - fill)) >= 0) {
+          fill += count;
+          int whole = fill - fill % frameSize;
+          decoder.process(buffer, 0, whole);
+          System.arraycopy(buffer, whole, buffer, 0, fill - whole);
+          fill -= whole;
+        }
+        System.out.print(analyzer.report());
+      }
+    }
+  }
+}
@@ -0,0 +1,416 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+  /*
+   *  Persistent timecode <-> sample offset index for decoded recordings.  The Builder listens to
+   *  decoded frames and collapses runs of consecutive timecodes whose SYNC positions lie within
+   *  a tolerance of a straight line into a single 28 byte record, so a continuous take costs one
+   *  record no matter how long it is.  A run is broken when timecode is not contiguous (jumps,
+   *  repeats, dropped frames, midnight rollover) or when the frame spacing drifts off the line.
+   *
+   *  Sidecar file layout (big endian):
+   *
+   *    int     magic ('LTCX')
+   *    int     version
+   *    int     run count (n)
+   *    n x     run record sorted by start sample
+   *              long    sample offset of first frame
+   *              double  samples per frame
+   *              int     frame count
+   *              int     first timecode packed as 0xHHMMSSFF (binary, not BCD)
+   *              byte    frame rate (frames per second, rounded)
+   *              byte    flags (bit 0 = drop frame)
+   *              short   reserved
+   *    n x     int run number, ordered by first timecode (for seeking by timecode)
+   *
+   *  The sidecar is memory mapped for lookups, which are binary searches over the run records.
+   *
+   *  Usage: java -cp TimecodeReader.jar TimecodeIndex build [-c channel] file        (writes file.ltcx)
+   *           (file is audio, or a binary capture ending .ltcb)
+   *         java -cp TimecodeReader.jar TimecodeIndex seek file.ltcx HH:MM:SS:FF
+   *         java -cp TimecodeReader.jar TimecodeIndex at file.ltcx sampleOffset
+   */
+
+class TimecodeIndex {
+  private static final int      MAGIC = 0x4C544358;       // 'LTCX'
+  private static final int      VERSION = 1;
+  private static final int      HEADER = 12;
+  private static final int      RECORD = 28;
+  private final ByteBuffer      map;
+  private final int             runs;
+
+  private TimecodeIndex (ByteBuffer map) throws IOException {
+    this.map = map;
+    if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+      throw new IOException("Not a timecode index file");
+    }
+    runs = map.getInt(8);
+  }
+
+  static TimecodeIndex open (File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+      return new TimecodeIndex(map);
+    }
+  }
+
+  int getRunCount () {
+    return runs;
+  }
+
+  private long runSample (int run) {
+    return map.getLong(HEADER + run * RECORD);
+  }
+
+  private double runPeriod (int run) {
+    return map.getDouble(HEADER + run * RECORD + 8);
+  }
+
+  private int runCount (int run) {
+    return map.getInt(HEADER + run * RECORD + 16);
+  }
+
+  private int runTimecode (int run) {
+    return map.getInt(HEADER + run * RECORD + 20);
+  }
+
+  private int runFps (int run) {
+    return map.get(HEADER + run * RECORD + 24);
+  }
+
+  private boolean runDrop (int run) {
+    return (map.get(HEADER + run * RECORD + 25) & 1) != 0;
+  }
+
+  private int byTimecode (int idx) {
+    return map.getInt(HEADER + runs * RECORD + idx * 4);
+  }
+
+  /**
+   * Finds the sample offset of the SYNC word of the frame with the given timecode
+   * @param timecode packed as 0xHHMMSSFF (see pack())
+   * @return sample offset, or -1 if the timecode is not in the recording, or isn't a valid timecode
+   * at the recording's frame rate (if the same timecode occurs more than once, the earliest run that
+   * starts at or before it is used)
+   */
+  long seek (int timecode) {
+    if (((timecode >> 16) & 0xFF) >= 60 || ((timecode >> 8) & 0xFF) >= 60) {
+      return -1;
+    }
+    // Find the last run (in timecode order) whose first timecode is <= timecode
+    int lo = 0, hi = runs - 1, found = -1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (runTimecode(byTimecode(mid)) <= timecode) {
+        found = mid;
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    // Runs normally don't overlap, but step back over any that start earlier and still cover
+    // timecode.  A run that ends before timecode (a short retake, say) doesn't mean the runs before
+    // it do too, so all are checked
+    long best = -1;
+    for (int ii = found; ii >= 0; ii--) {
+      int run = byTimecode(ii);
+      int fps = runFps(run);
+      boolean drop = runDrop(run);
+      long offset = toFrames(timecode, fps, drop) - toFrames(runTimecode(run), fps, drop);
+      if (offset >= 0 && offset < runCount(run) && isValid(timecode, fps, drop)) {
+        long sample = runSample(run) + Math.round(offset * runPeriod(run));
+        best = best < 0 ? sample : Math.min(best, sample);
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Finds the timecode of the frame whose SYNC word is nearest to, but not after sample
+   * @return timecode packed as 0xHHMMSSFF, or -1 if sample is before the first frame
+   */
+  int timecodeAt (long sample) {
+    int lo = 0, hi = runs - 1, run = -1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (runSample(mid) <= sample) {
+        run = mid;
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    if (run < 0) {
+      return -1;
+    }
+    long offset = (long) Math.floor((sample - runSample(run)) / runPeriod(run));
+    if (Math.round(runSample(run) + (offset + 1) * runPeriod(run)) <= sample) {
+      offset++;
+    }
+    offset = Math.min(offset, runCount(run) - 1);
+    int fps = runFps(run);
+    boolean drop = runDrop(run);
+    return fromFrames(toFrames(runTimecode(run), fps, drop) + offset, fps, drop);
+  }
+
+  /**
+   * Packs a timecode as 0xHHMMSSFF
+   */
+  static int pack (int hh, int mm, int ss, int ff) {
+    return hh << 24 | mm << 16 | ss << 8 | ff;
+  }
+
+  /**
+   * Packs the timecode of a decoded frame (see LtcDecoder) as 0xHHMMSSFF
+   */
+  static int pack (long frame) {
+    return pack(LtcDecoder.getHours(frame), LtcDecoder.getMinutes(frame), LtcDecoder.getSeconds(frame),
+                LtcDecoder.getFrameNumber(frame));
+  }
+
+  /**
+   * Replaces the timecode of a decoded frame (see LtcDecoder) with timecode, keeping its user bits and flags
+   * @param timecode packed as 0xHHMMSSFF
+   */
+  static long setTimecode (long frame, int timecode) {
+    int ff = timecode & 0xFF;
+    int ss = (timecode >> 8) & 0xFF;
+    int mm = (timecode >> 16) & 0xFF;
+    int hh = timecode >>> 24;
+    frame &= ~0x030F070F070F030FL;
+    frame |= (ff % 10) | (ff / 10) << 8;
+    frame |= (long) ((ss % 10) | (ss / 10) << 8) << 16;
+    frame |= (long) ((mm % 10) | (mm / 10) << 8) << 32;
+    frame |= (long) ((hh % 10) | (hh / 10) << 8) << 48;
+    return frame;
+  }
+
+  /**
+   * Parses "HH:MM:SS:FF" (or "HH:MM:SS;FF") into a packed timecode
+   */
+  static int parse (String text) {
+    String[] parts = text.split("[:;.]");
+    if (parts.length != 4) {
+      throw new IllegalArgumentException("Timecode must be HH:MM:SS:FF: " + text);
+    }
+    return pack(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+  }
+
+  static String format (int timecode) {
+    return String.format("%02d:%02d:%02d:%02d", timecode >>> 24, (timecode >> 16) & 0xFF, (timecode >> 8) & 0xFF, timecode & 0xFF);
+  }
+
+  /**
+   * @return true if timecode exists at the frame rate (drop frame skips frame numbers 0 and 1 at the
+   * start of each minute, except every 10th)
+   */
+  static boolean isValid (int timecode, int fps, boolean drop) {
+    int ff = timecode & 0xFF;
+    int ss = (timecode >> 8) & 0xFF;
+    int mm = (timecode >> 16) & 0xFF;
+    return ff < fps && ss < 60 && mm < 60 && !(drop && ss == 0 && mm % 10 != 0 && ff < Math.round(fps / 15f));
+  }
+
+  /**
+   * Converts a packed timecode into a frame count from 00:00:00:00
+   */
+  static long toFrames (int timecode, int fps, boolean drop) {
+    int mins = (timecode >>> 24) * 60 + ((timecode >> 16) & 0xFF);
+    long frames = ((long) mins * 60 + ((timecode >> 8) & 0xFF)) * fps + (timecode & 0xFF);
+    if (drop) {
+      // Frame numbers 0 and 1 (scaled for 60 fps) are skipped at the start of each minute, except every 10th
+      int skip = Math.round(fps / 15f);
+      frames -= (long) skip * (mins - mins / 10);
+    }
+    return frames;
+  }
+
+  /**
+   * Converts a frame count from 00:00:00:00 into a packed timecode
+   */
+  static int fromFrames (long frames, int fps, boolean drop) {
+    if (drop) {
+      int skip = Math.round(fps / 15f);
+      long perTen = 10L * 60 * fps - 9L * skip;
+      long perMin = 60L * fps - skip;
+      long tens = frames / perTen;
+      long rem = frames % perTen;
+      frames += 9L * skip * tens;
+      if (rem >= skip) {
+        frames += skip * ((rem - skip) / perMin);
+      }
+    }
+    int ff = (int) (frames % fps);
+    long secs = frames / fps;
+    return pack((int) (secs / 3600), (int) (secs / 60 % 60), (int) (secs % 60), ff);
+  }
+
+  /*
+   *  Collects decoded frames into runs and writes the sidecar file
+   */
+  static class Builder implements LtcDecoder.FrameListener {
+    private final double        tolerance;
+    private final List<long[]>  records = new ArrayList<>();
+    // Current run
+    private int                 maxFrame;
+    private long                startSample, lastSample;
+    private int                 startTimecode, lastTimecode;
+    private int                 count;
+    private boolean             drop;
+    private double              slopeLo, slopeHi;
+
+    /**
+     * @param tolerance maximum error (in samples) allowed between a frame's actual SYNC position and
+     *                  the position recorded by its run
+     */
+    Builder (double tolerance) {
+      this.tolerance = tolerance;
+    }
+
+    Builder () {
+      this(1.0);
+    }
+
+    public void frameDecoded (long frame, long sample) {
+      int timecode = pack(frame);
+      boolean frameDrop = LtcDecoder.isDropFrame(frame);
+      if (count > 0 && frameDrop == drop && follows(lastTimecode, timecode) && extend(sample)) {
+        count++;
+      } else {
+        endRun();
+        startSample = sample;
+        startTimecode = timecode;
+        drop = frameDrop;
+        count = 1;
+        maxFrame = 0;
+        slopeLo = 0;
+        slopeHi = Double.MAX_VALUE;
+      }
+      maxFrame = Math.max(maxFrame, timecode & 0xFF);
+      lastSample = sample;
+      lastTimecode = timecode;
+    }
+
+    // Returns true if tc is the frame after prev.  The frame rate isn't known in advance, so a
+    // rollover to the next second is accepted after the highest frame number seen in this run
+    private boolean follows (int prev, int tc) {
+      int ff = prev & 0xFF;
+      if (tc == prev + 1) {
+        return true;
+      } else if (ff < maxFrame) {
+        return false;
+      }
+      int ss = ((prev >> 8) & 0xFF) + 1;
+      int mm = (prev >> 16) & 0xFF;
+      int hh = prev >>> 24;
+      ff = 0;
+      if (ss == 60) {
+        ss = 0;
+        if (++mm == 60) {
+          mm = 0;
+          hh++;
+        }
+        if (drop && mm % 10 != 0) {
+          ff = Math.round((maxFrame + 1) / 15f);
+        }
+      }
+      return tc == pack(hh, mm, ss, ff);
+    }
+
+    // Narrows the allowed range of samples per frame to include sample, or returns false if it no longer fits
+    private boolean extend (long sample) {
+      double lo = (sample - tolerance - startSample) / (double) count;
+      double hi = (sample + tolerance - startSample) / (double) count;
+      if (lo > slopeHi || hi < slopeLo) {
+        return false;
+      }
+      slopeLo = Math.max(slopeLo, lo);
+      slopeHi = Math.min(slopeHi, hi);
+      return true;
+    }
+
+    private void endRun () {
+      if (count > 0) {
+        double period = count > 1 ? (slopeLo + slopeHi) / 2 : 0;
+        records.add(new long[] {startSample, Double.doubleToLongBits(period), count, startTimecode, maxFrame + 1, drop ? 1 : 0});
+        count = 0;
+      }
+    }
+
+    int getRunCount () {
+      return records.size() + (count > 0 ? 1 : 0);
+    }
+
+    void write (File file) throws IOException {
+      endRun();
+      int n = records.size();
+      ByteBuffer buf = ByteBuffer.allocate(HEADER + n * (RECORD + 4));
+      buf.putInt(MAGIC).putInt(VERSION).putInt(n);
+      Integer[] order = new Integer[n];
+      for (int ii = 0; ii < n; ii++) {
+        long[] rec = records.get(ii);
+        buf.putLong(rec[0]).putLong(rec[1]).putInt((int) rec[2]).putInt((int) rec[3]);
+        buf.put((byte) rec[4]).put((byte) rec[5]).putShort((short) 0);
+        order[ii] = ii;
+      }
+      Arrays.sort(order, (a, b) -> Long.compare(records.get(a)[3], records.get(b)[3]));
+      for (int run : order) {
+        buf.putInt(run);
+      }
+      buf.flip();
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(0);
+        FileChannel fc = raf.getChannel();
+        while (buf.hasRemaining()) {
+          fc.write(buf);
+        }
+      }
+    }
+  }
+
+  public static void main (String[] args) throws Exception {
+    if (args.length >= 2 && args[0].equals("build")) {
+      int channel = 0;
+      String path = args[args.length - 1];
+      if (args.length == 4 && args[1].equals("-c")) {
+        channel = Integer.parseInt(args[2]);
+      }
+      Builder builder = new Builder();
+      if (path.endsWith(".ltcb")) {
+        // A binary capture (see CaptureFile) is indexed from its frames, replayed as fast as they can be
+        ReplaySource replay = new ReplaySource(new File(path), 0, null);
+        replay.getDecoder().addListener(builder);
+        replay.start();
+        replay.join();
+      } else {
+        try (javax.sound.sampled.AudioInputStream in = FileDecoder.openDecodable(javax.sound.sampled.AudioSystem.getAudioInputStream(new File(path)))) {
+          LtcDecoder decoder = new LtcDecoder(in.getFormat(), channel, builder);
+          int frameSize = in.getFormat().getFrameSize();
+          byte[] buffer = new byte[64 * 1024 - (64 * 1024) % frameSize];
+          int count;
+          while ((count = in.read(buffer)) > 0) {
+            decoder.process(buffer, 0, count - count % frameSize);
+          }
+        }
+      }
+      File out = new File(path + ".ltcx");
+      builder.write(out);
+      System.out.println(out + ": " + builder.getRunCount() + " runs, " + out.length() + " bytes");
+    } else if (args.length == 3 && args[0].equals("seek")) {
+      System.out.println(open(new File(args[1])).seek(parse(args[2])));
+    } else if (args.length == 3 && args[0].equals("at")) {
+      int tc = open(new File(args[1])).timecodeAt(Long.parseLong(args[2]));
+      System.out.println(tc < 0 ? "--" : format(tc));
+    } else {
+      System.err.println("Usage: TimecodeIndex build [-c channel] file | seek file.ltcx HH:MM:SS:FF | at file.ltcx sample");
+      System.exit(1);
+    }
+  }
+}
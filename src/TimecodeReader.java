@@ -1,10 +1,14 @@
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequencer;
 import javax.sound.sampled.*;
 import javax.swing.*;
 import javax.swing.border.Border;
+import javax.swing.Timer;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.List;
 import java.util.prefs.Preferences;
@@ -14,49 +18,73 @@ import static javax.swing.JOptionPane.showMessageDialog;
   // Reference: https://en.wikipedia.org/wiki/Linear_timecode
 
 public class TimecodeReader extends JFrame implements Runnable {
+  private static final int[]      SAMPLE_RATES = {22050, 44100, 48000, 88200, 96000};
+  private static final String[]   SAMPLE_FORMATS = {"8 bit", "16 bit", "24 bit", "32 bit", "32 bit float"};
+  private static final int[]      FLYWHEEL_FRAMES = {0, 2, 5, 10, 25, 50};
+  private static final int[]      PLL_BANDWIDTHS = {25, 50, 100, 200, 400};
   private transient Preferences   prefs = Preferences.userRoot().node(this.getClass().getName());
-  private boolean                 running, displaying;
+  private volatile boolean        running;
+  private boolean                 displaying;
   private final JButton           capture;
   private final TimeCode          timecode;
-  private final JTextArea         timecodeLog;
-  private JMenu                   inputMenu, recordMenu;
-  private InputSource             selectedInput;
+  private final RecordLog         recordLog;
+  private final JList<String>     recordList;
+  private final JLabel            recordDropped = new JLabel();
+  private final StreamTable       streamTable = new StreamTable();
+  private final DecoderPool       decoderPool;
+  private final DecoderMetrics    metrics = new DecoderMetrics();
+  private volatile List<DeviceCapture> captures = Collections.emptyList();
+  private volatile List<DeviceScanner.InputSource> inputSources = Collections.emptyList();
+  private final Set<String>       alsoInputs = new TreeSet<>();
+  private JMenu                   inputMenu, alsoMenu, recordMenu, outputMenu;
+  private volatile DeviceScanner.InputSource selectedInput;
+  private int                     inputItems;               // Input menu items before the first separator
   private Thread                  runThread;
   private String                  recordWhat = "None";
-  private boolean                 recording;
+  private File                    captureFile;
+  private ReplaySource            replay;
+  private volatile FrameSender    sender;
 
-  private class TimeCode extends JPanel implements Runnable {
-    private static final int      SYNC = 0xBFFC;
+  private class TimeCode extends JPanel implements DecoderPool.Sink, LtcDecoder.FrameListener {
     private JLabel                timeView;
     private JCheckBox             user59, user58, user27, user43, user11, user10;
-    private JLabel                userData, frameRate;
+    private JLabel                userData, frameRate, latencyView;
     private JSlider               volumeSlider;
     private JProgressBar          levelMeter;
-    private PipedInputStream      pipeIn;
-    private PipedOutputStream     pipeOut;
-    private AudioFormat           format;
-    private boolean               running;
+    private SampleRing            ring;
     private Port                  mixerPort;
     private FloatControl          volumeControl;
-    // AudioFormat-related variables
-    private AudioFormat.Encoding  encoding;
-    private boolean               bigEndian;
-    private int                   channels;
-    private int                   frameSize;
-    // Timecode decoder variables (holds state between called to process() method)
-    private boolean               skipBit;
-    private boolean               bitValue;
-    private boolean               dropDetect;
-    private int[]                 frame = new int[4];
-    private int                   bitCount = 0;
-    private int                   frameIndex = 0;
-    private int                   lastInterval = 0;
-    private int                   frameWord = 0;
-    private int                   lastSample;
-    private int                   interval;
-    private int                   lastFrame;
-    private int                   lastSecond;
-    private int                   frameCount;
+    private MultiChannelDecoder   decoder;
+    private int                   monitor;
+    private FrameClock            frameClock;
+    private CaptureFile.Writer    captureWriter;
+    private MidiDevice            midiDevice;
+    private MtcOutput             mtcOutput;
+    private TimecodeAnalyzer      analyzer;
+    private volatile LatencyStats latency;
+    private String                buffering;                // Line buffer and read sizes, as shown with the latency
+    // State published by the decoder thread for display by refresh()
+    private volatile long         latestFrame;
+    private volatile int          frameSeq;
+    private volatile FrameRate    latestRate;               // Measured frame rate (null until known)
+    private volatile int          level;
+    private volatile double       speed;                    // Play speed measured by the PLL (0 if not used)
+    private volatile boolean      predicted;                // Latest frame was predicted by the flywheel
+    // Display state (Swing thread)
+    private final Timer           refreshTimer;
+    private int                   shownSeq;
+    private FrameRate             shownRate;
+    private double                shownSpeed;
+    private long                  shownLatency;             // Time the latency was last shown (System.nanoTime())
+    private final double[]        latencyPercents = {50, 99};
+    private final double[]        latencyShown = new double[2];
+    private Color                 timeColor;
+    private long                  skippedRepaints;
+    private long                  shownDropped;
+    // Preallocated formatting buffers (keeps the steady state decode path free of garbage)
+    private final char[]          tcChars = new char[11];
+    private final char[]          userChars = new char[8];
+    private int                   lastUserBits = -1;
 
     private TimeCode () {
       setLayout(new BorderLayout());
@@ -65,6 +93,7 @@ public class TimecodeReader extends JFrame implements Runnable {
       timeView.setFont(new Font("Courier", Font.PLAIN, 60));
       timeView.setVerticalAlignment(SwingConstants.CENTER);
       timeView.setHorizontalAlignment(SwingConstants.CENTER);
+      timeColor = timeView.getForeground();
       // Creatae User Bits subpanel
       JPanel indicators = new JPanel(new GridLayout(2, 1));
       JPanel userBits = new JPanel(new GridLayout(1, 6));
@@ -94,10 +123,21 @@ public class TimecodeReader extends JFrame implements Runnable {
       volumeSlider.setMinimum(0);
       volumeSlider.setMaximum(100);
       volumeSlider.setEnabled(false);
-      southSet.add(getTitledPanel("Estimated Frame Rate:", frameRate = new JLabel("--")), BorderLayout.NORTH);
+      // Setup Volume Slider Change Handler (for whichever input is selected)
+      volumeSlider.addChangeListener(ev -> {
+        if (volumeControl != null) {
+          volumeControl.setValue((float) volumeSlider.getValue() / 100);
+        }
+      });
+      JPanel rateSet = new JPanel(new GridLayout(1, 2));
+      rateSet.add(getTitledPanel("Estimated Frame Rate:", frameRate = new JLabel("--")));
+      rateSet.add(getTitledPanel("Capture Latency:", latencyView = new JLabel("--")));
+      southSet.add(rateSet, BorderLayout.NORTH);
       southSet.add(meterPanel, BorderLayout.CENTER);
       add(southSet, BorderLayout.SOUTH);
-      decodeFrame(new int[4]);
+      showFrame(0);
+      // Display refresh rate is capped so slow rendering can never hold up decoding
+      refreshTimer = new Timer(1000 / Math.max(1, prefs.getInt("ui.refresh", 30)), ev -> refresh());
     }
 
     private JPanel getTitledPanel (String title, JComponent comp) {
@@ -109,299 +149,382 @@ public class TimecodeReader extends JFrame implements Runnable {
       return frame;
     }
 
-    private void selectInput (InputSource source) {
-      this.format = source.format;
-      encoding = format.getEncoding();
-      bigEndian = format.isBigEndian();
-      channels = format.getChannels();
-      frameSize = format.getFrameSize();
+    // Opens the volume control of the selected input, closing the last one's (Swing thread only).  The
+    // port stays open while the input is selected, whether or not it's being captured
+    private void selectInput (DeviceScanner.InputSource source) {
+      volumeControl = null;
+      if (mixerPort != null) {
+        mixerPort.close();
+        mixerPort = null;
+      }
       // Setup Volume Control Mixer
       try {
-        mixerPort = (Port) AudioSystem.getLine(source.lineInfo);
+        Port port = (Port) AudioSystem.getLine(source.lineInfo);
         // Important: you must first open Port to get access to controls
-        mixerPort.open();
-        if (mixerPort.isControlSupported(FloatControl.Type.VOLUME)) {
-          volumeControl = (FloatControl) mixerPort.getControl(FloatControl.Type.VOLUME);
-          float curValue = volumeControl.getValue();
-          volumeSlider.setValue((int) (curValue * 100));
-          // Setup Volume Slider Change Hamdler
-          volumeSlider.addChangeListener(ev -> {
-            int value = volumeSlider.getValue();
-            volumeControl.setValue((float) value / 100);
-          });
+        port.open();
+        mixerPort = port;
+        if (port.isControlSupported(FloatControl.Type.VOLUME)) {
+          FloatControl control = (FloatControl) port.getControl(FloatControl.Type.VOLUME);
+          volumeSlider.setValue((int) (control.getValue() * 100));
+          volumeControl = control;
           volumeSlider.setEnabled(true);
-        } else {
-          volumeSlider.setValue(100);
-          volumeSlider.setEnabled(false);
+          return;
         }
       } catch (LineUnavailableException ex) {
         ex.printStackTrace();
       }
+      volumeSlider.setValue(100);
+      volumeSlider.setEnabled(false);
     }
 
-    private PipedOutputStream getPipeOut () {
-      try {
-        pipeOut = new PipedOutputStream();
-        pipeIn = new PipedInputStream();
-        pipeOut.connect(pipeIn);
-        if (!running) {
-          if (format != null) {
-            running = true;
-            new Thread(this).start();
-          }
-        }
-      } catch (IOException ex) {
-        ex.printStackTrace();
+    /**
+     * Starts decoding device on pool, displaying frames from the given channel and passing every
+     * channel's frames to its row of the Streams tab
+     */
+    private void start (DeviceCapture device, int channel, StreamTable.Row[] rows, DecoderPool pool) {
+      AudioFormat format = device.getFormat();
+      frameClock = new FrameClock(format.getSampleRate());
+      device.setClock(frameClock);
+      monitor = Math.min(channel, format.getChannels() - 1);
+      LtcDecoder.FrameListener[] listeners = new LtcDecoder.FrameListener[rows.length];
+      for (int ch = 0; ch < rows.length; ch++) {
+        listeners[ch] = rows[ch];
       }
-      return pipeOut;
+      decoder = new MultiChannelDecoder(format, listeners);
+      addOutput(decoder, 0, format.getChannels());
+      metrics.add(device.getName(), device.getRing(), decoder, format);
+      listen(decoder.getDecoder(monitor), decoder, format.getSampleRate());
+      // Latency is measured from the monitored channel's frames
+      latency = new LatencyStats();
+      frameClock.addListener(latency);
+      float bytesPerMilli = format.getSampleRate() * format.getFrameSize() / 1000;
+      buffering = String.format("%s, line buffer %.1f ms, reads %.1f ms", LatencyProfile.of(prefs.get("audio.latency", "")),
+                                device.getBufferSize() / bytesPerMilli, device.getReadSize() / bytesPerMilli);
+      shownLatency = 0;
+      decoder.setPll(prefs.getBoolean("decode.pll", false));
+      decoder.setPllBandwidth(prefs.getInt("decode.pll.bandwidth", (int) PllSlicer.DEFAULT_BANDWIDTH));
+      decoder.setFilter(prefs.getBoolean("decode.filter", false));
+      decoder.setFlywheel(prefs.getInt("decode.flywheel", 0));
+      ring = device.getRing();
+      refreshTimer.start();
+      pool.add(ring, this, format.getFrameSize());
+    }
+
+    /**
+     * Passes the frames of a capture file being replayed to the display and to everything else that
+     * listens to a decoded channel: the Streams tab, network output, MIDI Time Code and analysis
+     */
+    private void replay (ReplaySource source, String name) {
+      LtcDecoder replayed = source.getDecoder();
+      float sampleRate = source.getSampleRate();
+      streamTable.clear();
+      replayed.addListener(streamTable.add(name, 0));
+      openOutput();
+      FrameSender out = sender;
+      if (out != null) {
+        replayed.addListener(out.listener(replayed, 0));
+      }
+      // Replayed frames are taken to be captured as they arrive, so MIDI Time Code is paced by them
+      FrameClock clock = frameClock = new FrameClock(sampleRate);
+      replayed.addListener((frame, sample) -> clock.update(sample, System.nanoTime()));
+      monitor = 0;
+      latency = null;
+      listen(replayed, null, sampleRate);
+      refreshTimer.start();
+      source.start();
+    }
+
+    // Adds the display, MIDI Time Code and analysis to the listeners of the monitored channel
+    // (channels is null when replaying, as there are no others to compare it with)
+    private void listen (LtcDecoder monitored, MultiChannelDecoder channels, float sampleRate) {
+      speed = 0;
+      latestRate = null;
+      monitored.addListener(frameClock);
+      monitored.addListener((frame, sample) -> {
+        speed = monitored.getSpeed();
+        predicted = monitored.isPredicted();
+        latestRate = monitored.getFrameRate();
+        frameDecoded(frame, sample);
+      });
+      openMtc(prefs.get("output.midi", ""), monitored, sampleRate);
+      openAnalyzer(monitored, channels, sampleRate);
+    }
+
+    // Called on the decoder (or replay) thread once the monitored channel's frames stop
+    private void stopListening () {
+      closeMtc();
+      closeOutput();
+      closeAnalyzer();
     }
 
     private void close () {
-      running = false;
-      volumeSlider.setEnabled(false);
-      if (mixerPort != null) {
-        mixerPort.close();
+      refreshTimer.stop();
+      // Pick up anything published since the last refresh
+      SwingUtilities.invokeLater(this::refresh);
+    }
+
+    // Called by a DecoderPool worker with data from the ring (positions stay equal to the line's frame
+    // position across any overruns)
+    public void decode (byte[] buffer, int count, long position) {
+      decoder.decode(buffer, count, position);
+      level = decoder.getLevel(monitor);
+    }
+
+    // Called by a DecoderPool worker once capture has stopped and the ring is drained
+    public void closed () {
+      if (recordLog.isRecording()) {
+        recordLog.add(RecordLog.STOPPED, decoder.getSamplePosition());
+      }
+      closeCapture();
+      stopListening();
+      frameClock.removeListener(latency);
+      System.err.println("Capture latency (" + buffering + "): " + latency.summary());
+      if (ring.getOverruns() > 0) {
+        System.err.println("Decoder overruns: " + ring.getOverruns() + " (" + ring.getDroppedBytes() + " bytes dropped)");
       }
     }
 
-    public void run () {
-      dropDetect = skipBit = bitValue = false;
-      frameWord = 0;
-      byte[] buffer = new byte[512];
-      while (running) {
+    // Called by decoder for each valid frame (see LtcDecoder for the layout of the frame bits).  Runs on
+    // the decoder thread, so it only publishes state for refresh() to display and never touches Swing
+    public void frameDecoded (long frame, long sample) {
+      latestFrame = frame;
+      frameSeq++;
+      if (recordLog.isRecording()) {
+        recordLog.add(frame, sample);
+      }
+      if (captureWriter != null) {
         try {
-          int avail;
-          while ((avail = pipeIn.available()) > 0) {
-            int size = pipeIn.read(buffer, 0, avail > buffer.length ? buffer.length : avail);
-            process(buffer, size);
-          }
+          captureWriter.write(frame, sample, System.nanoTime());
         } catch (IOException ex) {
           ex.printStackTrace();
+          closeCapture();
         }
       }
-      try {
-        pipeOut.close();
-        pipeIn.close();
-      } catch (IOException ex) {
-        ex.printStackTrace();
+    }
+
+    // Called on the decoder thread when capture stops
+    private void closeCapture () {
+      if (captureWriter != null) {
+        try {
+          captureWriter.close();
+        } catch (IOException ex) {
+          ex.printStackTrace();
+        }
+        captureWriter = null;
       }
     }
 
-    private void process (byte[] buffer, int count) {
-      int[] samples = new int[count / 2];
-      if (encoding == AudioFormat.Encoding.PCM_SIGNED && channels == 1 && frameSize == 2) {
-        if (bigEndian) {
-          // Handle big Endian data
-          for (int ii = 0; ii < count; ii += 2) {
-            samples[ii >> 1] = (buffer[ii] << 8) | (buffer[ii + 1] & 0xFF);
-          }
-        } else {
-          // Handle little Endian data
-          for (int ii = 0; ii < count; ii += 2) {
-            samples[ii >> 1] = (buffer[ii + 1] << 8) | (buffer[ii] & 0xFF);
+    // Sends MIDI Time Code for the monitored channel to the named MIDI device, if any
+    private void openMtc (String name, LtcDecoder monitored, float sampleRate) {
+      for (MidiDevice.Info info : name.isEmpty() ? new MidiDevice.Info[0] : MidiSystem.getMidiDeviceInfo()) {
+        if (info.getName().equals(name)) {
+          try {
+            MidiDevice device = MidiSystem.getMidiDevice(info);
+            device.open();
+            midiDevice = device;
+            mtcOutput = new MtcOutput(device.getReceiver(), frameClock, monitored, sampleRate);
+            monitored.addListener(mtcOutput);
+          } catch (MidiUnavailableException ex) {
+            ex.printStackTrace();
+            closeMtc();
           }
+          return;
         }
-      } else {
-        throw new IllegalArgumentException("Audio format not recognized: " + encoding);
-      }
-      // Compute Input Signal Level
-      double level = 0;
-      for (int sample : samples) {
-        level += Math.abs(sample);
-      }
-      level = (level / (double) samples.length) / (double) 0x4000;
-      levelMeter.setValue((int) (100 * level));
-      // Count bit intervals by watching zero crossing
-      for (int sample : samples) {
-        int dx = lastSample - sample;
-        boolean lastSign = lastSample > 0;
-        boolean sampleSign = sample > 0;
-        if (Math.abs(dx) > 10 && lastSign != sampleSign) {
-          if (skipBit) {
-            // skip 2nd half of '1' bit
-            skipBit = false;
-          } else {
-            if (interval > (lastInterval + (lastInterval >> 1))) {
-              // transitioned to a '0' bit
-              frameWord = frameWord >> 1;
-              bitValue = false;
-            } else if (interval < (lastInterval - (lastInterval >> 2))) {
-              // transitioned to a '1' bit
-              frameWord = (frameWord >> 1) + 0x8000;
-              bitValue = true;
-              skipBit = true;
-            } else {
-              // same as last bit
-              frameWord >>= 1;
-              if (bitValue) {
-                frameWord |= 0x8000;
-                skipBit = true;
-              }
-            }
-            // Look for end of frame sync pattern 0b1011111111111100;
-            if (frameWord == SYNC) {
-              if (frameIndex == 4) {
-                // Time code frame received in frame[]
-                decodeFrame(frame);
-              }
-              frameIndex = 0;
-              bitCount = 0;
-              frameWord = 0;
-            } else if (++bitCount >= 16) {
-              if (frameIndex < 4) {
-                frame[frameIndex++] = frameWord;
-              } else {
-                frameIndex = 0;
-              }
-              bitCount = 0;
-            }
-          }
-          lastInterval = interval;
-          interval = 0;
-        } else {
-          interval++;
+      }
+    }
+
+    // Called on the decoder thread when capture stops
+    private void closeMtc () {
+      if (mtcOutput != null) {
+        mtcOutput.close();
+        long[] stats = mtcOutput.getStats();
+        System.err.printf("MIDI Time Code: %d messages, quarter frame lateness mean %.1f us, RMS %.1f us, max %.1f us%n", stats[0], stats[1] / 1e3,
+                          stats[2] / 1e3, stats[3] / 1e3);
+        mtcOutput = null;
+      }
+      if (midiDevice != null) {
+        midiDevice.close();
+        midiDevice = null;
+      }
+    }
+
+    // Checks the monitored channel for timecode errors, and compares another channel of the input with it
+    private void openAnalyzer (LtcDecoder monitored, MultiChannelDecoder channels, float sampleRate) {
+      analyzer = null;
+      if (prefs.getBoolean("record.analyze", false)) {
+        // Errors are written as they're found, and the summary shown when capture stops
+        analyzer = new TimecodeAnalyzer(System.err, sampleRate);
+        monitored.addListener(analyzer.addChannel("Channel " + (monitor + 1), monitored));
+        int compare = prefs.getInt("record.compare", -1);
+        LtcDecoder other = channels != null && compare >= 0 && compare != monitor ? channels.getDecoder(compare) : null;
+        if (other != null) {
+          other.addListener(analyzer.addChannel("Channel " + (compare + 1), other));
         }
-        lastSample = sample;
-      }
-    }
-
-    /*
-     *  buf[0]  | u  u  u  u | C  d  F  F | u  u  u  u | f  f  f  f |  Frames
-     *           15 14 13 12  11 10 9  8    7  6  5  4   3  2  1  0
-     *
-     *  buf[1]  | u  u  u  u | x  S  S  S | u  u  u  u | s  s  s  s |  Seconds
-     *           31 30 29 28  27 26 25 24  23 22 21 20  19 18 17 16
-     *
-     *  buf[2]  | u  u  u  u | x  M  M  M | u  u  u  u | m  m  m  m |  Minutes
-     *           47 46 45 44  43 42 41 40  39 38 37 36  35 34 33 32
-     *
-     *  buf[3]  | u  u  u  u | x  c  H  H | u  u  u  u | h  h  h  h |  Hours
-     *           63 62 61 60  59 58 57 56  55 54 53 52  51 50 49 49
-     *
-     *  buf[4]  | 1  0  1  1 | 1  1  1  1 | 1  1  1  1 | 1  1  0  0 |  SYNC Pattern
-     *           79 78 77 76  75 74 73 72  71 70 69 68  67 66 65 64
-     *
-     *  u = User bits, Upper case = tens, lower case = units
-     *  d = drop frame flag, c = clock sync flag, C = color frame flag
-     *  x = special flag bits bits (usage depends on frame rate)
-     *  if 25 fps
-     *    bit 59 is polarity correction bit
-     *    bit 27 is BFG0 and bit 43 is BFG2
-     *  else
-     *    bit 27 is polarity correction bit (obsolete, or reassigned)
-     *    bit 43 is BFG0 and bit 59 is BFG2
-     *  if BFG0 == 1 user bits contain four 8 bit chars, else unspecified data
-     */
+      }
+    }
 
-    private void decodeFrame(int[] frame) {
-      int frmUnits =  frame[0] & 0x0F;
-      int frmTens  = (frame[0] >> 8) & 0x03;
-      int secUnits =  frame[1] & 0x0F;
-      int secTens  = (frame[1] >> 8) & 0x07;
-      int minUnits =  frame[2] & 0x0F;
-      int minTens  = (frame[2] >> 8) & 0x07;
-      int hrsUnits =  frame[3] & 0x0F;
-      int hrsTens  = (frame[3] >> 8) & 0x03;
-      // Error check on data
-      if (frmUnits > 9 || secUnits > 9 || minUnits > 9 || hrsUnits > 9) {
-        return;
+    // Called on the decoder thread when capture stops
+    private void closeAnalyzer () {
+      if (analyzer != null) {
+        String report = analyzer.report();
+        analyzer = null;
+        System.err.print(report);
+        SwingUtilities.invokeLater(() -> {
+          JTextArea text = new JTextArea(report);
+          text.setEditable(false);
+          text.setFont(new Font("Monaco", Font.PLAIN, 12));
+          showMessageDialog(TimecodeReader.this, text, "Continuity Analysis", JOptionPane.PLAIN_MESSAGE, null);
+        });
+      }
+    }
+
+    // Called by refreshTimer on the Swing thread to display the latest state published by the decoder
+    private void refresh () {
+      levelMeter.setValue(level);
+      int seq = frameSeq;
+      if (seq != shownSeq) {
+        // Frames decoded since the last refresh that were never displayed
+        skippedRepaints += seq - shownSeq - 1;
+        shownSeq = seq;
+        showFrame(latestFrame);
+        // Predicted frames are greyed out
+        timeView.setForeground(predicted ? Color.GRAY : timeColor);
+        timeView.setToolTipText(skippedRepaints > 0 ? "Frames not displayed: " + skippedRepaints : null);
+      }
+      FrameRate rate = latestRate;
+      // Show speed to 1 decimal place so jitter in the PLL's estimate doesn't redraw the label on every refresh
+      double spd = Math.round(speed * 10) / 10.0;
+      if (rate != shownRate || spd != shownSpeed) {
+        shownRate = rate;
+        shownSpeed = spd;
+        frameRate.setText((rate != null ? rate.toString() : "--") +
+                          (spd != 0 ? String.format(" at %.1fx%s", Math.abs(spd), spd < 0 ? " reverse" : "") : ""));
       }
+      // Latency percentiles only need to be shown a couple of times a second
+      LatencyStats lat = latency;
+      long now = System.nanoTime();
+      if (lat != null && lat.getFrames() > 0 && now - shownLatency > 500000000L) {
+        shownLatency = now;
+        lat.percentiles(latencyPercents, latencyShown);
+        latencyView.setText(String.format("%.1f ms median, %.1f ms 99%%", latencyShown[0], latencyShown[1]));
+        latencyView.setToolTipText("<html>" + lat.summary() + "<br>" + buffering + "</html>");
+      }
+      // Show any newly recorded frames, scrolling to follow them if already at the end
+      int last = recordLog.getSize() - 1;
+      boolean follow = last < 0 || recordList.getLastVisibleIndex() >= last;
+      if (recordLog.refresh() && follow) {
+        recordList.ensureIndexIsVisible(recordLog.getSize() - 1);
+      }
+      long viewDropped = recordLog.getViewDropped();
+      long spoolDropped = recordLog.getSpoolDropped();
+      if (viewDropped + spoolDropped != shownDropped) {
+        shownDropped = viewDropped + spoolDropped;
+        recordDropped.setText("Frames not recorded: " + viewDropped + " in this list, " + spoolDropped + " in the saved recording");
+        recordDropped.setVisible(true);
+      }
+      streamTable.refresh();
+    }
+
+    private void showFrame (long frame) {
       // Get flags
-      boolean bit10 = (frame[0] & 0x400) != 0;       // Bit 10 drop frame (if 30 fps)
-      boolean bit11 = (frame[0] & 0x800) != 0;       // Bit 11 Color frame flag (if 30, or 25 fps)
-      boolean bit27 = (frame[1] & 0x800) != 0;       // Bit 27
-      boolean bit43 = (frame[2] & 0x800) != 0;       // Bit 43
-      boolean bit58 = (frame[3] & 0x400) != 0;       // Bit 58 also called the BFG1 flag
-      boolean bit59 = (frame[3] & 0x800) != 0;       // Bit 59 phase-correction bit
+      boolean bit10 = LtcDecoder.getFlag(frame, 10);        // Bit 10 drop frame (if 30 fps)
+      boolean bit11 = LtcDecoder.getFlag(frame, 11);        // Bit 11 Color frame flag (if 30, or 25 fps)
+      boolean bit27 = LtcDecoder.getFlag(frame, 27);        // Bit 27
+      boolean bit43 = LtcDecoder.getFlag(frame, 43);        // Bit 43
+      boolean bit58 = LtcDecoder.getFlag(frame, 58);        // Bit 58 also called the BFG1 flag
+      boolean bit59 = LtcDecoder.getFlag(frame, 59);        // Bit 59 phase-correction bit
       user59.setSelected(bit59);
       user58.setSelected(bit58);
       user43.setSelected(bit43);
       user27.setSelected(bit27);
       user11.setSelected(bit11);
       user10.setSelected(bit10);
-      // Unpack User Bit Fields
-      String userFields =
-          Integer.toHexString((frame[3] >> 12) & 0x0F) +
-              Integer.toHexString((frame[3] >> 4) & 0x0F) +
-              Integer.toHexString((frame[2] >> 12) & 0x0F) +
-              Integer.toHexString((frame[2] >> 4) & 0x0F) +
-              Integer.toHexString((frame[1] >> 12) & 0x0F) +
-              Integer.toHexString((frame[1] >> 4) & 0x0F) +
-              Integer.toHexString((frame[0] >> 12) & 0x0F) +
-              Integer.toHexString((frame[0] >> 4) & 0x0F);
-      userData.setText(userFields);
-      // Check for Dropped Frames
-      int frameNum = frmTens * 10 + frmUnits;
-      int minsNum = minTens * 10 + minUnits;
-      if (frameNum == 2 && lastFrame != 1) {
-        dropDetect = minsNum % 10 != 0;
-      }
-      lastFrame = frameNum;
-      // Update Frame Rate Calculation
-      if (secUnits != lastSecond) {
-        lastSecond = secUnits;
-        frameRate.setText((frameCount + 1) + " fps" + (dropDetect ? " (drop frame)" : ""));
-        frameCount = 0;
-      }
-
-      frameCount = Math.max(frameCount, frmUnits + frmTens * 10);
-      // Format timecode as ASCII String
-      String buf =
-          Integer.toString(hrsTens) +
-              Integer.toString(hrsUnits) +
-              ":" +
-              Integer.toString(minTens) +
-              Integer.toString(minUnits) +
-              ":" +
-              Integer.toString(secTens) +
-              Integer.toString(secUnits) +
-              (bit10 ? ";" : ":") +
-              Integer.toString(frmTens) +
-              Integer.toString(frmUnits);
-      timeView.setText(buf);
-      switch (recordWhat) {
-        case "Timecode":
-          timecodeLog.append(buf + "\n");
-          break;
-        case "TC + Raw Frame":
-          timecodeLog.append(buf + " - ");
-        case "Raw Frame":
-          String hex = toHex(frame[3]) + ':' + toHex(frame[2]) + ':' + toHex(frame[1]) + ':' + toHex(frame[0]) + '\n';
-          timecodeLog.append(hex);
-          break;
-      }
-      repaint();
-    }
-  }
-
-  private String toHex (int val) {
-    StringBuilder buf = new StringBuilder(Integer.toHexString(val));
-    while (buf.length() < 8) {
-      buf.insert(0, '0');
+      // Unpack User Bit Fields (label only needs a new String when the user bits change)
+      int userBits = LtcDecoder.getUserBits(frame);
+      if (userBits != lastUserBits) {
+        lastUserBits = userBits;
+        for (int ii = 0; ii < 8; ii++) {
+          userChars[ii] = LtcDecoder.HEX[(userBits >>> (28 - ii * 4)) & 0x0F];
+        }
+        userData.setText(new String(userChars));
+      }
+      LtcDecoder.formatTimecode(frame, tcChars, 0);
+      timeView.setText(new String(tcChars));
     }
-    return buf.toString();
   }
 
   public void run () {
     try {
-      Mixer mixer = AudioSystem.getMixer(selectedInput.mixerInfo);
-      AudioFormat format = selectedInput.format;
-      DataLine.Info dataLineInfo = new DataLine.Info(TargetDataLine.class, format);
-      TargetDataLine line = (TargetDataLine)  mixer.getLine(dataLineInfo);
-      timecode.selectInput(selectedInput);
-      line.open(format);
-      line.start();
-      byte buffer[] = new byte[1024];
-      running = true;
-      PipedOutputStream pipeOut = timecode.getPipeOut();
-      while (running) {
-        int avail;
-        while ((avail = line.available()) > 0) {
-          int size = line.read(buffer, 0, avail > buffer.length ? buffer.length : avail);
-          pipeOut.write(buffer, 0, size);
+      int channels = prefs.getInt("audio.channels", 1);
+      int ringCapacity = prefs.getInt("ring.capacity", 64 * 1024);
+      LatencyProfile profile = LatencyProfile.of(prefs.get("audio.latency", ""));
+      // The last capture's counters go into the totals
+      metrics.clear();
+      // Open the selected input and any others to be decoded alongside it, each with its own capture thread
+      List<DeviceCapture> devices = new ArrayList<>();
+      AudioFormat format = getInputFormat();
+      try {
+        devices.add(new DeviceCapture(selectedInput.mixerInfo, format, channels, ringCapacity, profile));
+      } catch (LineUnavailableException ex) {
+        timecode.close();
+        String msg = ex.getMessage() != null ? ex.getMessage() : "Unable to open " + selectedInput.mixerInfo.getName();
+        SwingUtilities.invokeLater(() -> {
+          showMessageDialog(this, msg, "Error", JOptionPane.PLAIN_MESSAGE, null);
+          if (displaying) {
+            capture.doClick();
+          }
+        });
+        return;
+      }
+      for (DeviceScanner.InputSource source : inputSources) {
+        if (!source.getName().equals(selectedInput.getName()) && alsoInputs.contains(source.getName())) {
+          try {
+            devices.add(new DeviceCapture(source.mixerInfo, format, channels, ringCapacity, profile));
+          } catch (LineUnavailableException ex) {
+            ex.printStackTrace();
+          }
+        }
+      }
+      captures = devices;
+      if (!running) {
+        // Stopped while opening
+        devices.forEach(DeviceCapture::stop);
+      }
+      if (captureFile != null) {
+        try {
+          timecode.captureWriter = new CaptureFile.Writer(captureFile, format.getSampleRate());
+        } catch (IOException ex) {
+          // Decode without capturing rather than stop
+          String msg = "Unable to open capture file " + captureFile + ": " + ex.getMessage();
+          SwingUtilities.invokeLater(() -> showMessageDialog(this, msg, "Error", JOptionPane.PLAIN_MESSAGE, null));
+        }
+      }
+      openOutput();
+      // Add a row to the Streams tab for every channel
+      StreamTable.Row[][] rows = new StreamTable.Row[devices.size()][];
+      SwingUtilities.invokeAndWait(() -> {
+        streamTable.clear();
+        for (int ii = 0; ii < rows.length; ii++) {
+          DeviceCapture device = devices.get(ii);
+          rows[ii] = new StreamTable.Row[device.getFormat().getChannels()];
+          for (int ch = 0; ch < rows[ii].length; ch++) {
+            rows[ii][ch] = streamTable.add(device.getName(), ch);
+          }
         }
+      });
+      // Decoding of every device is shared by the worker threads of decoderPool
+      for (int ii = 1; ii < devices.size(); ii++) {
+        DeviceCapture device = devices.get(ii);
+        MultiChannelDecoder decoder = new MultiChannelDecoder(device.getFormat(), rows[ii]);
+        addOutput(decoder, ii, device.getFormat().getChannels());
+        metrics.add(device.getName(), device.getRing(), decoder, device.getFormat());
+        decoderPool.add(device.getRing(), decoder, device.getFormat().getFrameSize());
+        device.start();
       }
-      line.close();
+      timecode.start(devices.get(0), prefs.getInt("audio.monitor", 0), rows[0], decoderPool);
+      // Capture the selected input on this thread until stopped
+      devices.get(0).run();
+      devices.forEach(DeviceCapture::stop);
       timecode.close();
     } catch (Exception ex) {
       ex.printStackTrace();
@@ -409,6 +532,65 @@ public class TimecodeReader extends JFrame implements Runnable {
     }
   }
 
+  // Opens the network output for a capture or replay, if enabled in the Output menu
+  private void openOutput () {
+    if (prefs.getBoolean("output.enabled", false)) {
+      try {
+        sender = new FrameSender(FrameSender.parseTargets(prefs.get("output.targets", "")), prefs.getBoolean("output.osc", false), null);
+      } catch (IOException | IllegalArgumentException ex) {
+        ex.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Sends the frames of every channel decoded by decoder over the network, if enabled in the Output menu
+   * @param input index of the input (0 for the one selected, then each Also Decode input)
+   */
+  private void addOutput (MultiChannelDecoder decoder, int input, int channels) {
+    FrameSender out = sender;
+    for (int ch = 0; out != null && ch < channels; ch++) {
+      LtcDecoder channelDecoder = decoder.getDecoder(ch);
+      if (channelDecoder != null) {
+        channelDecoder.addListener(out.listener(channelDecoder, input << 4 | ch));
+      }
+    }
+  }
+
+  // Called on a decoder thread when capture stops
+  private void closeOutput () {
+    FrameSender out = sender;
+    if (out != null) {
+      sender = null;
+      try {
+        out.close();
+      } catch (IOException ex) {
+        ex.printStackTrace();
+      }
+      long[] stats = out.getStats();
+      System.err.printf("Network output: %d frames sent, %d dropped, latency mean %.1f us, max %.1f us%n", stats[0], stats[1],
+                        stats[2] / 1e3, stats[3] / 1e3);
+    }
+  }
+
+  /**
+   * @return the capture format chosen in the Input menu (as mono; DeviceCapture picks the channels and byte order)
+   */
+  private AudioFormat getInputFormat () {
+    float rate = prefs.getInt("audio.rate", 22050);
+    String sampleFormat = prefs.get("audio.format", SAMPLE_FORMATS[1]);
+    int bits = Integer.parseInt(sampleFormat.substring(0, sampleFormat.indexOf(' ')));
+    AudioFormat.Encoding encoding = sampleFormat.endsWith("float") ? AudioFormat.Encoding.PCM_FLOAT : AudioFormat.Encoding.PCM_SIGNED;
+    return new AudioFormat(encoding, rate, bits, 1, bits / 8, rate, true);
+  }
+
+  private void stopCapture () {
+    running = false;
+    for (DeviceCapture device : captures) {
+      device.stop();
+    }
+  }
+
   private TimecodeReader() {
     super("Timecode Reader");
     setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
@@ -417,10 +599,33 @@ public class TimecodeReader extends JFrame implements Runnable {
     tabs.addTab("Monitor", timecode = new TimeCode());
     JPanel recFrame = new JPanel(new BorderLayout());
     recFrame.setBorder( BorderFactory.createEmptyBorder(4, 4, 4, 4));
-    recFrame.add( new JScrollPane(timecodeLog = new JTextArea()), BorderLayout.CENTER);
+    try {
+      recordLog = new RecordLog(prefs.getInt("record.rows", 100000));
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    // JList only formats the rows that are visible
+    recFrame.add( new JScrollPane(recordList = new JList<>(recordLog)), BorderLayout.CENTER);
+    // Only shown if the recording has fallen behind and frames have been dropped (marked by Gap rows)
+    recFrame.add(recordDropped, BorderLayout.SOUTH);
+    recordDropped.setForeground(Color.RED);
+    recordDropped.setVisible(false);
     tabs.addTab("Record", recFrame);
-    timecodeLog.setFont(new Font("Monaco", Font.PLAIN, 12));
-    timecodeLog.setMargin(new Insets(1, 3, 1, 3));
+    // Add "Streams" tab showing every channel being decoded
+    JPanel streamFrame = new JPanel(new BorderLayout());
+    streamFrame.setBorder(BorderFactory.createEmptyBorder(4, 4, 4, 4));
+    JTable streamView = new JTable(streamTable);
+    streamView.setPreferredScrollableViewportSize(new Dimension(400, 200));
+    streamFrame.add(new JScrollPane(streamView), BorderLayout.CENTER);
+    tabs.addTab("Streams", streamFrame);
+    // Shared by all inputs, so the number of decoding threads doesn't grow with the number of streams
+    decoderPool = new DecoderPool(prefs.getInt("decode.threads", Runtime.getRuntime().availableProcessors()),
+                                  prefs.getInt("decode.streams", 64), this::decodingFailed);
+    // Decoder counters are always published over JMX, and also written out if metrics.dump is set
+    metrics.startDump(prefs.get("metrics.file", ""), prefs.getInt("metrics.dump", 0));
+    recordList.setFont(new Font("Monaco", Font.PLAIN, 12));
+    recordList.setPrototypeCellValue("00:00:00:00 - 00000000:00000000:00000000:00000000");
+    recordList.setVisibleRowCount(20);
     add(tabs, BorderLayout.CENTER);
     JPanel buttonPanel =  new JPanel(new BorderLayout());
     buttonPanel.setBorder(BorderFactory.createEmptyBorder(0, 4, 4, 4));
@@ -432,7 +637,7 @@ public class TimecodeReader extends JFrame implements Runnable {
       @Override
       public void windowClosing(WindowEvent e) {
         super.windowClosing(e);
-        running = false;
+        stopCapture();
         try {
           // Wait for Thread to exit, or 2 seconds, whichever is shorter
           if (runThread != null) {
@@ -450,21 +655,21 @@ public class TimecodeReader extends JFrame implements Runnable {
       if (displaying) {
         // Stop input capture
         capture.setText("Start");
-        running = false;
+        stopCapture();
         displaying = false;
         inputMenu.setEnabled(true);
         recordMenu.setEnabled(true);
-        if (recording) {
-          timecodeLog.append("Stopped\n");
-        }
+        outputMenu.setEnabled(true);
       } else {
         // Start input capture
         if (selectedInput != null) {
+          running = true;
           (runThread = new Thread(this)).start();
           capture.setText("Stop");
           displaying = true;
           inputMenu.setEnabled(false);
           recordMenu.setEnabled(false);
+          outputMenu.setEnabled(false);
         } else {
           // Just in case
           showMessageDialog(this, "Select Input Source", "Error", JOptionPane.PLAIN_MESSAGE, null);
@@ -474,38 +679,105 @@ public class TimecodeReader extends JFrame implements Runnable {
     // Add Menu Bar
     JMenuBar menuBar = new JMenuBar();
     setJMenuBar(menuBar);
-    // Add "Input" menu
-    ButtonGroup inGroup = new ButtonGroup();
-    boolean hasInput = false;
-    for (InputSource source : getInputSources(new AudioFormat(22050, 16, 1, true, true))) {
-      String input = source.mixerInfo.getName().trim();
-      boolean inputSelected = input.equals(prefs.get("audio.input", null));
-      if (inputSelected) {
-        selectedInput = source;
-        timecode.selectInput(source);
+    // Add "Input" menu, from the inputs found last time until the device scan finds them again
+    capture.setEnabled(false);
+    inputMenu.addSeparator();
+    alsoMenu = new JMenu("Also Decode");
+    alsoMenu.setToolTipText("Other inputs to capture and decode at the same time (see the Streams tab)");
+    for (String input : prefs.get("audio.also", "").split("\n")) {
+      if (!input.isEmpty()) {
+        alsoInputs.add(input);
       }
-      JRadioButtonMenuItem mItem = new JRadioButtonMenuItem(input, inputSelected);
-      mItem.setToolTipText(source.mixerInfo.getVendor());
-      hasInput |= inputSelected;
-      inputMenu.add(mItem);
-      inGroup.add(mItem);
-      mItem.addActionListener(ev -> {
-        String name = ev.getActionCommand();
-        selectedInput = source;
-        timecode.selectInput(source);
-        prefs.put("audio.input", name);
-        capture.setEnabled(true);
-      });
     }
-    capture.setEnabled(hasInput);
+    setInputNames(DeviceScanner.getCachedNames(prefs));
+    inputMenu.add(alsoMenu);
+    JMenu chanMenu = new JMenu("Channels");
+    chanMenu.setToolTipText("Most channels to open on each input (LTC is decoded on every channel)");
+    JMenu monMenu = new JMenu("Monitor Channel");
+    ButtonGroup chanGroup = new ButtonGroup();
+    ButtonGroup monGroup = new ButtonGroup();
+    for (int chans : new int[] {1, 2, 4, 8, 16}) {
+      JRadioButtonMenuItem mItem = new JRadioButtonMenuItem(Integer.toString(chans), chans == prefs.getInt("audio.channels", 1));
+      chanMenu.add(mItem);
+      chanGroup.add(mItem);
+      mItem.addActionListener(ev -> prefs.putInt("audio.channels", chans));
+    }
+    for (int ch = 0; ch < 16; ch++) {
+      int channel = ch;
+      JRadioButtonMenuItem mItem = new JRadioButtonMenuItem(Integer.toString(ch + 1), ch == prefs.getInt("audio.monitor", 0));
+      monMenu.add(mItem);
+      monGroup.add(mItem);
+      mItem.addActionListener(ev -> prefs.putInt("audio.monitor", channel));
+    }
+    inputMenu.add(chanMenu);
+    inputMenu.add(monMenu);
+    // Add Sample Rate and Format Menus (decoded natively, so pick what the interface delivers)
+    JMenu rateMenu = new JMenu("Sample Rate");
+    JMenu fmtMenu = new JMenu("Sample Format");
+    ButtonGroup rateGroup = new ButtonGroup();
+    ButtonGroup fmtGroup = new ButtonGroup();
+    for (int rate : SAMPLE_RATES) {
+      JRadioButtonMenuItem mItem = new JRadioButtonMenuItem(rate + " Hz", rate == prefs.getInt("audio.rate", 22050));
+      rateMenu.add(mItem);
+      rateGroup.add(mItem);
+      mItem.addActionListener(ev -> prefs.putInt("audio.rate", rate));
+    }
+    for (String sampleFormat : SAMPLE_FORMATS) {
+      JRadioButtonMenuItem mItem = new JRadioButtonMenuItem(sampleFormat, sampleFormat.equals(prefs.get("audio.format", SAMPLE_FORMATS[1])));
+      fmtMenu.add(mItem);
+      fmtGroup.add(mItem);
+      mItem.addActionListener(ev -> prefs.put("audio.format", sampleFormat));
+    }
+    inputMenu.add(rateMenu);
+    inputMenu.add(fmtMenu);
+    JMenu latencyMenu = new JMenu("Latency");
+    latencyMenu.setToolTipText("Capture buffering, from the least for chasing live timecode to the most for logging");
+    ButtonGroup latencyGroup = new ButtonGroup();
+    for (LatencyProfile profile : LatencyProfile.values()) {
+      JRadioButtonMenuItem mItem = new JRadioButtonMenuItem(profile.toString(), profile == LatencyProfile.of(prefs.get("audio.latency", "")));
+      latencyMenu.add(mItem);
+      latencyGroup.add(mItem);
+      mItem.addActionListener(ev -> prefs.put("audio.latency", profile.name()));
+    }
+    inputMenu.add(latencyMenu);
+    // Add PLL and Filter Options (take effect when capture next starts)
+    inputMenu.addSeparator();
+    JCheckBoxMenuItem pllItem = new JCheckBoxMenuItem("PLL Bit Clock", prefs.getBoolean("decode.pll", false));
+    pllItem.setToolTipText("Track the bit clock with a PLL to decode shuttle, jog and reverse play");
+    pllItem.addActionListener(ev -> prefs.putBoolean("decode.pll", pllItem.isSelected()));
+    inputMenu.add(pllItem);
+    JMenu bandMenu = new JMenu("PLL Bandwidth");
+    bandMenu.setToolTipText("Higher follows shuttle and speed changes faster, lower rejects more jitter");
+    ButtonGroup bandGroup = new ButtonGroup();
+    for (int hertz : PLL_BANDWIDTHS) {
+      JRadioButtonMenuItem mItem = new JRadioButtonMenuItem(hertz + " Hz", hertz == prefs.getInt("decode.pll.bandwidth", (int) PllSlicer.DEFAULT_BANDWIDTH));
+      bandMenu.add(mItem);
+      bandGroup.add(mItem);
+      mItem.addActionListener(ev -> prefs.putInt("decode.pll.bandwidth", hertz));
+    }
+    inputMenu.add(bandMenu);
+    JCheckBoxMenuItem filterItem = new JCheckBoxMenuItem("Input Filter", prefs.getBoolean("decode.filter", false));
+    filterItem.setToolTipText("Remove DC offset, hum and HF noise, and add hysteresis, before looking for edges");
+    filterItem.addActionListener(ev -> prefs.putBoolean("decode.filter", filterItem.isSelected()));
+    inputMenu.add(filterItem);
+    JMenu flyMenu = new JMenu("Flywheel");
+    flyMenu.setToolTipText("Frames to predict across dropouts (predicted frames are shown grey)");
+    ButtonGroup flyGroup = new ButtonGroup();
+    for (int frames : FLYWHEEL_FRAMES) {
+      JRadioButtonMenuItem mItem = new JRadioButtonMenuItem(frames > 0 ? frames + " frames" : "Off", frames == prefs.getInt("decode.flywheel", 0));
+      flyMenu.add(mItem);
+      flyGroup.add(mItem);
+      mItem.addActionListener(ev -> prefs.putInt("decode.flywheel", frames));
+    }
+    inputMenu.add(flyMenu);
     menuBar.add(inputMenu);
     // Add "Record" Menu
     recordMenu = new JMenu("Record");
     menuBar.add((recordMenu));
     ButtonGroup recGroup = new ButtonGroup();
     recordWhat = prefs.get("record.type", recordWhat);
-    recording = !recordWhat.equals("None");
-    for (String recType : new String[] {"None", "Timecode", "Raw Frame", "TC + Raw Frame"}) {
+    recordLog.setType(recordWhat);
+    for (String recType : RecordLog.TYPES) {
       boolean inputSelected = recType.equals(recordWhat);
       JRadioButtonMenuItem mItem = new JRadioButtonMenuItem(recType, inputSelected);
       recordMenu.add(mItem);
@@ -513,14 +785,84 @@ public class TimecodeReader extends JFrame implements Runnable {
       mItem.addActionListener(ev -> {
         String name = ev.getActionCommand();
         recordWhat = recType;
+        recordLog.setType(recType);
         prefs.put("record.type", name);
-        recording = !name.equals("None");
       });
     }
     recordMenu.addSeparator();
     JMenuItem recClear = new JMenuItem("Clear Recording");
-    recClear.addActionListener(ex -> timecodeLog.setText(""));
+    recClear.addActionListener(ex -> recordLog.clear());
     recordMenu.add(recClear);
+    // Add Continuity Analysis Menu Items
+    recordMenu.addSeparator();
+    JCheckBoxMenuItem analyzeItem = new JCheckBoxMenuItem("Analyze Continuity", prefs.getBoolean("record.analyze", false));
+    analyzeItem.setToolTipText("Check the monitored channel for timecode errors, and report on them when capture stops");
+    analyzeItem.addActionListener(ev -> prefs.putBoolean("record.analyze", analyzeItem.isSelected()));
+    recordMenu.add(analyzeItem);
+    JMenu compareMenu = new JMenu("Compare With Channel");
+    compareMenu.setToolTipText("Also measure the offset and drift of another channel of the input from the monitored channel");
+    ButtonGroup compareGroup = new ButtonGroup();
+    for (int ch = -1; ch < 16; ch++) {
+      int channel = ch;
+      JRadioButtonMenuItem mItem = new JRadioButtonMenuItem(ch < 0 ? "Off" : Integer.toString(ch + 1), ch == prefs.getInt("record.compare", -1));
+      compareMenu.add(mItem);
+      compareGroup.add(mItem);
+      mItem.addActionListener(ev -> prefs.putInt("record.compare", channel));
+    }
+    recordMenu.add(compareMenu);
+    // Add Binary Capture and Replay Menu Items
+    recordMenu.addSeparator();
+    JCheckBoxMenuItem binCapture = new JCheckBoxMenuItem("Binary Capture To...");
+    binCapture.setToolTipText("Also capture every decoded frame to a compact binary file for replay");
+    recordMenu.add(binCapture);
+    binCapture.addActionListener(e -> {
+      captureFile = null;
+      if (binCapture.isSelected()) {
+        JFileChooser fc = new JFileChooser();
+        fc.setSelectedFile(new File(prefs.get("capture.file", "capture.ltcb")));
+        if (fc.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+          captureFile = fc.getSelectedFile();
+          prefs.put("capture.file", captureFile.getAbsolutePath());
+        }
+      }
+      binCapture.setSelected(captureFile != null);
+    });
+    JMenuItem replayItem = new JMenuItem("Replay Capture...");
+    recordMenu.add(replayItem);
+    replayItem.addActionListener(e -> {
+      if (replay != null && replay.isRunning()) {
+        replay.stop();
+        return;
+      }
+      JFileChooser fc = new JFileChooser();
+      fc.setSelectedFile(new File(prefs.get("capture.file", "capture.ltcb")));
+      if (fc.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+        String[] speeds = {"1x", "2x", "10x", "100x", "Max"};
+        Object speed = JOptionPane.showInputDialog(this, "Replay Speed:", "Replay Capture", JOptionPane.PLAIN_MESSAGE,
+                                                   null, speeds, speeds[0]);
+        if (speed != null) {
+          double rate = speed.equals("Max") ? 0 : Double.parseDouble(speed.toString().replace("x", ""));
+          try {
+            replay = new ReplaySource(fc.getSelectedFile(), rate, () -> {
+              timecode.stopListening();
+              SwingUtilities.invokeLater(() -> {
+                timecode.refreshTimer.stop();
+                timecode.refresh();
+                replayItem.setText("Replay Capture...");
+                capture.setEnabled(selectedInput != null);
+              });
+            });
+          } catch (IOException ex) {
+            showMessageDialog(this, "Unable to open capture file " + fc.getSelectedFile() + ": " + ex.getMessage(), "Error",
+                              JOptionPane.PLAIN_MESSAGE, null);
+            return;
+          }
+          replayItem.setText("Stop Replay");
+          capture.setEnabled(false);
+          timecode.replay(replay, fc.getSelectedFile().getName());
+        }
+      }
+    });
     // Add "Save Recording As..." Menu Item
     recordMenu.addSeparator();
     JMenuItem saveAs = new JMenuItem("Save Recording As...");
@@ -533,14 +875,64 @@ public class TimecodeReader extends JFrame implements Runnable {
         if (sFile.exists()) {
           if (JOptionPane.showConfirmDialog(this, "Overwrite Existing file?", "Warning", JOptionPane.YES_NO_OPTION,
                                             JOptionPane.WARNING_MESSAGE) == JOptionPane.OK_OPTION) {
-            saveFile(sFile, timecodeLog.getText());
+            saveFile(saveAs, sFile);
           }
         } else {
-          saveFile(sFile, timecodeLog.getText());
+          saveFile(saveAs, sFile);
         }
         prefs.put("default.dir", sFile.getAbsolutePath());
       }
     });
+    // Add "Output" Menu (takes effect when capture next starts)
+    outputMenu = new JMenu("Output");
+    menuBar.add(outputMenu);
+    JCheckBoxMenuItem sendItem = new JCheckBoxMenuItem("Send Frames To...", prefs.getBoolean("output.enabled", false));
+    sendItem.setToolTipText("Send every decoded frame as a UDP datagram to hosts or multicast groups on the network");
+    outputMenu.add(sendItem);
+    sendItem.addActionListener(e -> {
+      if (sendItem.isSelected()) {
+        Object targets = JOptionPane.showInputDialog(this, "Send To (host:port, ...):", "Network Output", JOptionPane.PLAIN_MESSAGE,
+                                                     null, null, prefs.get("output.targets", "239.255.76.84:7684"));
+        try {
+          if (targets == null || FrameSender.parseTargets(targets.toString()).length == 0) {
+            sendItem.setSelected(false);
+          } else {
+            prefs.put("output.targets", targets.toString().trim());
+          }
+        } catch (IOException | IllegalArgumentException ex) {
+          showMessageDialog(this, "Invalid target: " + ex.getMessage(), "Error", JOptionPane.PLAIN_MESSAGE, null);
+          sendItem.setSelected(false);
+        }
+      }
+      prefs.putBoolean("output.enabled", sendItem.isSelected());
+    });
+    JCheckBoxMenuItem oscItem = new JCheckBoxMenuItem("OSC Format", prefs.getBoolean("output.osc", false));
+    oscItem.setToolTipText("Send OSC messages to /ltc/frame rather than compact binary datagrams");
+    oscItem.addActionListener(ev -> prefs.putBoolean("output.osc", oscItem.isSelected()));
+    outputMenu.add(oscItem);
+    outputMenu.addSeparator();
+    JMenu mtcMenu = new JMenu("MIDI Time Code");
+    mtcMenu.setToolTipText("Send MIDI Time Code for the monitor channel to a MIDI output");
+    ButtonGroup mtcGroup = new ButtonGroup();
+    List<String> midiOutputs = new ArrayList<>();
+    midiOutputs.add("");
+    for (MidiDevice.Info info : MidiSystem.getMidiDeviceInfo()) {
+      try {
+        MidiDevice device = MidiSystem.getMidiDevice(info);
+        if (device.getMaxReceivers() != 0 && !(device instanceof Sequencer)) {
+          midiOutputs.add(info.getName());
+        }
+      } catch (MidiUnavailableException ex) {
+        // Not available, so not listed
+      }
+    }
+    for (String name : midiOutputs) {
+      JRadioButtonMenuItem mItem = new JRadioButtonMenuItem(name.isEmpty() ? "Off" : name, name.equals(prefs.get("output.midi", "")));
+      mtcMenu.add(mItem);
+      mtcGroup.add(mItem);
+      mItem.addActionListener(ev -> prefs.put("output.midi", name));
+    }
+    outputMenu.add(mtcMenu);
     // Track window move events and save in prefs
     addComponentListener(new ComponentAdapter() {
       public void componentMoved (ComponentEvent ev)  {
@@ -554,97 +946,117 @@ public class TimecodeReader extends JFrame implements Runnable {
     pack();
     setResizable(false);
     setVisible(true);
+    // Find the audio inputs in the background, so the window shows without waiting for them
+    new DeviceScanner(prefs, getInputFormat(), new DeviceScanner.Listener() {
+      public void inputFound (DeviceScanner.InputSource source) {
+        SwingUtilities.invokeLater(() -> useLastInput(source));
+      }
+
+      public void inputsChanged (List<DeviceScanner.InputSource> sources) {
+        SwingUtilities.invokeLater(() -> updateInputs(sources));
+      }
+    }).start();
   }
 
-  private void saveFile (File file, String text) {
-    try {
-      FileOutputStream out = new FileOutputStream(file);
-      out.write(text.getBytes(StandardCharsets.UTF_8));
-      out.close();
-    } catch (IOException ex) {
-      ex.printStackTrace();
+  /**
+   * Lists names in the Input and Also Decode menus (called on the Swing thread)
+   */
+  private void setInputNames (List<String> names) {
+    String selected = prefs.get("audio.input", null);
+    while (inputItems > 0) {
+      inputMenu.remove(--inputItems);
+    }
+    alsoMenu.removeAll();
+    ButtonGroup inGroup = new ButtonGroup();
+    for (String input : names) {
+      JRadioButtonMenuItem mItem = new JRadioButtonMenuItem(input, input.equals(selected));
+      inputMenu.insert(mItem, inputItems++);
+      inGroup.add(mItem);
+      mItem.addActionListener(ev -> {
+        prefs.put("audio.input", input);
+        selectedInput = findInput(input);
+        if (selectedInput != null) {
+          timecode.selectInput(selectedInput);
+        }
+        capture.setEnabled(selectedInput != null);
+      });
+    }
+    for (String input : names) {
+      JCheckBoxMenuItem mItem = new JCheckBoxMenuItem(input, alsoInputs.contains(input));
+      alsoMenu.add(mItem);
+      mItem.addActionListener(ev -> {
+        if (mItem.isSelected()) {
+          alsoInputs.add(input);
+        } else {
+          alsoInputs.remove(input);
+        }
+        prefs.put("audio.also", String.join("\n", alsoInputs));
+      });
     }
   }
 
-  static class InputSource {
-    Mixer.Info  mixerInfo;
-    Line.Info   lineInfo;
-    AudioFormat format;
-
-    InputSource (Mixer.Info mixerInfo, Line.Info lineInfo, AudioFormat format) {
-      this.mixerInfo = mixerInfo;
-      this.lineInfo = lineInfo;
-      this.format = format;
+  private DeviceScanner.InputSource findInput (String name) {
+    for (DeviceScanner.InputSource source : inputSources) {
+      if (source.getName().equals(name)) {
+        return source;
+      }
     }
+    return null;
   }
 
-  static class DupMap<K,V> extends TreeMap<K,V> {
-    Map<K,Integer> counts = new HashMap<>();
-
-    @Override
-    @SuppressWarnings("unchecked")
-    public V put (K name, V val) {
-      if (containsKey(name)) {
-        if (counts.containsKey(name)) {
-          int next = counts.get(name) + 1;
-          super.put((K) (name + "-" + Integer.toString(next)), val);
-          counts.put(name, next);
-        } else {
-          super.put((K) (name + "-" + Integer.toString(1)), remove(name));
-          super.put((K) (name + "-" + Integer.toString(2)), val);
-          counts.put(name, 2);
-        }
-      } else {
-        super.put(name, val);
-      }
-      return val;
+  // Called on the Swing thread when the last used input has been found
+  private void useLastInput (DeviceScanner.InputSource source) {
+    if (selectedInput == null && inputSources.isEmpty()) {
+      selectedInput = source;
+      timecode.selectInput(source);
+      capture.setEnabled(!displaying && (replay == null || !replay.isRunning()));
     }
   }
 
-  /**
-   * This code enemuerates all the audio input sources available and attempts to pair them with
-   * an audio mixer than can access the various controls, such as as gain, balance and mute.
-   * Note: some input sources, such as digital audio inputs, may have no controls
-   * @param format specifies the AudioFormat the source must support
-   * @return a List of InputSource objects, each of which describes an input source
-   */
-  private static java.util.List<InputSource> getInputSources (AudioFormat format) {
-    // Use DupMap to handle devices that return the same name
-    Map<String, Mixer.Info> mixers = new DupMap<>();
-    Map<String, Line.Info> sources = new DupMap<>();
-    for (Mixer.Info mixerInfo : AudioSystem.getMixerInfo()) {
-      Mixer targetMixer = AudioSystem.getMixer(mixerInfo);
-      String mixerName = mixerInfo.getName().trim();
-      DataLine.Info targetDataLineInfo = new DataLine.Info(TargetDataLine.class, format);
-      if (targetMixer.isLineSupported(targetDataLineInfo)) {
-        try {
-          TargetDataLine targetLine = (TargetDataLine) targetMixer.getLine(targetDataLineInfo);
-          if (targetLine != null) {
-            mixers.put(mixerName, mixerInfo);
-          }
-        } catch (LineUnavailableException ex) {
-          // Just let loop continue
-        }
-      } else {
-        for (Line.Info lineInfo : targetMixer.getSourceLineInfo()) {
-          if (mixerName.startsWith("Port ")) {
-            sources.put(mixerName, lineInfo);
-          }
-        }
+  // Called on the Swing thread after each scan that finds inputs added or removed
+  private void updateInputs (List<DeviceScanner.InputSource> sources) {
+    inputSources = sources;
+    List<String> names = new ArrayList<>();
+    for (DeviceScanner.InputSource source : sources) {
+      names.add(source.getName());
+    }
+    setInputNames(names);
+    if (!displaying) {
+      // Leave an input being captured alone, even if it has gone
+      DeviceScanner.InputSource source = findInput(prefs.get("audio.input", ""));
+      if (source != null && (selectedInput == null || !selectedInput.getName().equals(source.getName()))) {
+        timecode.selectInput(source);
       }
+      selectedInput = source;
+      capture.setEnabled(source != null && (replay == null || !replay.isRunning()));
     }
-    List<InputSource> srcList = new ArrayList<>();
-    for (String key : mixers.keySet()) {
-      Line.Info lineInfo = sources.get("Port " + key);
-      if (lineInfo != null) {
-        srcList.add(new InputSource(mixers.get(key), lineInfo, format));
+  }
 
+  // Called on a DecoderPool worker when decoding a stream has thrown (the stream has been closed)
+  private void decodingFailed (Throwable ex) {
+    SwingUtilities.invokeLater(() -> showMessageDialog(this, "Decoding stopped: " + ex, "Error", JOptionPane.PLAIN_MESSAGE, null));
+  }
+
+  // Saves the recording in the background, disabling item until it's done
+  private void saveFile (JMenuItem item, File file) {
+    if (recordLog.save(file, ex -> SwingUtilities.invokeLater(() -> {
+      item.setText("Save Recording As...");
+      item.setEnabled(true);
+      if (ex != null) {
+        showMessageDialog(this, "Unable to save recording to " + file + ": " + ex.getMessage(), "Error", JOptionPane.PLAIN_MESSAGE, null);
       }
+    }))) {
+      item.setText("Saving Recording...");
+      item.setEnabled(false);
     }
-    return srcList;
   }
 
   public static void main (String args[]) {
-    new TimecodeReader();
+    if (args.length > 0) {
+      // Headless file decoding (see FileDecoder for options)
+      FileDecoder.main(args);
+    } else {
+      new TimecodeReader();
+    }
   }
 }
\ No newline at end of file
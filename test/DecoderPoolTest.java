@@ -0,0 +1,72 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+  /*
+   *  Checks that a stream whose Sink throws (an exception or an Error) is closed through the
+   *  normal path: the Sink gets closed(), the error is reported, and the stream's slot in the pool
+   *  is released.
+   */
+
+class DecoderPoolTest {
+
+  @Test
+  void exceptionReleasesStream () throws Exception {
+    failedStreamIsReleased(() -> {
+      throw new IllegalStateException("Bad data");
+    });
+  }
+
+  @Test
+  void errorReleasesStream () throws Exception {
+    failedStreamIsReleased(() -> {
+      throw new StackOverflowError("Bad data");
+    });
+  }
+
+  // Decodes a stream with a Sink that calls fail, then checks that another stream can be decoded
+  private static void failedStreamIsReleased (Runnable fail) throws Exception {
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    CountDownLatch reported = new CountDownLatch(1);
+    DecoderPool pool = new DecoderPool(1, 1, ex -> {
+      error.set(ex);
+      reported.countDown();
+    });
+    try {
+      CountDownLatch closed = new CountDownLatch(1);
+      SampleRing ring = new SampleRing(4096);
+      pool.add(ring, new DecoderPool.Sink() {
+        public void decode (byte[] buffer, int count, long position) {
+          fail.run();
+        }
+
+        public void closed () {
+          closed.countDown();
+        }
+      }, 2);
+      ring.write(new byte[256], 0, 256);
+      assertTrue(closed.await(5, TimeUnit.SECONDS), "closed() not called");
+      assertTrue(reported.await(5, TimeUnit.SECONDS), "error not reported");
+      assertEquals("Bad data", error.get().getMessage());
+      // The pool only holds one stream, so this fails unless the failed one was released
+      CountDownLatch drained = new CountDownLatch(1);
+      SampleRing next = new SampleRing(4096);
+      pool.add(next, new DecoderPool.Sink() {
+        public void decode (byte[] buffer, int count, long position) { }
+
+        public void closed () {
+          drained.countDown();
+        }
+      }, 2);
+      next.write(new byte[256], 0, 256);
+      next.close();
+      assertTrue(drained.await(5, TimeUnit.SECONDS), "second stream not decoded");
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
@@ -0,0 +1,152 @@
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+  /*
+   *  Sends frames from two threads to a DatagramChannel on loopback, as binary datagrams and as
+   *  OSC messages, and checks every field received against the frame sent with that sequence
+   *  number, that sequence numbers count every frame offered, and that frames offered once the
+   *  sender is closed are counted as dropped.
+   */
+
+class FrameSenderTest {
+  private static final int      FRAMES = 120;             // Per thread (both fit in the queue)
+  private static final FrameRate[] RATES = {null, FrameRate.FPS_25, FrameRate.FPS_29_97_DF};
+
+  // Frame number ii, from a drop frame encoder so bit 10 is set, with user bits that change every frame
+  private static long frame (int ii) {
+    LtcEncoder encoder = new LtcEncoder(new AudioFormat(48000, 16, 1, true, false), 0, FrameRate.FPS_29_97_DF);
+    encoder.setTimecode(TimecodeIndex.fromFrames(TimecodeIndex.toFrames(TimecodeIndex.pack(10, 9, 0, 2), 30, true) + ii, 30, true));
+    encoder.setUserBits(0x10203040 + ii);
+    return encoder.getFrame();
+  }
+
+  private static long sample (int ii) {
+    return 1_000_000_000L + ii * 1602L;
+  }
+
+  // Sends FRAMES frames from each of two threads (odd and even frame numbers, on streams 0x12 and 0x34),
+  // then closes sender and offers two more, returning the datagrams received, in order
+  private static List<ByteBuffer> sendAll (boolean osc) throws Exception {
+    try (DatagramChannel in = DatagramChannel.open()) {
+      in.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      in.configureBlocking(false);
+      InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(), ((InetSocketAddress) in.getLocalAddress()).getPort());
+      FrameSender sender = new FrameSender(new InetSocketAddress[] {target}, osc, null);
+      Thread[] threads = new Thread[2];
+      for (int tt = 0; tt < threads.length; tt++) {
+        int first = tt;
+        threads[tt] = new Thread(() -> {
+          for (int ii = first; ii < FRAMES * 2; ii += 2) {
+            sender.send(frame(ii), sample(ii), first == 0 ? 0x12 : 0x34, RATES[ii % 3], ii % 5 == 0);
+          }
+        });
+        threads[tt].start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      sender.close();
+      sender.send(frame(0), 0, 0, null, false);
+      sender.send(frame(1), 0, 0, null, false);
+      long[] stats = sender.getStats();
+      assertEquals(FRAMES * 2, stats[0], "frames sent");
+      assertEquals(2, stats[1], "frames dropped (offered once closed)");
+      List<ByteBuffer> received = new ArrayList<>();
+      long deadline = System.nanoTime() + 5_000_000_000L;
+      while (received.size() < FRAMES * 2 && System.nanoTime() < deadline) {
+        ByteBuffer buf = ByteBuffer.allocate(1500);
+        if (in.receive(buf) != null) {
+          buf.flip();
+          received.add(buf);
+        } else {
+          LockSupport.parkNanos(1_000_000);
+        }
+      }
+      assertEquals(FRAMES * 2, received.size(), "datagrams received");
+      return received;
+    }
+  }
+
+  // Returns the frame number (as passed to frame()) sent with the given stream and fields
+  private static int frameNumber (int stream, int timecode, int userBits) {
+    int ii = userBits - 0x10203040;
+    assertTrue(ii >= 0 && ii < FRAMES * 2, "user bits " + Integer.toHexString(userBits));
+    assertEquals((ii & 1) == 0 ? 0x12 : 0x34, stream, "stream of frame " + ii);
+    assertEquals(TimecodeIndex.pack(frame(ii)), timecode, "timecode of frame " + ii);
+    return ii;
+  }
+
+  private static float fps (int ii) {
+    return RATES[ii % 3] == null ? 0 : (int) (RATES[ii % 3].getRate() * 100) / 100f;
+  }
+
+  @Test
+  void binary () throws Exception {
+    List<ByteBuffer> received = sendAll(false);
+    int[] sequence = new int[received.size()];
+    boolean[] seen = new boolean[received.size()];
+    for (int dd = 0; dd < received.size(); dd++) {
+      ByteBuffer buf = received.get(dd);
+      assertEquals(FrameSender.BINARY_SIZE, buf.remaining(), "datagram size");
+      assertEquals(FrameSender.MAGIC, buf.getInt(), "magic");
+      sequence[dd] = buf.getInt();
+      int stream = buf.get() & 0xFF;
+      int flags = buf.get();
+      int rate = buf.getShort();
+      int ii = frameNumber(stream, buf.getInt(), buf.getInt());
+      assertFalse(seen[ii], "frame " + ii + " received twice");
+      seen[ii] = true;
+      assertEquals((ii % 5 == 0 ? 1 : 0) | 2, flags, "flags of frame " + ii);
+      assertEquals(Math.round(fps(ii) * 100), rate, "frame rate of frame " + ii);
+      assertEquals(frame(ii), buf.getLong(), "bits of frame " + ii);
+      assertEquals(sample(ii), buf.getLong(), "sample of frame " + ii);
+    }
+    // Sequence numbers count up from 0 in the order sent, whichever thread queued the frame
+    for (int dd = 0; dd < sequence.length; dd++) {
+      assertEquals(dd, sequence[dd], "sequence number of datagram " + dd);
+    }
+  }
+
+  // Reads a null terminated OSC string, padded to a multiple of 4 bytes
+  private static String oscString (ByteBuffer buf) {
+    int start = buf.position();
+    while (buf.get() != 0) { }
+    String text = new String(buf.array(), start, buf.position() - start - 1, StandardCharsets.US_ASCII);
+    buf.position((buf.position() + 3) & ~3);
+    return text;
+  }
+
+  @Test
+  void osc () throws Exception {
+    List<ByteBuffer> received = sendAll(true);
+    boolean[] seen = new boolean[received.size()];
+    char[] tc = new char[11];
+    for (ByteBuffer buf : received) {
+      assertEquals("/ltc/frame", oscString(buf), "address");
+      assertEquals(",isifih", oscString(buf), "type tags");
+      int stream = buf.getInt();
+      String timecode = oscString(buf);
+      int userBits = buf.getInt();
+      int ii = frameNumber(stream, TimecodeIndex.parse(timecode), userBits);
+      assertFalse(seen[ii], "frame " + ii + " received twice");
+      seen[ii] = true;
+      LtcDecoder.formatTimecode(frame(ii), tc, 0);
+      assertEquals(new String(tc), timecode, "timecode of frame " + ii);
+      assertEquals(fps(ii), buf.getFloat(), 0.001, "frame rate of frame " + ii);
+      assertEquals((ii % 5 == 0 ? 1 : 0) | 2, buf.getInt(), "flags of frame " + ii);
+      assertEquals(sample(ii), buf.getLong(), "sample of frame " + ii);
+      assertFalse(buf.hasRemaining(), "bytes after the message");
+    }
+  }
+}
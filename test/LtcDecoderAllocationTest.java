@@ -0,0 +1,70 @@
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+  /*
+   *  Checks that once warmed up, LtcDecoder.process() allocates nothing per frame, with a listener
+   *  that formats each frame as the Record tab does.
+   */
+
+class LtcDecoderAllocationTest implements LtcDecoder.FrameListener {
+  private static final int      SECONDS = 20;
+  private final char[]          line = new char[RecordLog.LINE];
+  private long                  frames;
+  private long                  checksum;
+
+  public void frameDecoded (long frame, long sample) {
+    int pos = LtcDecoder.formatTimecode(frame, line, 0);
+    line[pos++] = ' ';
+    pos = LtcDecoder.formatRaw(frame, line, pos);
+    checksum += line[pos - 1];
+    frames++;
+  }
+
+  // Returns 16 bit LTC at 48 kHz
+  private static byte[] generate (AudioFormat format) {
+    LtcEncoder encoder = new LtcEncoder(format, 0, 30, true);
+    encoder.setUserBits(0x12345678);
+    byte[] data = new byte[(int) format.getSampleRate() * 2 * SECONDS];
+    int len = 0;
+    while (len + encoder.getFrameBytes() <= data.length) {
+      len += encoder.encode(data, len);
+    }
+    return data;
+  }
+
+  // Feeds data to decoder in 4096 byte pieces, as the capture thread does
+  private static void decode (LtcDecoder decoder, byte[] data) {
+    for (int off = 0; off < data.length; off += 4096) {
+      decoder.process(data, off, Math.min(4096, data.length - off));
+    }
+  }
+
+  @Test
+  void noAllocationPerFrame () {
+    java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+    assumeTrue(mx instanceof com.sun.management.ThreadMXBean, "Allocation counting not available");
+    com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) mx;
+    assumeTrue(bean.isThreadAllocatedMemorySupported(), "Allocation counting not supported");
+    bean.setThreadAllocatedMemoryEnabled(true);
+    AudioFormat format = new AudioFormat(48000, 16, 1, true, false);
+    byte[] data = generate(format);
+    LtcDecoder decoder = new LtcDecoder(format, this);
+    // Warm up until the decoder is compiled
+    for (int ii = 0; ii < 20; ii++) {
+      decode(decoder, data);
+    }
+    long tid = Thread.currentThread().getId();
+    long before = frames;
+    long allocated = bean.getThreadAllocatedBytes(tid);
+    decode(decoder, data);
+    allocated = bean.getThreadAllocatedBytes(tid) - allocated;
+    long decoded = frames - before;
+    assertEquals(SECONDS * 30 * 1000 / 1001, decoded, 1, "frames decoded");
+    assertEquals(0, allocated, "bytes allocated decoding " + decoded + " frames");
+  }
+}
@@ -0,0 +1,36 @@
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+  /*
+   *  Checks that with PLL bit clock recovery the classic slicer's count of samples since the last
+   *  edge is rebased with each bit, rather than growing for as long as the decoder runs.
+   */
+
+class LtcDecoderTest {
+  private long                  frames;
+
+  @Test
+  void pllRebasesInterval () {
+    AudioFormat format = new AudioFormat(48000, 16, 1, true, false);
+    LtcEncoder encoder = new LtcEncoder(format, 0, FrameRate.FPS_30);
+    byte[] data = new byte[48000 * 2 * 10];
+    int len = 0;
+    while (len + encoder.getFrameBytes() <= data.length) {
+      len += encoder.encode(data, len);
+    }
+    LtcDecoder decoder = new LtcDecoder(format, (frame, sample) -> frames++);
+    decoder.setPll(true);
+    for (int off = 0; off < len; off += 4096) {
+      decoder.process(data, off, Math.min(4096, len - off));
+    }
+    // The PLL passes frames on once it has locked and clocked a whole frame of bits
+    assertEquals(300, frames, 4, "frames decoded");
+    int[] state = new int[LtcDecoder.STATE_SIZE];
+    decoder.saveState(state, 0);
+    // 80 bits per frame, so a bit is 20 samples
+    assertTrue(state[6] <= 20, "samples counted since the last bit: " + state[6]);
+  }
+}
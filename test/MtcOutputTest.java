@@ -0,0 +1,191 @@
+import org.junit.jupiter.api.Test;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.sampled.AudioFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+  /*
+   *  Feeds LTC to MtcOutput in real time, as the capture thread would, and checks what reaches the
+   *  Receiver: a full frame SysEx message when timecode starts and when it jumps, and in between
+   *  quarter frames a quarter of a frame apart, in piece order, carrying timecode that advances by
+   *  two frames every 8 pieces.
+   */
+
+class MtcOutputTest implements Receiver {
+  private static final int      RATE = 48000;
+  private static final int      FPS = 25;
+  private static final int      PERIOD = RATE / FPS;      // Samples per frame
+  private static final int      CHUNK = 1024;             // Samples per capture read
+  private static final int      BEFORE = 3 * FPS;         // Frames before the jump
+  private static final int      AFTER = 2 * FPS;          // Frames after the jump
+  private static final int      START = TimecodeIndex.pack(1, 0, 0, 0);
+  private static final int      JUMP = TimecodeIndex.pack(10, 0, 0, 0);
+  private final List<long[]>    received = new ArrayList<>();   // {arrival nanos, bytes...}
+
+  public synchronized void send (MidiMessage message, long timeStamp) {
+    byte[] bytes = message.getMessage();
+    long[] entry = new long[message.getLength() + 1];
+    entry[0] = System.nanoTime();
+    for (int ii = 0; ii < message.getLength(); ii++) {
+      entry[ii + 1] = bytes[ii] & 0xFF;
+    }
+    received.add(entry);
+  }
+
+  public void close () { }
+
+  private static boolean isQuarterFrame (long[] entry) {
+    return entry.length == 3 && entry[1] == 0xF1;
+  }
+
+  // Returns the timecode of a full frame SysEx message, or -1 if it isn't one
+  private static int fullFrame (long[] entry) {
+    long[] header = {0xF0, 0x7F, 0x7F, 0x01, 0x01};
+    if (entry.length != 11 || !Arrays.equals(header, Arrays.copyOfRange(entry, 1, 6)) || entry[10] != 0xF7) {
+      return -1;
+    }
+    assertEquals(1, entry[6] >> 5, "full frame rate code");
+    return TimecodeIndex.pack((int) entry[6] & 0x1F, (int) entry[7], (int) entry[8], (int) entry[9]);
+  }
+
+  // Returns LTC for the frames before and after the jump
+  private static byte[] generate (AudioFormat format) {
+    LtcEncoder encoder = new LtcEncoder(format, 0, FPS, false);
+    encoder.setTimecode(START);
+    byte[] data = new byte[(BEFORE + AFTER) * PERIOD * 2];
+    int len = 0;
+    for (int ii = 0; ii < BEFORE + AFTER; ii++) {
+      if (ii == BEFORE) {
+        encoder.setTimecode(JUMP);
+      }
+      len += encoder.encode(data, len);
+    }
+    assertEquals(data.length, len, "bytes generated");
+    return data;
+  }
+
+  @Test
+  void quarterFramesAndResync () {
+    AudioFormat format = new AudioFormat(RATE, 16, 1, true, false);
+    byte[] data = generate(format);
+    FrameClock clock = new FrameClock(RATE);
+    LtcDecoder decoder = new LtcDecoder(format, clock);
+    MtcOutput mtc = new MtcOutput(this, clock, decoder, RATE);
+    decoder.addListener(mtc);
+    // Feed the decoder a read at a time, each once the capture clock has reached its end
+    long start = System.nanoTime();
+    long jumped = start + (long) BEFORE * PERIOD * 1_000_000_000L / RATE;
+    for (int off = 0; off < data.length; off += CHUNK * 2) {
+      int count = Math.min(CHUNK * 2, data.length - off);
+      long due = start + (long) (off + count) / 2 * 1_000_000_000L / RATE;
+      long wait;
+      while ((wait = due - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      clock.update((off + count) / 2, System.nanoTime());
+      decoder.process(data, off, count);
+    }
+    mtc.close();
+    List<long[]> messages;
+    synchronized (this) {
+      messages = new ArrayList<>(received);
+    }
+    assertFalse(messages.isEmpty(), "no messages received");
+    // Timecode starts with a full frame message
+    int first = fullFrame(messages.get(0));
+    assertTrue(first >= 0, "first message should be full frame SysEx");
+    assertEquals(START >> 8, first >> 8, "timecode of first full frame message " + TimecodeIndex.format(first));
+    // Then quarter frames follow in piece order, a quarter frame apart, until the jump
+    long quarter = 1_000_000_000L / FPS / 4;
+    List<Long> intervals = new ArrayList<>();
+    List<Integer> timecodes = new ArrayList<>();
+    int resync = -1;
+    int piece = -1;
+    int[] pieces = new int[8];
+    long[] begin = null;
+    long[] last = null;
+    int sent = 0;
+    // How far each quarter frame arrived from a quarter frame at a time after the first of its sequence
+    List<List<Long>> deviations = new ArrayList<>();
+    for (int ii = 1; ii < messages.size(); ii++) {
+      long[] entry = messages.get(ii);
+      if (!isQuarterFrame(entry)) {
+        int timecode = fullFrame(entry);
+        assertTrue(timecode >= 0, "unexpected message at " + ii);
+        assertEquals(-1, resync, "only one full frame message expected after the first");
+        assertTrue(entry[0] > jumped, "full frame message " + TimecodeIndex.format(timecode) + " before the jump");
+        assertEquals(JUMP >> 8, timecode >> 8, "timecode of full frame message after the jump " + TimecodeIndex.format(timecode));
+        resync = ii;
+        piece = -1;
+        begin = last = null;
+        continue;
+      }
+      int value = (int) entry[2];
+      if (piece >= 0) {
+        assertEquals((piece + 1) & 7, value >> 4, "quarter frame piece at " + ii);
+      } else {
+        assertEquals(0, value >> 4, "quarter frames should start with piece 0");
+      }
+      piece = value >> 4;
+      pieces[piece] = value & 0x0F;
+      if (piece == 7) {
+        assertEquals(1, pieces[7] >> 1, "quarter frame rate code");
+        timecodes.add(TimecodeIndex.pack(pieces[6] | (pieces[7] & 1) << 4, pieces[4] | pieces[5] << 4, pieces[2] | pieces[3] << 4,
+                                         pieces[0] | pieces[1] << 4));
+      }
+      if (begin == null) {
+        begin = entry;
+        sent = 0;
+        deviations.add(new ArrayList<>());
+      } else {
+        intervals.add(entry[0] - last[0]);
+        deviations.get(deviations.size() - 1).add(entry[0] - begin[0] - ++sent * quarter);
+      }
+      last = entry;
+    }
+    assertTrue(resync > 0, "no full frame message after the jump");
+    assertEquals(messages.size(), mtc.getStats()[0], "messages counted");
+    // Each 8 pieces carries timecode two frames on from the 8 before, except across the jump
+    int before = 0, after = 0;
+    for (int ii = 0; ii < timecodes.size(); ii++) {
+      int timecode = timecodes.get(ii);
+      if (timecode >>> 24 == (START >>> 24)) {
+        assertEquals(0, after, "quarter frames from before the jump sent after it");
+        before++;
+      } else {
+        assertEquals(JUMP >>> 24, timecode >>> 24, "quarter frame timecode " + TimecodeIndex.format(timecode));
+        after++;
+      }
+      if (ii > 0 && (timecodes.get(ii - 1) >>> 24) == (timecode >>> 24)) {
+        assertEquals(TimecodeIndex.toFrames(timecodes.get(ii - 1), FPS, false) + 2, TimecodeIndex.toFrames(timecode, FPS, false),
+                     "timecode after " + TimecodeIndex.format(timecodes.get(ii - 1)));
+      }
+    }
+    // Quarter frames start two frames after each full frame message and stop within MAX_MISSING frames of the end
+    assertTrue(before >= (BEFORE - 8) / 2, "quarter frame sequences before the jump: " + before);
+    assertTrue(after >= (AFTER - 8) / 2, "quarter frame sequences after the jump: " + after);
+    // A quarter of a frame apart, allowing for the odd message delayed by scheduling jitter (the
+    // messages after it are still sent when due, so jitter doesn't accumulate).  Deviations are
+    // taken from their median, as the first message of a sequence may itself have been late
+    intervals.sort(null);
+    assertEquals(quarter, intervals.get(intervals.size() / 2), quarter / 50, "median quarter frame spacing");
+    int count = 0, onTime = 0;
+    for (List<Long> sequence : deviations) {
+      List<Long> sorted = new ArrayList<>(sequence);
+      sorted.sort(null);
+      for (long deviation : sequence) {
+        if (Math.abs(deviation - sorted.get(sorted.size() / 2)) < quarter / 5) {
+          onTime++;
+        }
+        count++;
+      }
+    }
+    assertTrue(onTime >= count * 4 / 5, onTime + " of " + count + " quarter frames within 20% of a quarter frame of when due");
+  }
+}
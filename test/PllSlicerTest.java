@@ -0,0 +1,118 @@
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+  /*
+   *  Loops LtcEncoder output through LtcDecoder with the PLL at every frame rate from 1/10 to 10x
+   *  play speed, and played backwards, and checks that every frame decoded is one generated, in
+   *  order, and that none are missed once the loop has locked.  Up to 4x runs at 48 kHz, and
+   *  faster at 192 kHz, as a half bit has to span a couple of samples.
+   */
+
+class PllSlicerTest {
+  private static final int      FRAMES = 60;
+  private static final double[] SPEEDS = {0.1, 0.25, 0.5, 1, 1.3, 2, 4, 7, 10};
+
+  // LTC for FRAMES frames, with the packed bits of each frame generated
+  private static class Signal {
+    final AudioFormat           format;
+    final long[]                sent = new long[FRAMES];
+    byte[]                      data;
+    int                         len;
+
+    Signal (FrameRate rate, double speed) {
+      format = new AudioFormat(speed > 4 ? 192000 : 48000, 16, 1, true, false);
+      LtcEncoder encoder = new LtcEncoder(format, 0, rate);
+      encoder.setTimecode(TimecodeIndex.pack(1, 2, 3, 4));
+      encoder.setUserBits(0x12345678);
+      encoder.setSpeed(speed);
+      data = new byte[encoder.getFrameBytes() * FRAMES];
+      for (int ii = 0; ii < FRAMES; ii++) {
+        sent[ii] = encoder.getFrame();
+        len += encoder.encode(data, len);
+      }
+    }
+
+    // Reverses the samples, as played backwards
+    void reverse () {
+      for (int ii = 0, jj = len - 2; ii < jj; ii += 2, jj -= 2) {
+        byte lo = data[ii], hi = data[ii + 1];
+        data[ii] = data[jj];
+        data[ii + 1] = data[jj + 1];
+        data[jj] = lo;
+        data[jj + 1] = hi;
+      }
+    }
+  }
+
+  // Decodes signal with the PLL, returning the frames decoded
+  private static List<Long> decode (Signal signal, LtcDecoder[] decoder) {
+    List<Long> frames = new ArrayList<>();
+    decoder[0] = new LtcDecoder(signal.format, (frame, sample) -> frames.add(frame));
+    decoder[0].setPll(true);
+    for (int off = 0; off < signal.len; off += 4096) {
+      decoder[0].process(signal.data, off, Math.min(4096, signal.len - off));
+    }
+    return frames;
+  }
+
+  // Checks frames are consecutive frames of sent (in order, or in reverse), missing none but the first few
+  private static void check (String what, long[] sent, List<Long> frames, boolean reversed) {
+    assertTrue(frames.size() >= FRAMES - 3, what + ": " + frames.size() + " of " + FRAMES + " frames decoded");
+    int first = -1;
+    for (int ii = 0; ii < FRAMES && first < 0; ii++) {
+      if (sent[ii] == frames.get(0)) {
+        first = ii;
+      }
+    }
+    assertTrue(first >= 0, what + ": frame not generated " + Long.toHexString(frames.get(0)));
+    for (int ii = 0; ii < frames.size(); ii++) {
+      int idx = reversed ? first - ii : first + ii;
+      assertTrue(idx >= 0 && idx < FRAMES, what + ": too many frames decoded");
+      assertEquals(sent[idx], (long) frames.get(ii), what + ": frame " + ii);
+    }
+  }
+
+  @Test
+  void roundTrip () {
+    for (FrameRate rate : FrameRate.values()) {
+      for (double speed : SPEEDS) {
+        Signal signal = new Signal(rate, speed);
+        LtcDecoder[] decoder = new LtcDecoder[1];
+        check(rate + " at " + speed + "x", signal.sent, decode(signal, decoder), false);
+        assertTrue(decoder[0].isLocked(), rate + " at " + speed + "x not locked");
+      }
+    }
+  }
+
+  @Test
+  void reverse () {
+    for (FrameRate rate : FrameRate.values()) {
+      for (double speed : new double[] {0.5, 1, 2}) {
+        Signal signal = new Signal(rate, speed);
+        signal.reverse();
+        LtcDecoder[] decoder = new LtcDecoder[1];
+        check(rate + " at -" + speed + "x", signal.sent, decode(signal, decoder), true);
+      }
+    }
+  }
+
+  @Test
+  void speedFromDetectedRate () {
+    for (FrameRate rate : FrameRate.values()) {
+      for (double speed : new double[] {1, -1}) {
+        Signal signal = new Signal(rate, 1);
+        if (speed < 0) {
+          signal.reverse();
+        }
+        LtcDecoder[] decoder = new LtcDecoder[1];
+        decode(signal, decoder);
+        assertEquals(speed, decoder[0].getSpeed(), 0.01, rate + " speed");
+      }
+    }
+  }
+}
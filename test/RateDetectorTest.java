@@ -0,0 +1,85 @@
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+  /*
+   *  Loops LtcEncoder output through LtcDecoder at 22.05 kHz, where 29.97 and 30 fps frames are
+   *  less than a sample apart, and checks that the rate reported for each frame is never the
+   *  wrong one of the pair, and is known within a few frames.  Each rate is tried with the LTC
+   *  starting at several points within a sample, and with noise added, so the SYNC positions
+   *  jitter as they would from a real capture.
+   */
+
+class RateDetectorTest {
+  private static final float    RATE = 22050;
+  private static final int      FRAMES = 100;
+  private static final int      KNOWN_BY = 8;             // Frames decoded before the rate must be known
+
+  // Returns the rate the decoder reported for each frame decoded, with LTC starting after lead samples
+  private static List<FrameRate> decode (FrameRate rate, int lead, Random random) {
+    AudioFormat format = new AudioFormat(RATE, 16, 1, true, false);
+    LtcEncoder encoder = new LtcEncoder(format, 0, rate);
+    byte[] data = new byte[(int) (FRAMES * RATE / rate.getRate() + lead) * 2];
+    int len = lead * 2;
+    while (len + encoder.getFrameBytes() <= data.length) {
+      len += encoder.encode(data, len);
+    }
+    // Gaussian noise at 1/8 of the signal level
+    for (int ii = 0; ii < len; ii += 2) {
+      int sample = (short) (data[ii] & 0xFF | data[ii + 1] << 8) + (int) (random.nextGaussian() * 2000);
+      sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+      data[ii] = (byte) sample;
+      data[ii + 1] = (byte) (sample >> 8);
+    }
+    List<FrameRate> rates = new ArrayList<>();
+    LtcDecoder[] decoder = new LtcDecoder[1];
+    decoder[0] = new LtcDecoder(format, (frame, sample) -> rates.add(decoder[0].getFrameRate()));
+    // Capture sized reads, so frames are classified as they arrive
+    for (int off = 0; off < len; off += 1024) {
+      decoder[0].process(data, off, Math.min(1024, len - off));
+    }
+    return rates;
+  }
+
+  private static void check (FrameRate rate) {
+    Random random = new Random(rate.ordinal());
+    for (int lead = 0; lead < 40; lead++) {
+      List<FrameRate> rates = decode(rate, lead, random);
+      assertTrue(rates.size() >= FRAMES - 4, rate + " frames decoded: " + rates.size());
+      for (int ii = 0; ii < rates.size(); ii++) {
+        FrameRate found = rates.get(ii);
+        if (ii >= KNOWN_BY - 1) {
+          assertNotNull(found, rate + " not known by frame " + (ii + 1));
+        }
+        if (found != null) {
+          assertEquals(rate, found, "rate of frame " + (ii + 1) + " after " + lead + " samples");
+        }
+      }
+    }
+  }
+
+  @Test
+  void tells2997From30 () {
+    check(FrameRate.FPS_29_97);
+    check(FrameRate.FPS_30);
+    check(FrameRate.FPS_29_97_DF);
+    check(FrameRate.FPS_30_DF);
+  }
+
+  @Test
+  void tells23976From24 () {
+    check(FrameRate.FPS_23_976);
+    check(FrameRate.FPS_24);
+  }
+
+  @Test
+  void knows25AtOnce () {
+    List<FrameRate> rates = decode(FrameRate.FPS_25, 0, new Random(0));
+    assertEquals(FrameRate.FPS_25, rates.get(1), "rate of frame 2");
+  }
+}
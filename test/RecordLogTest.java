@@ -0,0 +1,69 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+  /*
+   *  Checks that frames the spool writer couldn't keep up with are marked by a Gap row in the
+   *  saved recording, and that clear() discards frames queued before it.
+   */
+
+class RecordLogTest {
+  private static final long     FRAME = TimecodeIndex.setTimecode(0, TimecodeIndex.pack(1, 2, 3, 4));
+
+  private static List<String> save (RecordLog log) throws Exception {
+    File file = File.createTempFile("RecordLogTest", ".txt");
+    file.deleteOnExit();
+    CompletableFuture<IOException> done = new CompletableFuture<>();
+    assertTrue(log.save(file, done::complete));
+    assertNull(done.get(10, TimeUnit.SECONDS));
+    return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void droppedFramesLeaveGap () throws Exception {
+    RecordLog log = new RecordLog(10);
+    log.setType("Timecode");
+    // Far more than the spool queue holds, faster than the spool writer (which wakes every 100 ms) takes them
+    int added = 200000;
+    for (int ii = 0; ii < added; ii++) {
+      log.add(FRAME, ii);
+    }
+    log.add(RecordLog.STOPPED, added);
+    long dropped = log.getSpoolDropped();
+    assertTrue(dropped > 0, "spool queue should have overflowed");
+    List<String> lines = save(log);
+    long gaps = 0, frames = 0;
+    for (String line : lines) {
+      if (line.startsWith("Gap: ")) {
+        gaps += Long.parseLong(line.substring(5, line.indexOf(' ', 5)));
+      } else if (line.equals("01:02:03:04")) {
+        frames++;
+      }
+    }
+    assertEquals("Stopped", lines.get(lines.size() - 1));
+    assertEquals(dropped, gaps, "frames in Gap rows");
+    assertEquals(added, frames + gaps, "frames saved or in Gap rows");
+  }
+
+  @Test
+  void clearDiscardsQueuedFrames () throws Exception {
+    RecordLog log = new RecordLog(10);
+    log.setType("Timecode");
+    for (int ii = 0; ii < 1000; ii++) {
+      log.add(FRAME, ii);
+    }
+    log.clear();
+    log.add(RecordLog.STOPPED, 1000);
+    List<String> lines = save(log);
+    assertEquals(1, lines.size(), "lines saved: " + lines.size());
+    assertEquals("Stopped", lines.get(0));
+  }
+}
@@ -0,0 +1,48 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+  /*
+   *  Writes a binary capture of 25 fps timecode and replays it as fast as it can be read, checking
+   *  that every frame reaches the listeners of the replay's decoder, in order and at its recorded
+   *  sample position, and that the decoder measures the frame rate from them as it would live.
+   */
+
+class ReplaySourceTest {
+  private static final int      FRAMES = 100;
+  private static final int      PERIOD = 48000 / 25;
+
+  @Test
+  void framesReachDecoderListeners () throws Exception {
+    File file = File.createTempFile("ReplaySourceTest", ".ltcb");
+    file.deleteOnExit();
+    long first = TimecodeIndex.toFrames(TimecodeIndex.pack(1, 2, 3, 0), 25, false);
+    try (CaptureFile.Writer out = new CaptureFile.Writer(file, 48000)) {
+      for (int ii = 0; ii < FRAMES; ii++) {
+        out.write(TimecodeIndex.setTimecode(0, TimecodeIndex.fromFrames(first + ii, 25, false)), 1000 + (long) ii * PERIOD,
+                  ii * 40_000_000L);
+      }
+    }
+    ReplaySource replay = new ReplaySource(file, 0, null);
+    LtcDecoder decoder = replay.getDecoder();
+    List<long[]> frames = new ArrayList<>();
+    List<FrameRate> rates = new ArrayList<>();
+    decoder.addListener((frame, sample) -> {
+      frames.add(new long[] {frame, sample});
+      rates.add(decoder.getFrameRate());
+    });
+    replay.start();
+    replay.join();
+    assertEquals(FRAMES, frames.size(), "frames replayed");
+    assertEquals(FRAMES, replay.getFrames(), "frames counted");
+    for (int ii = 0; ii < FRAMES; ii++) {
+      assertEquals(TimecodeIndex.fromFrames(first + ii, 25, false), TimecodeIndex.pack(frames.get(ii)[0]), "timecode of frame " + ii);
+      assertEquals(1000 + (long) ii * PERIOD, frames.get(ii)[1], "sample of frame " + ii);
+    }
+    assertEquals(FrameRate.FPS_25, rates.get(FRAMES - 1), "frame rate");
+  }
+}
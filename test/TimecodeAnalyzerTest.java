@@ -0,0 +1,207 @@
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+  /*
+   *  Feeds frames straight to a TimecodeAnalyzer channel (at 30 fps, as no decoder measures the
+   *  rate) and checks the events written for jumps, repeats, skips, dropouts, drop frame
+   *  numbering and user bit changes.  Then decodes two channels of LTC generated at slightly
+   *  different speeds, the second starting later, and checks the offset and drift measured
+   *  between them.
+   */
+
+class TimecodeAnalyzerTest {
+  private static final int      RATE = 48000;
+  private static final int      PERIOD = RATE / 30;
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private final TimecodeAnalyzer analyzer = new TimecodeAnalyzer(new PrintStream(out, true), RATE);
+  private final TimecodeAnalyzer.Channel channel = analyzer.addChannel("A", null);
+  private long                  sample = 1000;
+  private int                   last;                     // Timecode of the last frame fed
+  private boolean               drop;                     // Drop frame flag of the frames fed
+  private int                   userBits = 0x12345678;
+
+  // Feeds a frame with the given timecode, the given number of frame periods after the last
+  private void feed (int timecode, int periods) {
+    long frame = TimecodeIndex.setTimecode(drop ? 0x400 : 0, timecode);
+    for (int ii = 0; ii < 4; ii++) {
+      int ub = (userBits >>> (ii * 8)) & 0xFF;
+      frame |= (long) ((ub & 0x0F) << 4 | (ub & 0xF0) << 8) << (ii * 16);
+    }
+    sample += (long) periods * PERIOD;
+    last = timecode;
+    channel.frameDecoded(frame, sample);
+  }
+
+  private void feed (String timecode, int periods) {
+    feed(TimecodeIndex.parse(timecode), periods);
+  }
+
+  // Feeds count frames following on from the last (or starting at timecode, if given)
+  private void run (String timecode, int count) {
+    long frames = timecode != null ? TimecodeIndex.toFrames(TimecodeIndex.parse(timecode), 30, drop) :
+                                     TimecodeIndex.toFrames(last, 30, drop) + 1;
+    for (int ii = 0; ii < count; ii++) {
+      feed(TimecodeIndex.fromFrames(frames + ii, 30, drop), 1);
+    }
+  }
+
+  // Returns the events written so far, as "kind: detail"
+  private List<String> events () {
+    List<String> events = new ArrayList<>();
+    for (String line : out.toString().split("\n")) {
+      String[] fields = line.split("\t");
+      if (fields.length == 5) {
+        assertEquals("A", fields[0], "channel");
+        events.add(fields[3] + ": " + fields[4]);
+      }
+    }
+    return events;
+  }
+
+  private void assertEvents (String... expected) {
+    assertEquals(Arrays.asList(expected), events());
+  }
+
+  @Test
+  void continuous () {
+    run("01:00:00:00", 200);
+    assertEvents();
+    String report = analyzer.report();
+    assertTrue(report.contains("A: 200 frames, 01:00:00:00 to 01:00:06:19"), report);
+    assertTrue(report.contains("longest continuous run 200 frames"), report);
+    assertTrue(report.contains("0 jump, 0 repeat, 0 skip, 0 dropout, 0 drop frame, 0 user bits"), report);
+  }
+
+  @Test
+  void jump () {
+    run("01:00:00:00", 100);
+    feed("02:00:00:00", 1);
+    run(null, 50);
+    feed("00:59:00:00", 1);
+    assertEvents("jump: from 01:00:03:09", "jump: from 02:00:01:20");
+  }
+
+  @Test
+  void repeat () {
+    run("01:00:00:00", 50);
+    feed("01:00:01:19", 1);
+    run(null, 10);
+    assertEvents("repeat: 1 frames repeated");
+  }
+
+  @Test
+  void skip () {
+    run("01:00:00:00", 50);
+    feed("01:00:01:22", 1);
+    run(null, 10);
+    assertEvents("skip: 2 frames skipped after 01:00:01:19");
+  }
+
+  @Test
+  void dropout () {
+    run("01:00:00:00", 50);
+    feed("01:00:01:22", 3);
+    run(null, 10);
+    assertEvents("dropout: 2 frames missing");
+    assertTrue(analyzer.report().contains("longest continuous run 63 frames"), analyzer.report());
+  }
+
+  @Test
+  void dropFrameNumbering () {
+    drop = true;
+    // ;00 and ;01 are skipped at 01:01:00, but not at the tenth minute 01:10:00
+    run("01:00:59;20", 20);
+    run("01:09:59;20", 20);
+    assertEvents("jump: from 01:01:00:11");
+    assertEquals(TimecodeIndex.parse("01:10:00;09"), last, "last frame");
+  }
+
+  @Test
+  void dropFrameMissingAtTenthMinute () {
+    drop = true;
+    run("01:09:59;00", 30);
+    feed("01:10:00;02", 1);
+    run(null, 10);
+    assertEvents("drop frame: frames dropped at a tenth minute");
+  }
+
+  @Test
+  void dropFrameNotDropped () {
+    drop = true;
+    run("01:00:59;00", 30);
+    feed("01:01:00;00", 1);
+    feed("01:01:00;01", 1);
+    run(null, 10);
+    assertEvents("drop frame: frame number should have been dropped", "drop frame: frame number should have been dropped");
+  }
+
+  @Test
+  void dropFrameFlag () {
+    run("01:00:00:00", 30);
+    drop = true;
+    run(null, 10);
+    assertEvents("drop frame: drop frame flag set");
+  }
+
+  @Test
+  void userBits () {
+    run("01:00:00:00", 30);
+    userBits = 0x12345679;
+    run(null, 10);
+    assertEvents("user bits: 12345678 -> 12345679");
+  }
+
+  @Test
+  void offsetAndDrift () {
+    // Channel B starts delay samples after A and runs ppm faster
+    final int delay = 480, seconds = 60;
+    final double ppm = 50;
+    AudioFormat format = new AudioFormat(RATE, 16, 2, true, false);
+    byte[] data = new byte[(seconds * RATE + RATE) * format.getFrameSize()];
+    LtcEncoder a = new LtcEncoder(format, 0, FrameRate.FPS_25);
+    LtcEncoder b = new LtcEncoder(format, 1, FrameRate.FPS_25);
+    a.setTimecode(TimecodeIndex.pack(1, 0, 0, 0));
+    b.setTimecode(TimecodeIndex.pack(1, 0, 0, 0));
+    b.setSpeed(1 + ppm * 1e-6);
+    int end = seconds * RATE * format.getFrameSize();
+    for (int pos = 0; pos < end; ) {
+      pos += a.encode(data, pos);
+    }
+    for (int pos = delay * format.getFrameSize(); pos < end; ) {
+      pos += b.encode(data, pos);
+    }
+    MultiChannelDecoder decoder = new MultiChannelDecoder(format, new LtcDecoder.FrameListener[] {(f, s) -> { }, (f, s) -> { }});
+    TimecodeAnalyzer pair = new TimecodeAnalyzer(null, RATE);
+    decoder.getDecoder(0).addListener(pair.addChannel("A", decoder.getDecoder(0)));
+    decoder.getDecoder(1).addListener(pair.addChannel("B", decoder.getDecoder(1)));
+    for (int off = 0; off < end; off += 4096) {
+      decoder.process(data, off, Math.min(4096, end - off));
+    }
+    String report = pair.report();
+    assertTrue(report.contains("frame rate 25"), report);
+    // Each channel against the sample clock
+    Matcher clock = Pattern.compile("([+-][0-9.]+) ppm against the sample clock").matcher(report);
+    assertTrue(clock.find(), report);
+    assertEquals(0, Double.parseDouble(clock.group(1)), 2, "A against the sample clock");
+    assertTrue(clock.find(), report);
+    assertEquals(ppm, Double.parseDouble(clock.group(1)), 2, "B against the sample clock");
+    assertTrue(report.contains("0 offset jumps"), report);
+    // B's frames start delay samples late, and come ppm sooner for every sample on
+    Matcher offset = Pattern.compile("offset (-?[0-9.]+) samples").matcher(report);
+    assertTrue(offset.find(), report);
+    assertEquals(delay - ppm * 1e-6 * RATE * seconds / 2, Double.parseDouble(offset.group(1)), 5, "mean offset");
+    Matcher drift = Pattern.compile("drift ([+-][0-9.]+) ppm").matcher(report);
+    assertTrue(drift.find(), report);
+    assertEquals(-ppm, Double.parseDouble(drift.group(1)), 1, "drift");
+  }
+}
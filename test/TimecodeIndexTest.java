@@ -0,0 +1,77 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+  /*
+   *  Checks that seeking a 29.97 drop frame index finds the frames it holds, and rejects timecodes
+   *  that drop frame skips or that aren't timecodes at all, and that a short retake doesn't hide
+   *  the longer take it overlaps.
+   */
+
+class TimecodeIndexTest {
+  private static final double   PERIOD = 48000 * 1.001 / 30;
+
+  // Returns an index of one run of 29.97 drop frame timecode from 01:00:59;00 to 01:01:02;29
+  private static TimecodeIndex build () throws Exception {
+    TimecodeIndex.Builder builder = new TimecodeIndex.Builder();
+    long first = TimecodeIndex.toFrames(TimecodeIndex.pack(1, 0, 59, 0), 30, true);
+    for (int ii = 0; ii < 118; ii++) {
+      int timecode = TimecodeIndex.fromFrames(first + ii, 30, true);
+      builder.frameDecoded(TimecodeIndex.setTimecode(0x400, timecode), Math.round(ii * PERIOD));
+    }
+    assertEquals(1, builder.getRunCount(), "runs");
+    File file = File.createTempFile("TimecodeIndexTest", ".ltcx");
+    file.deleteOnExit();
+    builder.write(file);
+    return TimecodeIndex.open(file);
+  }
+
+  @Test
+  void seekDropFrame () throws Exception {
+    TimecodeIndex index = build();
+    assertEquals(0, index.seek(TimecodeIndex.parse("01:00:59;00")));
+    assertEquals(Math.round(29 * PERIOD), index.seek(TimecodeIndex.parse("01:00:59;29")), 1);
+    // 01:01:00;00 and ;01 are skipped, so ;02 follows 01:00:59;29
+    assertEquals(-1, index.seek(TimecodeIndex.parse("01:01:00;00")));
+    assertEquals(-1, index.seek(TimecodeIndex.parse("01:01:00;01")));
+    assertEquals(Math.round(30 * PERIOD), index.seek(TimecodeIndex.parse("01:01:00;02")), 1);
+    assertEquals(Math.round(117 * PERIOD), index.seek(TimecodeIndex.parse("01:01:02;29")), 1);
+    assertEquals(-1, index.seek(TimecodeIndex.parse("01:01:03;00")));
+    assertEquals(-1, index.seek(TimecodeIndex.parse("01:00:58;29")));
+  }
+
+  @Test
+  void seekInvalid () throws Exception {
+    TimecodeIndex index = build();
+    assertEquals(-1, index.seek(TimecodeIndex.parse("01:00:60;02")));
+    assertEquals(-1, index.seek(TimecodeIndex.parse("01:00:59;30")));
+    assertEquals(-1, index.seek(TimecodeIndex.parse("00:60:59;00")));
+  }
+
+  @Test
+  void seekOverlappingRuns () throws Exception {
+    // A 250 frame take at 25 fps from 01:00:00:00, then a 10 frame retake from 01:00:05:00
+    TimecodeIndex.Builder builder = new TimecodeIndex.Builder();
+    long sample = 0;
+    for (int ii = 0; ii < 250; ii++, sample += 1920) {
+      builder.frameDecoded(TimecodeIndex.setTimecode(0, TimecodeIndex.fromFrames(90000 + ii, 25, false)), sample);
+    }
+    long retake = sample + 48000;
+    for (int ii = 0; ii < 10; ii++) {
+      builder.frameDecoded(TimecodeIndex.setTimecode(0, TimecodeIndex.pack(1, 0, 5, ii)), retake + ii * 1920);
+    }
+    assertEquals(2, builder.getRunCount(), "runs");
+    File file = File.createTempFile("TimecodeIndexTest", ".ltcx");
+    file.deleteOnExit();
+    builder.write(file);
+    TimecodeIndex index = TimecodeIndex.open(file);
+    // Covered only by the first take, past the end of the retake
+    assertEquals(336000, index.seek(TimecodeIndex.parse("01:00:07:00")));
+    // Covered by both, so the earlier take is used
+    assertEquals(128 * 1920, index.seek(TimecodeIndex.parse("01:00:05:03")));
+    assertEquals(0, index.seek(TimecodeIndex.parse("01:00:00:00")));
+    assertEquals(-1, index.seek(TimecodeIndex.parse("01:00:10:00")));
+  }
+}
@@ -0,0 +1,93 @@
+import jdk.incubator.vector.*;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+  /*
+   *  SampleScanner using the Vector API (jdk.incubator.vector, Java 17+).  Each step takes one
+   *  vector of samples (8 at a time with AVX2, 16 with AVX-512) and computes its crossings mask,
+   *  absolute values and squares with no per-sample branches.  The sample before each lane comes
+   *  from slicing the previous vector into this one, so every sample is loaded once.
+   *
+   *  The crossing test is done with sign bit arithmetic rather than VectorMask operations, and the
+   *  lane bits gathered with a shift and OR reduction rather than VectorMask.toLong(), as Java 17
+   *  boxes masks for those, which would allocate on every step.  Mono 16 bit PCM is unpacked
+   *  straight from the byte array in the same step.  Other encodings and interleaved channels are
+   *  unpacked by LtcDecoder.unpack() first and then scanned from the int array.
+   *
+   *  Loaded by SampleScanner.get(), so this class is only touched when the module is present.
+   */
+
+class VectorScanner extends SampleScanner {
+  private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Short>   SHORTS = VectorSpecies.of(short.class, VectorShape.forBitSize(INTS.vectorBitSize() / 2));
+  private static final int                    LANES = INTS.length();
+  private static final IntVector              LANE_INDEX = IntVector.zero(INTS).addIndex(1);
+
+  VectorScanner () {
+    // Lane bits are gathered in an int, and placed in the edges bitmask a whole vector at a time
+    if (LANES > 32 || 64 % LANES != 0) {
+      throw new UnsupportedOperationException("Unsupported vector length: " + LANES);
+    }
+  }
+
+  @Override
+  String getName () {
+    return "vector " + INTS.vectorBitSize() + " bit";
+  }
+
+  @Override
+  int scan (int encoding, byte[] src, int offset, int stride, int count, int[] dst, int last, int threshold,
+            long[] edges, long[] sums) {
+    boolean direct = stride == 2 && (encoding == LtcDecoder.PCM16BE || encoding == LtcDecoder.PCM16LE);
+    ByteOrder order = encoding == LtcDecoder.PCM16LE ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+    if (!direct) {
+      LtcDecoder.unpack(encoding, src, offset, stride, count, dst);
+    }
+    Arrays.fill(edges, 0);
+    IntVector prev = IntVector.broadcast(INTS, last);
+    IntVector absSum = IntVector.zero(INTS);
+    IntVector squareSum = IntVector.zero(INTS);
+    IntVector peak = IntVector.zero(INTS);
+    int ii = 0;
+    for (; ii + LANES <= count; ii += LANES) {
+      IntVector cur;
+      if (direct) {
+        cur = (IntVector) ShortVector.fromByteArray(SHORTS, src, offset + ii * 2, order)
+                                     .convertShape(VectorOperators.S2I, INTS, 0)
+                                     .lanewise(VectorOperators.LSHL, 8);
+        cur.intoArray(dst, ii);
+      } else {
+        cur = IntVector.fromArray(INTS, dst, ii);
+      }
+      // Lane n of before is the sample before lane n of cur.  The sign bit of (cur - 1) ^ (before - 1) is
+      // set if one is above zero and the other isn't, and that of threshold - |cur - before| if the step
+      // is large enough, so the sign bit of both ANDed is set for an edge
+      IntVector before = prev.slice(LANES - 1, cur);
+      IntVector crossed = cur.sub(1).lanewise(VectorOperators.XOR, before.sub(1));
+      IntVector steep = cur.sub(before).abs().neg().add(threshold);
+      int bits = crossed.lanewise(VectorOperators.AND, steep)
+                        .lanewise(VectorOperators.LSHR, 31)
+                        .lanewise(VectorOperators.LSHL, LANE_INDEX)
+                        .reduceLanes(VectorOperators.OR);
+      edges[ii >> 6] |= (bits & 0xFFFFFFFFL) << (ii & 63);
+      IntVector mag = cur.abs();
+      IntVector scaled = cur.lanewise(VectorOperators.ASHR, SQUARE_SHIFT);
+      absSum = absSum.add(mag);
+      squareSum = squareSum.add(scaled.mul(scaled));
+      peak = peak.max(mag);
+      prev = cur;
+    }
+    if (ii > 0) {
+      last = prev.lane(LANES - 1);
+      sums[ABS_SUM] += absSum.reduceLanesToLong(VectorOperators.ADD);
+      sums[SQUARE_SUM] += squareSum.reduceLanesToLong(VectorOperators.ADD);
+      sums[PEAK] = Math.max(sums[PEAK], peak.reduceLanes(VectorOperators.MAX));
+    }
+    // Samples left over after the last whole vector
+    if (direct) {
+      LtcDecoder.unpack(encoding, src, offset + ii * 2, stride, count - ii, dst, ii);
+    }
+    return scan(dst, ii, count, last, threshold, edges, sums);
+  }
+}